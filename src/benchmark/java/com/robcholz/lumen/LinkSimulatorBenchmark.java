@@ -0,0 +1,138 @@
+package com.robcholz.lumen;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+// Drives SerialPackClient against VirtualDevice links and reports delivered frames per second and the delay
+// from handing a frame to sendAll until the device decoded it. "paced" sends a snapshot every 50 ms and a skin
+// every second, like the mod; "saturated" sends back to back to find the ceiling of each link.
+public final class LinkSimulatorBenchmark {
+    private static final long RUN_MILLIS = 3000;
+    private static final long HANDSHAKE_TIMEOUT_MILLIS = 500;
+    private static final long PACED_SNAPSHOT_MILLIS = 50;
+    private static final int SKIN_EVERY_SNAPSHOTS = 20;
+    private static final int SKIN_HEIGHT = 120;
+    private static final int SKIN_BYTES = SkinEncoder.HEADER_BYTES
+            + SkinEncoder.scaledWidth(SkinEncoder.FRONT_WIDTH, SkinEncoder.FRONT_HEIGHT, SKIN_HEIGHT) * SKIN_HEIGHT * 2;
+
+    private LinkSimulatorBenchmark() {
+    }
+
+    public static void main(String[] args) throws IOException {
+        List<VirtualDevice.Profile> profiles = List.of(
+                VirtualDevice.Profile.clean("460800", 460800),
+                VirtualDevice.Profile.clean("2M", 2000000),
+                new VirtualDevice.Profile("usb-8ms", 460800, 8000, 0, 0, 0, true, 16384),
+                new VirtualDevice.Profile("stalls", 460800, 1000, 500, 150, 0, true, 16384),
+                new VirtualDevice.Profile("stalls-no-credit", 460800, 1000, 500, 150, 0, false, 4096),
+                new VirtualDevice.Profile("disconnects", 460800, 1000, 0, 0, 1000, true, 16384)
+        );
+        System.out.printf("%-18s %-9s %9s %11s %9s %9s %9s %8s %8s%n",
+                "link", "load", "frames/s", "bytes/s", "p50 ms", "p99 ms", "max ms", "lost", "reconn");
+        for (VirtualDevice.Profile profile : profiles) {
+            run(profile, false);
+            run(profile, true);
+        }
+    }
+
+    private static void run(VirtualDevice.Profile profile, boolean saturated) throws IOException {
+        Stats stats = new Stats();
+        long end = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(RUN_MILLIS);
+        int reconnects = -1;
+        long lostBytes = 0;
+        int sequence = 0;
+        while (System.nanoTime() < end) {
+            VirtualDevice device = new VirtualDevice(profile, stats::received);
+            SerialPackClient client = new SerialPackClient(device, profile.baudRate());
+            reconnects++;
+            try {
+                client.handshake(HANDSHAKE_TIMEOUT_MILLIS);
+                long nextSend = System.nanoTime();
+                while (System.nanoTime() < end) {
+                    if (!saturated) {
+                        long wait = nextSend - System.nanoTime();
+                        if (wait > 0) {
+                            TimeUnit.NANOSECONDS.sleep(wait);
+                        }
+                        nextSend += TimeUnit.MILLISECONDS.toNanos(PACED_SNAPSHOT_MILLIS);
+                    }
+                    List<LumenFrame> batch = new ArrayList<>(2);
+                    batch.add(stamped(SnapshotCodec.SNAPSHOT_PATH, SnapshotCodec.SNAPSHOT_BYTES));
+                    if (sequence++ % SKIN_EVERY_SNAPSHOTS == 0) {
+                        batch.add(stamped(SkinFrameTracker.FULL_PATH, SKIN_BYTES));
+                    }
+                    stats.sent(batch);
+                    client.sendAll(batch);
+                }
+                // Let the tail drain so in-flight frames count towards delivery rather than loss.
+                TimeUnit.MILLISECONDS.sleep(200);
+            } catch (IOException e) {
+                // Disconnected: reconnect with a fresh device, as LumenSerialManager would.
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            } finally {
+                lostBytes += device.droppedBytes();
+                client.close();
+            }
+        }
+        stats.print(profile.name(), saturated ? "saturated" : "paced", lostBytes, reconnects);
+    }
+
+    private static LumenFrame stamped(String path, int size) {
+        byte[] data = new byte[size];
+        long now = System.nanoTime();
+        for (int i = 0; i < 8; i++) {
+            data[i] = (byte) (now >>> (8 * i));
+        }
+        return new LumenFrame(path, data);
+    }
+
+    private static final class Stats {
+        private final long startNanos = System.nanoTime();
+        private final FrameBuffer sizing = new FrameBuffer();
+        private long[] delays = new long[1024];
+        private int received;
+        private long receivedBytes;
+        private long sent;
+        private long lastReceivedNanos;
+
+        synchronized void sent(List<LumenFrame> frames) {
+            sent += frames.size();
+        }
+
+        synchronized void received(LumenFrame frame, long receivedAt) {
+            long stamp = 0;
+            for (int i = 0; i < 8 && i < frame.data().length; i++) {
+                stamp |= (frame.data()[i] & 0xFFL) << (8 * i);
+            }
+            if (received == delays.length) {
+                delays = Arrays.copyOf(delays, delays.length * 2);
+            }
+            delays[received++] = receivedAt - stamp;
+            receivedBytes += sizing.frameSize(frame.path(), frame.data().length);
+            lastReceivedNanos = receivedAt;
+        }
+
+        synchronized void print(String link, String load, long lostBytes, int reconnects) {
+            long[] sorted = Arrays.copyOf(delays, received);
+            Arrays.sort(sorted);
+            double seconds = Math.max(1, lastReceivedNanos - startNanos) / 1e9;
+            System.out.printf("%-18s %-9s %9.1f %11.0f %9.2f %9.2f %9.2f %8s %8d%n",
+                    link, load, received / seconds, receivedBytes / seconds,
+                    percentile(sorted, 0.50), percentile(sorted, 0.99), percentile(sorted, 1.0),
+                    (sent - received) + "f/" + lostBytes + "B", reconnects);
+        }
+
+        private static double percentile(long[] sorted, double p) {
+            if (sorted.length == 0) {
+                return Double.NaN;
+            }
+            int index = (int) Math.min(sorted.length - 1, Math.round(p * (sorted.length - 1)));
+            return sorted[index] / 1e6;
+        }
+    }
+}
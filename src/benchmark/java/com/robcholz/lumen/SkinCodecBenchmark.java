@@ -0,0 +1,128 @@
+package com.robcholz.lumen;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.Stream;
+
+public final class SkinCodecBenchmark {
+    private static final int SKIN_HEIGHT = 120;
+    private static final int WARMUP_ROUNDS = 200;
+    private static final int MEASURE_ROUNDS = 1000;
+    private static volatile long blackhole;
+
+    private SkinCodecBenchmark() {
+    }
+
+    public static void main(String[] args) throws IOException {
+        Path corpus = Paths.get(args.length > 0 ? args[0] : "run/assets/skins");
+        List<LumenSyncState.SkinPayload> payloads = loadCorpus(corpus);
+        List<byte[]> frames = new ArrayList<>(payloads.size());
+        for (LumenSyncState.SkinPayload payload : payloads) {
+            frames.add(payload.wire());
+        }
+        if (frames.isEmpty()) {
+            System.err.println("No skins found under " + corpus.toAbsolutePath()
+                    + "; pass a directory of skin PNGs with -PskinCorpus=<dir>");
+            return;
+        }
+        long rawBytes = 0;
+        for (byte[] frame : frames) {
+            rawBytes += frame.length;
+        }
+        System.out.printf("%d skins from %s, %d raw bytes%n", frames.size(), corpus, rawBytes);
+        System.out.printf("%-6s %12s %8s %14s%n", "codec", "bytes", "ratio", "encode us/op");
+        for (SkinCodec codec : SkinCodec.values()) {
+            report(codec, frames, rawBytes);
+        }
+        reportIndexed(payloads, rawBytes);
+    }
+
+    // Palette-indexed full frames with their palette, on their own and with the frame under LZ4; encode time
+    // includes quantization.
+    private static void reportIndexed(List<LumenSyncState.SkinPayload> payloads, long rawBytes) {
+        long indexedBytes = 0;
+        long compressedBytes = 0;
+        for (LumenSyncState.SkinPayload payload : payloads) {
+            SkinPalette.Indexed indexed = SkinPalette.encode(payload, true);
+            indexedBytes += indexed.length();
+            compressedBytes += indexed.palette().length + SkinCodec.LZ4.wrap(indexed.frame()).length;
+        }
+        long sink = 0;
+        for (int i = 0; i < WARMUP_ROUNDS; i++) {
+            for (LumenSyncState.SkinPayload payload : payloads) {
+                sink += SkinPalette.encode(payload, true).length();
+            }
+        }
+        long start = System.nanoTime();
+        for (int i = 0; i < MEASURE_ROUNDS; i++) {
+            for (LumenSyncState.SkinPayload payload : payloads) {
+                sink += SkinPalette.encode(payload, true).length();
+            }
+        }
+        long elapsed = System.nanoTime() - start;
+        double perOpMicros = elapsed / 1000.0 / ((double) MEASURE_ROUNDS * payloads.size());
+        blackhole = sink;
+        System.out.printf("%-6s %12d %7.2fx %14.2f%n", "INDEX", indexedBytes,
+                (double) rawBytes / indexedBytes, perOpMicros);
+        System.out.printf("%-6s %12d %7.2fx %14s%n", "IDX+L4", compressedBytes,
+                (double) rawBytes / compressedBytes, "-");
+    }
+
+    private static void report(SkinCodec codec, List<byte[]> frames, long rawBytes) {
+        long encodedBytes = 0;
+        for (byte[] frame : frames) {
+            byte[] wrapped = codec.wrap(frame);
+            if (!Arrays.equals(SkinCodec.unwrap(wrapped), frame)) {
+                throw new IllegalStateException(codec + " failed to round-trip a skin");
+            }
+            encodedBytes += wrapped.length;
+        }
+        long sink = 0;
+        for (int i = 0; i < WARMUP_ROUNDS; i++) {
+            for (byte[] frame : frames) {
+                sink += codec.wrap(frame).length;
+            }
+        }
+        long start = System.nanoTime();
+        for (int i = 0; i < MEASURE_ROUNDS; i++) {
+            for (byte[] frame : frames) {
+                sink += codec.wrap(frame).length;
+            }
+        }
+        long elapsed = System.nanoTime() - start;
+        double perOpMicros = elapsed / 1000.0 / ((double) MEASURE_ROUNDS * frames.size());
+        double ratio = (double) rawBytes / encodedBytes;
+        blackhole = sink;
+        System.out.printf("%-6s %12d %7.2fx %14.2f%n", codec, encodedBytes, ratio, perOpMicros);
+    }
+
+    private static List<LumenSyncState.SkinPayload> loadCorpus(Path corpus) throws IOException {
+        List<LumenSyncState.SkinPayload> payloads = new ArrayList<>();
+        if (!Files.isDirectory(corpus)) {
+            return payloads;
+        }
+        try (Stream<Path> files = Files.walk(corpus)) {
+            for (Path file : (Iterable<Path>) files.filter(Files::isRegularFile)::iterator) {
+                BufferedImage image = ImageIO.read(file.toFile());
+                if (image == null) {
+                    continue;
+                }
+                int width = image.getWidth();
+                int height = image.getHeight();
+                int[] argb = image.getRGB(0, 0, width, height, null, 0, width);
+                LumenSyncState.SkinPayload payload = SkinEncoder.encodeFrontView(argb, width, height, SKIN_HEIGHT);
+                if (!payload.isEmpty()) {
+                    payloads.add(payload);
+                }
+            }
+        }
+        return payloads;
+    }
+}
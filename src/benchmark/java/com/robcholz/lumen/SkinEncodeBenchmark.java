@@ -0,0 +1,108 @@
+package com.robcholz.lumen;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+
+// The skin path from texture pixels to the bytes queued for the device. Run with ./gradlew jmh; the GC
+// profiler reports gc.alloc.rate.norm (bytes allocated per operation) next to the timings.
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SkinEncodeBenchmark {
+    @Param({"64", "32"})
+    public int skinHeight;
+
+    @Param({"120"})
+    public int dstHeight;
+
+    private int[] skin;
+    private int[] front;
+    private int dstWidth;
+    private int color;
+    private LumenSyncState.SkinPayload payload;
+    private LumenSyncState.SkinPayload editedPayload;
+
+    @Setup
+    public void setup() {
+        // Opaque base layer with a partly transparent overlay, so blitAlpha takes both branches.
+        SplittableRandom random = new SplittableRandom(42);
+        skin = new int[64 * skinHeight];
+        for (int i = 0; i < skin.length; i++) {
+            int alpha = i % 64 >= 32 && random.nextInt(4) == 0 ? 0 : 0xFF;
+            skin[i] = (alpha << 24) | random.nextInt(0x1000000);
+        }
+        front = SkinEncoder.buildFrontView(skin, 64, skinHeight);
+        dstWidth = SkinEncoder.scaledWidth(SkinEncoder.FRONT_WIDTH, SkinEncoder.FRONT_HEIGHT, dstHeight);
+        color = skin[skin.length / 2];
+        payload = SkinEncoder.encodeFrontView(skin, 64, skinHeight, dstHeight);
+        // A recoloured face: only the head rows of the front view differ.
+        int[] edited = skin.clone();
+        for (int y = 8; y < 16; y++) {
+            for (int x = 8; x < 16; x++) {
+                edited[y * 64 + x] ^= 0x00FFFFFF;
+            }
+        }
+        editedPayload = SkinEncoder.encodeFrontView(edited, 64, skinHeight, dstHeight);
+    }
+
+    @Benchmark
+    public int[] buildFrontView() {
+        return SkinEncoder.buildFrontView(skin, 64, skinHeight);
+    }
+
+    @Benchmark
+    public byte[] encodeWire() {
+        return SkinEncoder.encodeWire(front, SkinEncoder.FRONT_WIDTH, SkinEncoder.FRONT_HEIGHT, dstWidth, dstHeight);
+    }
+
+    @Benchmark
+    @OutputTimeUnit(TimeUnit.NANOSECONDS)
+    public void toRGB565(Blackhole blackhole) {
+        int value = color;
+        for (int i = 0; i < 64; i++) {
+            blackhole.consume(SkinEncoder.toRGB565(value));
+            value += 0x010203;
+        }
+    }
+
+    // Full capture: front view, scale and RGB565, plus the content hash on the payload.
+    @Benchmark
+    public LumenSyncState.SkinPayload encodeFrontView() {
+        return SkinEncoder.encodeFrontView(skin, 64, skinHeight, dstHeight);
+    }
+
+    // The costliest view: the 3/4 model drawn supersampled for a 240x240 screen, then area-averaged down.
+    @Benchmark
+    public LumenSyncState.SkinPayload encodeIsometric() {
+        return SkinEncoder.encodeView(SkinView.ISOMETRIC, skin, 64, skinHeight, 240, 240, true);
+    }
+
+    // Full frame for firmware with indexed skins: the random test skin has more than 256 colors, so this
+    // includes the median cut and dithering.
+    @Benchmark
+    public SkinPalette.Indexed encodeIndexed() {
+        return SkinPalette.encode(payload, true);
+    }
+
+    // The frame handed to the sender once the skin changed: a delta against what the device already shows.
+    @Benchmark
+    public LumenFrame skinDeltaFrame() {
+        return SkinFrameTracker.frame(payload, editedPayload);
+    }
+}
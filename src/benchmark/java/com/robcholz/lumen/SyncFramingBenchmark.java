@@ -0,0 +1,112 @@
+package com.robcholz.lumen;
+
+import com.google.gson.FieldNamingPolicy;
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import com.robcholz.lumen.transport.LumenTransport;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.BitSet;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+// Per-tick snapshot encoding (the JSON sync format against the binary one) and SerialPackClient framing into
+// a transport that discards every byte, so only the host-side cost of a send is measured.
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SyncFramingBenchmark {
+    // Same settings as the JSON sync format in LumenClient.
+    private static final Gson SNAPSHOT_GSON = new GsonBuilder()
+            .setFieldNamingPolicy(FieldNamingPolicy.LOWER_CASE_WITH_UNDERSCORES)
+            .create();
+
+    private final SnapshotCodec codec = new SnapshotCodec();
+    private final LumenSyncState.Snapshot snapshot = new LumenSyncState.Snapshot("Survival", "Steve", 17.0, 20.0);
+    private SerialPackClient client;
+    private LumenFrame snapshotFrame;
+    private List<LumenFrame> tick;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        client = new SerialPackClient(new NullTransport(), 921600);
+        snapshotFrame = codec.encode(snapshot);
+        LumenSyncState.SkinPayload skin = SkinEncoder.encodeFrontView(new int[64 * 64], 64, 64, 120);
+        tick = List.of(codec.nameFrame(snapshot.name()), snapshotFrame,
+                new LumenFrame(SkinFrameTracker.FULL_PATH, SkinCodec.NONE.wrap(skin.wire())));
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        client.close();
+    }
+
+    @Benchmark
+    public byte[] snapshotJson() {
+        return SNAPSHOT_GSON.toJson(snapshot).getBytes(StandardCharsets.UTF_8);
+    }
+
+    @Benchmark
+    public LumenFrame snapshotBinary() {
+        return codec.encode(snapshot);
+    }
+
+    @Benchmark
+    public void sendSnapshot() throws IOException {
+        client.send(snapshotFrame.path(), snapshotFrame.data());
+    }
+
+    // Name, snapshot and a full skin frame coalesced into one write, as the sync task does after a reconnect.
+    @Benchmark
+    public BitSet sendAllWithSkin() throws IOException {
+        return client.sendAll(tick);
+    }
+
+    private static final class NullTransport implements LumenTransport {
+        private volatile boolean open = true;
+
+        @Override
+        public String address() {
+            return "null";
+        }
+
+        @Override
+        public int read(byte[] buffer, int offset, int length) {
+            // Nothing ever arrives; idle like a serial read timeout instead of spinning the reader thread.
+            LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(100));
+            return 0;
+        }
+
+        @Override
+        public int write(byte[] bytes, int offset, int length) {
+            return length;
+        }
+
+        @Override
+        public boolean isOpen() {
+            return open;
+        }
+
+        @Override
+        public void close() {
+            open = false;
+        }
+    }
+}
@@ -0,0 +1,286 @@
+package com.robcholz.lumen;
+
+import com.robcholz.lumen.transport.LumenTransport;
+
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BiConsumer;
+
+// An in-memory Lumen display behind a simulated UART. Host bytes are serialised at the baud rate (10 bits per
+// byte) through a bounded driver buffer, arrive after the link latency, and land in a receive buffer that the
+// device drains unless it is stalled; whatever overflows that buffer is lost, as on real hardware. The device
+// answers hello, probe and baud requests and grants receive credits as it consumes bytes.
+public final class VirtualDevice implements LumenTransport {
+    private static final int TX_BUFFER_BYTES = 4096;
+    private static final int WIRE_CHUNK_BYTES = 64;
+    private static final int CREDIT_BATCH_BYTES = 256;
+    private static final int MAX_FRAME_BYTES = 32768;
+    private static final long READ_TIMEOUT_NANOS = TimeUnit.MILLISECONDS.toNanos(100);
+    private static final long WRITE_TIMEOUT_NANOS = TimeUnit.MILLISECONDS.toNanos(250);
+
+    public record Profile(
+            String name,
+            int baudRate,
+            long latencyMicros,
+            long stallEveryMillis,
+            long stallForMillis,
+            long disconnectAfterMillis,
+            boolean flowControl,
+            int rxBufferBytes
+    ) {
+        public static Profile clean(String name, int baudRate) {
+            return new Profile(name, baudRate, 1000, 0, 0, 0, true, 16384);
+        }
+    }
+
+    private record Chunk(byte[] data, int offset, int length, long deliverAt) {
+    }
+
+    private final Profile profile;
+    private final BiConsumer<LumenFrame, Long> onFrame;
+    private final long startNanos = System.nanoTime();
+    private final Object lock = new Object();
+    private final ArrayDeque<Chunk> toDevice = new ArrayDeque<>();
+    private final ArrayDeque<Chunk> toHost = new ArrayDeque<>();
+    private final byte[] rxBuffer;
+    private final FrameDecoder decoder;
+    private final Thread thread;
+    private int rxLength;
+    private long hostWireFreeAt;
+    private long deviceWireFreeAt;
+    private int baudRate;
+    private long droppedBytes;
+    private int pendingCredits;
+    private volatile boolean open = true;
+
+    public VirtualDevice(Profile profile, BiConsumer<LumenFrame, Long> onFrame) {
+        this.profile = profile;
+        this.onFrame = onFrame;
+        baudRate = profile.baudRate();
+        rxBuffer = new byte[profile.rxBufferBytes()];
+        decoder = new FrameDecoder("", MAX_FRAME_BYTES, this::handle);
+        thread = new Thread(this::run, "virtual-device-" + profile.name());
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    public long droppedBytes() {
+        synchronized (lock) {
+            return droppedBytes;
+        }
+    }
+
+    @Override
+    public String address() {
+        return "virtual:" + profile.name();
+    }
+
+    @Override
+    public int read(byte[] buffer, int offset, int length) throws IOException {
+        long deadline = System.nanoTime() + READ_TIMEOUT_NANOS;
+        synchronized (lock) {
+            while (true) {
+                ensureOpen();
+                long now = System.nanoTime();
+                Chunk head = toHost.peek();
+                if (head != null && head.deliverAt() <= now) {
+                    int count = Math.min(length, head.length());
+                    System.arraycopy(head.data(), head.offset(), buffer, offset, count);
+                    toHost.poll();
+                    if (count < head.length()) {
+                        toHost.addFirst(new Chunk(head.data(), head.offset() + count, head.length() - count,
+                                head.deliverAt()));
+                    }
+                    return count;
+                }
+                long wait = Math.min(deadline, head != null ? head.deliverAt() : deadline) - now;
+                if (wait <= 0) {
+                    return 0;
+                }
+                waitNanos(wait);
+            }
+        }
+    }
+
+    @Override
+    public int write(byte[] bytes, int offset, int length) throws IOException {
+        long deadline = System.nanoTime() + WRITE_TIMEOUT_NANOS;
+        synchronized (lock) {
+            while (true) {
+                ensureOpen();
+                long now = System.nanoTime();
+                long byteNanos = byteNanos();
+                long backlog = Math.max(0, hostWireFreeAt - now);
+                int space = (int) ((TX_BUFFER_BYTES * byteNanos - backlog) / byteNanos);
+                if (space > 0) {
+                    int accepted = Math.min(space, length);
+                    byte[] copy = new byte[accepted];
+                    System.arraycopy(bytes, offset, copy, 0, accepted);
+                    long wireAt = Math.max(hostWireFreeAt, now);
+                    for (int i = 0; i < accepted; i += WIRE_CHUNK_BYTES) {
+                        int count = Math.min(WIRE_CHUNK_BYTES, accepted - i);
+                        wireAt += count * byteNanos;
+                        toDevice.add(new Chunk(copy, i, count, wireAt + latencyNanos()));
+                    }
+                    hostWireFreeAt = wireAt;
+                    lock.notifyAll();
+                    return accepted;
+                }
+                long wait = Math.min(deadline - now, byteNanos * WIRE_CHUNK_BYTES);
+                if (wait <= 0) {
+                    return 0;
+                }
+                waitNanos(wait);
+            }
+        }
+    }
+
+    @Override
+    public boolean isOpen() {
+        return open;
+    }
+
+    @Override
+    public boolean setBaudRate(int rate) {
+        synchronized (lock) {
+            baudRate = rate;
+        }
+        return true;
+    }
+
+    @Override
+    public void close() {
+        synchronized (lock) {
+            open = false;
+            lock.notifyAll();
+        }
+    }
+
+    private void run() {
+        byte[] consumed = new byte[0];
+        while (open) {
+            int count = 0;
+            synchronized (lock) {
+                long now = System.nanoTime();
+                if (profile.disconnectAfterMillis() > 0
+                        && now - startNanos >= TimeUnit.MILLISECONDS.toNanos(profile.disconnectAfterMillis())) {
+                    open = false;
+                    lock.notifyAll();
+                    break;
+                }
+                deliverArrived(now);
+                if (!stalled(now) && rxLength > 0) {
+                    if (consumed.length < rxLength) {
+                        consumed = new byte[rxBuffer.length];
+                    }
+                    count = rxLength;
+                    System.arraycopy(rxBuffer, 0, consumed, 0, count);
+                    rxLength = 0;
+                }
+                if (count == 0) {
+                    Chunk head = toDevice.peek();
+                    long wait = head != null ? head.deliverAt() - now : TimeUnit.MILLISECONDS.toNanos(5);
+                    waitNanos(Math.max(TimeUnit.MICROSECONDS.toNanos(50), Math.min(wait, TimeUnit.MILLISECONDS.toNanos(1))));
+                    continue;
+                }
+            }
+            // Decode outside the lock, the way firmware parses from its own buffer while the UART keeps filling.
+            decoder.feed(consumed, 0, count);
+            grantCredits(count);
+        }
+    }
+
+    private void deliverArrived(long now) {
+        while (!toDevice.isEmpty() && toDevice.peek().deliverAt() <= now) {
+            Chunk chunk = toDevice.poll();
+            int fits = Math.min(chunk.length(), rxBuffer.length - rxLength);
+            System.arraycopy(chunk.data(), chunk.offset(), rxBuffer, rxLength, fits);
+            rxLength += fits;
+            droppedBytes += chunk.length() - fits;
+        }
+    }
+
+    private boolean stalled(long now) {
+        if (profile.stallEveryMillis() <= 0) {
+            return false;
+        }
+        long every = TimeUnit.MILLISECONDS.toNanos(profile.stallEveryMillis());
+        long phase = (now - startNanos) % every;
+        return phase >= every - TimeUnit.MILLISECONDS.toNanos(profile.stallForMillis());
+    }
+
+    private void grantCredits(int consumedBytes) {
+        if (!profile.flowControl()) {
+            return;
+        }
+        pendingCredits += consumedBytes;
+        boolean idle;
+        synchronized (lock) {
+            idle = rxLength == 0 && toDevice.isEmpty();
+        }
+        if (pendingCredits >= CREDIT_BATCH_BYTES || idle) {
+            reply(LumenProtocol.CREDIT_PATH, LumenProtocol.u32(pendingCredits));
+            pendingCredits = 0;
+        }
+    }
+
+    private void handle(LumenFrame frame) {
+        long receivedAt = System.nanoTime();
+        switch (frame.path()) {
+            case LumenProtocol.HELLO_PATH -> reply(LumenProtocol.HELLO_PATH, hello());
+            case LumenProtocol.PROBE_PATH -> reply(LumenProtocol.PROBE_PATH, LumenProtocol.u32(frame.data().length));
+            case LumenProtocol.BAUD_PATH -> {
+                int rate = DeviceCapabilities.readU32(frame.data(), 0);
+                reply(LumenProtocol.BAUD_PATH, LumenProtocol.u32(rate));
+                setBaudRate(rate);
+            }
+            default -> onFrame.accept(frame, receivedAt);
+        }
+    }
+
+    private byte[] hello() {
+        byte[] hello = new byte[19];
+        hello[0] = (byte) LumenProtocol.VERSION;
+        System.arraycopy(LumenProtocol.u32(MAX_FRAME_BYTES), 0, hello, 1, 4);
+        hello[5] = (byte) (SkinCodec.NONE.mask() | SkinCodec.RLE.mask() | SkinCodec.LZ4.mask());
+        System.arraycopy(LumenProtocol.u32(profile.flowControl() ? rxBuffer.length : 0), 0, hello, 10, 4);
+        System.arraycopy(LumenProtocol.u32(profile.baudRate()), 0, hello, 14, 4);
+        return hello;
+    }
+
+    private void reply(String path, byte[] data) {
+        FrameBuffer buffer = new FrameBuffer();
+        buffer.append(path, data);
+        byte[] bytes = new byte[buffer.length()];
+        System.arraycopy(buffer.array(), 0, bytes, 0, bytes.length);
+        synchronized (lock) {
+            long now = System.nanoTime();
+            deviceWireFreeAt = Math.max(deviceWireFreeAt, now) + bytes.length * byteNanos();
+            toHost.add(new Chunk(bytes, 0, bytes.length, deviceWireFreeAt + latencyNanos()));
+            lock.notifyAll();
+        }
+    }
+
+    private long byteNanos() {
+        return TimeUnit.SECONDS.toNanos(10) / baudRate;
+    }
+
+    private long latencyNanos() {
+        return TimeUnit.MICROSECONDS.toNanos(profile.latencyMicros());
+    }
+
+    private void ensureOpen() throws IOException {
+        if (!open) {
+            throw new IOException(address() + " disconnected");
+        }
+    }
+
+    private void waitNanos(long nanos) {
+        try {
+            TimeUnit.NANOSECONDS.timedWait(lock, nanos);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
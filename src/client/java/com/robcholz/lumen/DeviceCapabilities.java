@@ -0,0 +1,85 @@
+package com.robcholz.lumen;
+
+public record DeviceCapabilities(
+        int protocolVersion,
+        int maxFrameBytes,
+        int codecMask,
+        int screenWidth,
+        int screenHeight,
+        int receiveCredits,
+        int maxBaudRate,
+        int features
+) {
+    public static final int HELLO_BYTES = 14;
+    public static final int FEATURE_CHUNKED_SKIN = 0x01;
+    public static final int FEATURE_INDEXED_SKIN = 0x02;
+    private static final int HELLO_MAX_BAUD_OFFSET = 14;
+    private static final int HELLO_FEATURES_OFFSET = 18;
+
+    public static DeviceCapabilities legacy() {
+        return new DeviceCapabilities(0, Integer.MAX_VALUE, SkinCodec.NONE.mask(), 0, 0, 0, 0, 0);
+    }
+
+    // u8 version, u32 max frame, u8 codec mask, u16 screen width, u16 screen height, u32 credits,
+    // then optionally u32 max baud rate and u8 feature flags (all little-endian)
+    public static DeviceCapabilities parse(byte[] data) {
+        if (data.length < HELLO_BYTES) {
+            throw new IllegalArgumentException("Device hello too short: " + data.length);
+        }
+        return new DeviceCapabilities(
+                data[0] & 0xFF,
+                readU32(data, 1),
+                data[5] & 0xFF,
+                readU16(data, 6),
+                readU16(data, 8),
+                readU32(data, 10),
+                data.length >= HELLO_MAX_BAUD_OFFSET + 4 ? readU32(data, HELLO_MAX_BAUD_OFFSET) : 0,
+                data.length > HELLO_FEATURES_OFFSET ? data[HELLO_FEATURES_OFFSET] & 0xFF : 0
+        );
+    }
+
+    public boolean isLegacy() {
+        return protocolVersion == 0;
+    }
+
+    public boolean flowControl() {
+        return receiveCredits > 0;
+    }
+
+    // A frame larger than the whole receive window could never collect enough credits.
+    public int frameLimit() {
+        return flowControl() ? Math.min(maxFrameBytes, receiveCredits) : maxFrameBytes;
+    }
+
+    public DeviceCapabilities withMaxFrameBytes(int limit) {
+        if (limit >= maxFrameBytes) {
+            return this;
+        }
+        return new DeviceCapabilities(protocolVersion, limit, codecMask, screenWidth, screenHeight,
+                receiveCredits, maxBaudRate, features);
+    }
+
+    public boolean chunkedSkins() {
+        return (features & FEATURE_CHUNKED_SKIN) != 0;
+    }
+
+    public boolean indexedSkins() {
+        return (features & FEATURE_INDEXED_SKIN) != 0;
+    }
+
+    public boolean supports(SkinCodec codec) {
+        return (codecMask & codec.mask()) != 0;
+    }
+
+    static int readU16(byte[] data, int idx) {
+        return (data[idx] & 0xFF) | ((data[idx + 1] & 0xFF) << 8);
+    }
+
+    static int readU32(byte[] data, int idx) {
+        long value = (data[idx] & 0xFFL)
+                | ((data[idx + 1] & 0xFFL) << 8)
+                | ((data[idx + 2] & 0xFFL) << 16)
+                | ((data[idx + 3] & 0xFFL) << 24);
+        return (int) Math.min(Integer.MAX_VALUE, value);
+    }
+}
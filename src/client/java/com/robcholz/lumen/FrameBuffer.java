@@ -0,0 +1,70 @@
+package com.robcholz.lumen;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+public final class FrameBuffer {
+    private static final int INITIAL_CAPACITY = 1024;
+    private static final int MAX_CACHED_PATHS = 64;
+
+    private final Map<String, byte[]> pathBytes = new HashMap<>();
+    private byte[] buffer = new byte[INITIAL_CAPACITY];
+    private int length;
+
+    public void clear() {
+        length = 0;
+    }
+
+    public void append(String path, byte[] data) {
+        append(path, data, 0, data.length);
+    }
+
+    public void append(String path, byte[] data, int offset, int count) {
+        byte[] encodedPath = encodePath(path);
+        ensureCapacity(length + encodedPath.length + 5 + count);
+        System.arraycopy(encodedPath, 0, buffer, length, encodedPath.length);
+        length += encodedPath.length;
+        buffer[length++] = '\n';
+        buffer[length++] = (byte) (count & 0xFF);
+        buffer[length++] = (byte) ((count >>> 8) & 0xFF);
+        buffer[length++] = (byte) ((count >>> 16) & 0xFF);
+        buffer[length++] = (byte) ((count >>> 24) & 0xFF);
+        System.arraycopy(data, offset, buffer, length, count);
+        length += count;
+    }
+
+    public int frameSize(String path, int count) {
+        return encodePath(path).length + 5 + count;
+    }
+
+    public byte[] array() {
+        return buffer;
+    }
+
+    public int length() {
+        return length;
+    }
+
+    public boolean isEmpty() {
+        return length == 0;
+    }
+
+    private byte[] encodePath(String path) {
+        byte[] encoded = pathBytes.get(path);
+        if (encoded == null) {
+            encoded = path.getBytes(StandardCharsets.UTF_8);
+            if (pathBytes.size() < MAX_CACHED_PATHS) {
+                pathBytes.put(path, encoded);
+            }
+        }
+        return encoded;
+    }
+
+    private void ensureCapacity(int required) {
+        if (required > buffer.length) {
+            buffer = Arrays.copyOf(buffer, Math.max(required, buffer.length * 2));
+        }
+    }
+}
@@ -0,0 +1,102 @@
+package com.robcholz.lumen;
+
+import java.nio.charset.StandardCharsets;
+import java.util.function.Consumer;
+
+// Incremental parser for the path '\n' u32 length payload framing. Lines that do not look like a frame
+// header (debug output from the firmware, for example) are skipped up to the next newline.
+public final class FrameDecoder {
+    private static final int MAX_PATH_BYTES = 64;
+
+    private final String pathPrefix;
+    private final int maxPayloadBytes;
+    private final Consumer<LumenFrame> sink;
+    private final byte[] pathBuffer = new byte[MAX_PATH_BYTES];
+    private int pathLength;
+    private boolean discardingLine;
+    private String path;
+    private int lengthBytes;
+    private int payloadLength;
+    private byte[] payload;
+    private int payloadOffset;
+
+    public FrameDecoder(String pathPrefix, int maxPayloadBytes, Consumer<LumenFrame> sink) {
+        this.pathPrefix = pathPrefix;
+        this.maxPayloadBytes = maxPayloadBytes;
+        this.sink = sink;
+    }
+
+    public void feed(byte[] data, int offset, int length) {
+        int end = offset + length;
+        int i = offset;
+        while (i < end) {
+            if (payload != null) {
+                int count = Math.min(end - i, payload.length - payloadOffset);
+                System.arraycopy(data, i, payload, payloadOffset, count);
+                payloadOffset += count;
+                i += count;
+                if (payloadOffset == payload.length) {
+                    LumenFrame frame = new LumenFrame(path, payload);
+                    reset();
+                    sink.accept(frame);
+                }
+                continue;
+            }
+            byte value = data[i++];
+            if (path != null) {
+                payloadLength |= (value & 0xFF) << (8 * lengthBytes);
+                if (++lengthBytes == 4) {
+                    startPayload();
+                }
+            } else {
+                acceptPathByte(value);
+            }
+        }
+    }
+
+    public void reset() {
+        pathLength = 0;
+        discardingLine = false;
+        path = null;
+        lengthBytes = 0;
+        payloadLength = 0;
+        payload = null;
+        payloadOffset = 0;
+    }
+
+    private void acceptPathByte(byte value) {
+        if (value == '\n') {
+            if (!discardingLine && pathLength > 0) {
+                String candidate = new String(pathBuffer, 0, pathLength, StandardCharsets.UTF_8);
+                if (candidate.startsWith(pathPrefix)) {
+                    path = candidate;
+                }
+            }
+            pathLength = 0;
+            discardingLine = false;
+            return;
+        }
+        if (discardingLine) {
+            return;
+        }
+        if (value < 0x21 || value > 0x7E || pathLength == MAX_PATH_BYTES) {
+            discardingLine = true;
+            return;
+        }
+        pathBuffer[pathLength++] = value;
+    }
+
+    private void startPayload() {
+        if (payloadLength < 0 || payloadLength > maxPayloadBytes) {
+            reset();
+            return;
+        }
+        payload = new byte[payloadLength];
+        payloadOffset = 0;
+        if (payloadLength == 0) {
+            LumenFrame frame = new LumenFrame(path, payload);
+            reset();
+            sink.accept(frame);
+        }
+    }
+}
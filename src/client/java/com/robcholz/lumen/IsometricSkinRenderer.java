@@ -0,0 +1,177 @@
+package com.robcholz.lumen;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+// Three-quarter view of the player model: turned to show the front and the player's left side, seen slightly
+// from above. Each box face is a textured parallelogram on screen; pixels are mapped back to texels and kept by
+// a depth buffer, so overlapping parts and the outer layer sort themselves out.
+final class IsometricSkinRenderer {
+    private static final double YAW = Math.toRadians(35);
+    private static final double PITCH = Math.toRadians(20);
+    private static final double COS_YAW = Math.cos(YAW);
+    private static final double SIN_YAW = Math.sin(YAW);
+    private static final double COS_PITCH = Math.cos(PITCH);
+    private static final double SIN_PITCH = Math.sin(PITCH);
+    // Outer layer boxes stand off the inner ones, as in game.
+    private static final double HEAD_LAYER = 0.5;
+    private static final double BODY_LAYER = 0.25;
+
+    // Model space in texels: x to the viewer's right, y down, z towards the viewer.
+    private record Box(double x, double y, double z, int width, int height, int depth, int u, int v, double inflate) {
+    }
+
+    private record Face(double[] origin, double[] uAxis, double[] vAxis, int texX, int texY, int width, int height) {
+    }
+
+    private IsometricSkinRenderer() {
+    }
+
+    static SkinEncoder.View render(int[] skin, int skinWidth, int skinHeight, int pixelsPerTexel) {
+        boolean hasSecondLayer = skinHeight >= 64 && skinWidth >= 64;
+        List<Box> boxes = new ArrayList<>();
+        boxes.add(new Box(4, 0, -2, 8, 8, 8, 0, 0, 0));
+        boxes.add(new Box(4, 8, 0, 8, 12, 4, 16, 16, 0));
+        boxes.add(new Box(0, 8, 0, 4, 12, 4, 40, 16, 0));
+        boxes.add(new Box(12, 8, 0, 4, 12, 4, hasSecondLayer ? 32 : 40, hasSecondLayer ? 48 : 16, 0));
+        boxes.add(new Box(4, 20, 0, 4, 12, 4, 0, 16, 0));
+        boxes.add(new Box(8, 20, 0, 4, 12, 4, hasSecondLayer ? 16 : 0, hasSecondLayer ? 48 : 16, 0));
+        if (hasSecondLayer) {
+            boxes.add(new Box(4, 0, -2, 8, 8, 8, 32, 0, HEAD_LAYER));
+            boxes.add(new Box(4, 8, 0, 8, 12, 4, 16, 32, BODY_LAYER));
+            boxes.add(new Box(0, 8, 0, 4, 12, 4, 40, 32, BODY_LAYER));
+            boxes.add(new Box(12, 8, 0, 4, 12, 4, 48, 48, BODY_LAYER));
+            boxes.add(new Box(4, 20, 0, 4, 12, 4, 0, 32, BODY_LAYER));
+            boxes.add(new Box(8, 20, 0, 4, 12, 4, 0, 48, BODY_LAYER));
+        }
+        List<Face> faces = new ArrayList<>();
+        for (Box box : boxes) {
+            addFaces(box, faces);
+        }
+
+        double minX = Double.MAX_VALUE;
+        double minY = Double.MAX_VALUE;
+        double maxX = -Double.MAX_VALUE;
+        double maxY = -Double.MAX_VALUE;
+        for (Face face : faces) {
+            for (int corner = 0; corner < 4; corner++) {
+                double[] point = point(face, corner % 2 == 0 ? 0 : face.width(), corner < 2 ? 0 : face.height());
+                double[] screen = project(point);
+                minX = Math.min(minX, screen[0]);
+                minY = Math.min(minY, screen[1]);
+                maxX = Math.max(maxX, screen[0]);
+                maxY = Math.max(maxY, screen[1]);
+            }
+        }
+        int width = (int) Math.ceil((maxX - minX) * pixelsPerTexel);
+        int height = (int) Math.ceil((maxY - minY) * pixelsPerTexel);
+        int[] argb = new int[width * height];
+        double[] depth = new double[width * height];
+        Arrays.fill(depth, -Double.MAX_VALUE);
+        for (Face face : faces) {
+            draw(face, skin, skinWidth, argb, depth, width, height, minX, minY, pixelsPerTexel);
+        }
+        return new SkinEncoder.View(width, height, argb);
+    }
+
+    // Texture layout per box: top and bottom above, then right, front, left and back side by side.
+    private static void addFaces(Box box, List<Face> faces) {
+        double x0 = box.x() - box.inflate();
+        double y0 = box.y() - box.inflate();
+        double z0 = box.z() - box.inflate();
+        double x1 = box.x() + box.width() + box.inflate();
+        double y1 = box.y() + box.height() + box.inflate();
+        double z1 = box.z() + box.depth() + box.inflate();
+        double sx = (x1 - x0) / box.width();
+        double sy = (y1 - y0) / box.height();
+        double sz = (z1 - z0) / box.depth();
+        int w = box.width();
+        int h = box.height();
+        int d = box.depth();
+        int u = box.u();
+        int v = box.v();
+        double[] down = {0, sy, 0};
+        // Only faces turned towards the camera: front, the player's left side and the top.
+        faces.add(new Face(new double[]{x0, y0, z1}, new double[]{sx, 0, 0}, down, u + d, v + d, w, h));
+        faces.add(new Face(new double[]{x1, y0, z1}, new double[]{0, 0, -sz}, down, u + d + w, v + d, d, h));
+        faces.add(new Face(new double[]{x0, y0, z0}, new double[]{sx, 0, 0}, new double[]{0, 0, sz}, u + d, v, w, d));
+    }
+
+    private static void draw(
+            Face face,
+            int[] skin,
+            int skinWidth,
+            int[] argb,
+            double[] depth,
+            int width,
+            int height,
+            double minX,
+            double minY,
+            int scale
+    ) {
+        double[] origin = project(face.origin());
+        double[] uEnd = project(add(face.origin(), face.uAxis()));
+        double[] vEnd = project(add(face.origin(), face.vAxis()));
+        double ox = (origin[0] - minX) * scale;
+        double oy = (origin[1] - minY) * scale;
+        double ux = (uEnd[0] - origin[0]) * scale;
+        double uy = (uEnd[1] - origin[1]) * scale;
+        double vx = (vEnd[0] - origin[0]) * scale;
+        double vy = (vEnd[1] - origin[1]) * scale;
+        double uz = uEnd[2] - origin[2];
+        double vz = vEnd[2] - origin[2];
+        double determinant = ux * vy - uy * vx;
+        if (Math.abs(determinant) < 1e-9) {
+            return;
+        }
+        double[] xs = {ox, ox + ux * face.width(), ox + vx * face.height(), ox + ux * face.width() + vx * face.height()};
+        double[] ys = {oy, oy + uy * face.width(), oy + vy * face.height(), oy + uy * face.width() + vy * face.height()};
+        int left = Math.max(0, (int) Math.floor(Arrays.stream(xs).min().getAsDouble()));
+        int right = Math.min(width, (int) Math.ceil(Arrays.stream(xs).max().getAsDouble()));
+        int top = Math.max(0, (int) Math.floor(Arrays.stream(ys).min().getAsDouble()));
+        int bottom = Math.min(height, (int) Math.ceil(Arrays.stream(ys).max().getAsDouble()));
+        for (int py = top; py < bottom; py++) {
+            double dy = py + 0.5 - oy;
+            for (int px = left; px < right; px++) {
+                double dx = px + 0.5 - ox;
+                double u = (dx * vy - dy * vx) / determinant;
+                double v = (ux * dy - uy * dx) / determinant;
+                if (u < 0 || v < 0 || u >= face.width() || v >= face.height()) {
+                    continue;
+                }
+                int color = skin[(face.texY() + (int) v) * skinWidth + face.texX() + (int) u];
+                if ((color >>> 24) == 0) {
+                    continue;
+                }
+                int index = py * width + px;
+                double z = origin[2] + u * uz + v * vz;
+                if (z > depth[index]) {
+                    depth[index] = z;
+                    argb[index] = color;
+                }
+            }
+        }
+    }
+
+    private static double[] point(Face face, double u, double v) {
+        double[] origin = face.origin();
+        return new double[]{
+                origin[0] + u * face.uAxis()[0] + v * face.vAxis()[0],
+                origin[1] + u * face.uAxis()[1] + v * face.vAxis()[1],
+                origin[2] + u * face.uAxis()[2] + v * face.vAxis()[2]
+        };
+    }
+
+    private static double[] add(double[] a, double[] b) {
+        return new double[]{a[0] + b[0], a[1] + b[1], a[2] + b[2]};
+    }
+
+    // Screen x, screen y, and depth (larger is nearer).
+    private static double[] project(double[] point) {
+        double x = point[0] * COS_YAW - point[2] * SIN_YAW;
+        double z = point[2] * COS_YAW + point[0] * SIN_YAW;
+        double y = point[1] * COS_PITCH + z * SIN_PITCH;
+        return new double[]{x, y, z * COS_PITCH - point[1] * SIN_PITCH};
+    }
+}
@@ -0,0 +1,4 @@
+package com.robcholz.lumen;
+
+public record LumenFrame(String path, byte[] data) {
+}
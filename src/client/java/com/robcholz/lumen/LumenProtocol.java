@@ -0,0 +1,30 @@
+package com.robcholz.lumen;
+
+public final class LumenProtocol {
+    public static final int VERSION = 1;
+    public static final String DEVICE_PREFIX = "lumen/";
+    public static final String HELLO_PATH = "lumen/hello";
+    public static final String CREDIT_PATH = "lumen/credit";
+    public static final String BAUD_PATH = "lumen/baud";
+    public static final String PROBE_PATH = "lumen/probe";
+
+    private LumenProtocol() {
+    }
+
+    public static byte[] hostHello() {
+        int codecMask = 0;
+        for (SkinCodec codec : SkinCodec.values()) {
+            codecMask |= codec.mask();
+        }
+        return new byte[]{(byte) VERSION, (byte) codecMask};
+    }
+
+    public static byte[] u32(int value) {
+        return new byte[]{
+                (byte) (value & 0xFF),
+                (byte) ((value >>> 8) & 0xFF),
+                (byte) ((value >>> 16) & 0xFF),
+                (byte) ((value >>> 24) & 0xFF)
+        };
+    }
+}
@@ -13,52 +13,75 @@ import net.minecraft.world.GameMode;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.io.ByteArrayInputStream;
 import java.io.File;
-import java.io.FileInputStream;
+import java.io.IOException;
 import java.io.InputStream;
-import java.lang.reflect.Field;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.Objects;
 import java.util.Optional;
-import java.util.concurrent.CompletableFuture;
-import java.util.concurrent.TimeUnit;
 
 public final class LumenSyncState {
     private static final Logger LOGGER = LoggerFactory.getLogger(LumenSyncState.class);
-    private static final int SKIN_HEIGHT = 120;
+    private static final int SKIN_RETRY_TICKS = 20;
+    private static final int SKIN_REFRESH_TICKS = 400;
+
+    // Written only by the client tick; read lock-free by the serial side.
+    private static volatile Snapshot latestSnapshot = Snapshot.defaultSnapshot();
+    private static volatile SkinSource latestSkin = SkinSource.empty();
+    private static Identifier publishedSkinTexture;
+    private static int skinTicksSinceCapture;
 
     private LumenSyncState() {
     }
 
-    public static Snapshot requestPlayerSnapshot() {
-        MinecraftClient client = MinecraftClient.getInstance();
-        if (client == null) {
-            return Snapshot.defaultSnapshot();
-        }
-        CompletableFuture<Snapshot> future = new CompletableFuture<>();
-        client.execute(() -> future.complete(capturePlayerSnapshot(client)));
-        try {
-            return future.get(2, TimeUnit.SECONDS);
-        } catch (Exception e) {
-            LOGGER.debug("Failed to capture snapshot", e);
-            return Snapshot.defaultSnapshot();
+    public static Snapshot latestSnapshot() {
+        return latestSnapshot;
+    }
+
+    public static SkinSource latestSkin() {
+        return latestSkin;
+    }
+
+    public static void publish(MinecraftClient client) {
+        Snapshot snapshot = capturePlayerSnapshot(client);
+        if (!snapshot.equals(latestSnapshot)) {
+            latestSnapshot = snapshot;
         }
+        publishSkin(client);
     }
 
-    public static SkinPayload requestSkinPayload() {
-        MinecraftClient client = MinecraftClient.getInstance();
-        if (client == null) {
-            return SkinPayload.empty();
+    private static void publishSkin(MinecraftClient client) {
+        Identifier texture = currentSkinTexture(client);
+        if (texture == null) {
+            publishedSkinTexture = null;
+            latestSkin = SkinSource.empty();
+            return;
+        }
+        skinTicksSinceCapture++;
+        boolean retryDue = latestSkin.isEmpty() && skinTicksSinceCapture >= SKIN_RETRY_TICKS;
+        boolean refreshDue = skinTicksSinceCapture >= SKIN_REFRESH_TICKS;
+        if (texture.equals(publishedSkinTexture) && !retryDue && !refreshDue) {
+            return;
+        }
+        publishedSkinTexture = texture;
+        skinTicksSinceCapture = 0;
+        SkinSource skin = captureSkin(client);
+        if (!skin.matches(latestSkin.textureId(), latestSkin.contentHash())) {
+            latestSkin = skin;
         }
-        CompletableFuture<SkinPayload> future = new CompletableFuture<>();
-        client.execute(() -> future.complete(captureSkinPayload(client)));
-        try {
-            return future.get(5, TimeUnit.SECONDS);
-        } catch (Exception e) {
-            LOGGER.debug("Failed to capture skin payload", e);
-            return SkinPayload.empty();
+    }
+
+    private static Identifier currentSkinTexture(MinecraftClient client) {
+        if (client.player == null) {
+            return null;
         }
+        SkinTextures textures = client.player.getSkinTextures();
+        return textures == null ? null : textures.texture();
     }
 
-    private static Snapshot capturePlayerSnapshot(MinecraftClient client) {
+    public static Snapshot capturePlayerSnapshot(MinecraftClient client) {
         if (client.player == null) {
             return Snapshot.defaultSnapshot();
         }
@@ -71,9 +94,9 @@ public final class LumenSyncState {
         return new Snapshot(mode, name, health, maxHealth);
     }
 
-    private static SkinPayload captureSkinPayload(MinecraftClient client) {
+    private static SkinSource captureSkin(MinecraftClient client) {
         if (client.player == null) {
-            return SkinPayload.empty();
+            return SkinSource.empty();
         }
         return readSkin(client, client.player);
     }
@@ -94,261 +117,215 @@ public final class LumenSyncState {
         };
     }
 
-    private static byte[] toRGB565(NativeImage image) {
-        int width = image.getWidth();
-        int height = image.getHeight();
-        byte[] data = new byte[width * height * 2];
-        int idx = 0;
-        for (int y = 0; y < height; y++) {
-            for (int x = 0; x < width; x++) {
-                int color = image.getColorArgb(x, y);
-                int r = (color >>> 16) & 0xFF;
-                int g = (color >>> 8) & 0xFF;
-                int b = color & 0xFF;
-                int value = ((r & 0xF8) << 8) | ((g & 0xFC) << 3) | (b >>> 3);
-                data[idx++] = (byte) (value & 0xFF);
-                data[idx++] = (byte) ((value >>> 8) & 0xFF); // little-endian
-            }
-        }
-        return data;
-    }
-
-    private static NativeImage scaleImage(NativeImage image) {
-        int srcWidth = image.getWidth();
-        int srcHeight = image.getHeight();
-        int dstHeight = SKIN_HEIGHT;
-        int dstWidth = Math.max(1, Math.round((srcWidth * (float) dstHeight) / srcHeight));
-        NativeImage scaled = new NativeImage(dstWidth, dstHeight, true);
-        for (int y = 0; y < dstHeight; y++) {
-            int srcY = (y * srcHeight) / dstHeight;
-            for (int x = 0; x < dstWidth; x++) {
-                int srcX = (x * srcWidth) / dstWidth;
-                int color = image.getColorArgb(srcX, srcY);
-                scaled.setColorArgb(x, y, color);
-            }
-        }
-        return scaled;
-    }
-
-    private static SkinPayload readSkin(MinecraftClient client, PlayerEntity player) {
+    private static SkinSource readSkin(MinecraftClient client, PlayerEntity player) {
         if (!(player instanceof AbstractClientPlayerEntity clientPlayer)) {
-            return SkinPayload.empty();
+            return SkinSource.empty();
         }
         SkinTextures textures = clientPlayer.getSkinTextures();
         if (textures == null || textures.texture() == null) {
-            return SkinPayload.empty();
+            return SkinSource.empty();
         }
         AbstractTexture texture = client.getTextureManager().getTexture(textures.texture());
-        Optional<NativeImage> image = Optional.empty();
+        Optional<SkinSource> skin = Optional.empty();
 
         if (texture instanceof PlayerSkinTexture playerSkinTexture) {
-            image = encodePlayerSkinTexture(client, playerSkinTexture);
-            if (image.isEmpty()) {
-                return SkinPayload.empty();
-            }
+            skin = readPlayerSkinTexture(client, textures.texture(), playerSkinTexture);
         } else if (texture instanceof ResourceTexture resourceTexture) {
-            image = encodeResourceTexture(client, resourceTexture);
-            if (image.isEmpty()) {
-                return SkinPayload.empty();
-            }
+            skin = readResourceTexture(client, resourceTexture);
         }
+        return skin.orElseGet(SkinSource::empty);
+    }
 
-        if (image.isEmpty()) {
-            return SkinPayload.empty();
+    private static SkinSource.Pixels pixels(NativeImage image) {
+        int[] argb = image.copyPixelsArgb();
+        if (!SkinEncoder.isSkin(argb, image.getWidth(), image.getHeight())) {
+            return null;
         }
-        NativeImage frontView = image.get();
-        NativeImage scaled = scaleImage(frontView);
-        byte[] bytes = toRGB565(scaled);
-        return new SkinPayload(scaled.getWidth(), scaled.getHeight(), bytes);
+        return new SkinSource.Pixels(image.getWidth(), image.getHeight(), argb);
     }
 
-    private static Optional<NativeImage> encodeFrontView(NativeImage skin) {
-        NativeImage front = buildFrontView(skin);
-        return Optional.of(front);
+    private static SkinSource.Pixels decodePng(byte[] png) throws IOException {
+        try (InputStream input = new ByteArrayInputStream(png);
+             NativeImage image = NativeImage.read(input)) {
+            return pixels(image);
+        }
     }
 
-    private static Optional<NativeImage> encodeResourceTexture(MinecraftClient client, ResourceTexture texture) {
-        Identifier location = getResourceTextureLocation(texture);
+    private static Optional<SkinSource> readResourceTexture(MinecraftClient client, ResourceTexture texture) {
+        Identifier location = SkinTextureAccess.resourceLocation(texture);
         if (location == null) {
             return Optional.empty();
         }
-        Object resourceManager = client.getResourceManager();
-        Object textureData = null;
+        String textureId = location.toString();
+        if (latestSkin.matches(textureId, null)) {
+            return Optional.of(latestSkin);
+        }
         try {
-            Class<?> resourceManagerClass = Class.forName("net.minecraft.resource.ResourceManager");
-            Class<?> textureDataClass = Class.forName("net.minecraft.client.texture.ResourceTexture$TextureData");
-            var load = textureDataClass.getDeclaredMethod("load", resourceManagerClass, Identifier.class);
-            load.setAccessible(true);
-            textureData = load.invoke(null, resourceManager, location);
-            var getImage = textureDataClass.getDeclaredMethod("getImage");
-            getImage.setAccessible(true);
-            NativeImage image = (NativeImage) getImage.invoke(textureData);
-            return encodeFrontView(image);
+            return SkinTextureAccess.withResourceImage(
+                    client.getResourceManager(),
+                    location,
+                    image -> Optional.ofNullable(pixels(image)).map(pixels -> SkinSource.of(textureId, null, pixels))
+            );
         } catch (Exception e) {
             LOGGER.debug("Failed to read resource texture {}", location, e);
             return Optional.empty();
-        } finally {
-            if (textureData != null) {
-                try {
-                    var close = textureData.getClass().getDeclaredMethod("close");
-                    close.setAccessible(true);
-                    close.invoke(textureData);
-                } catch (Exception e) {
-                    LOGGER.debug("Failed to close resource texture data", e);
-                }
-            }
         }
     }
 
-    private static Field findFieldByType(Class<?> type, Class<?> fieldType) {
-        for (Field field : type.getDeclaredFields()) {
-            if (field.getType() == fieldType) {
-                return field;
-            }
-        }
-        return null;
-    }
-
-
-    private static Optional<NativeImage> encodePlayerSkinTexture(MinecraftClient client, PlayerSkinTexture texture) {
-        File cacheFile = null;
-        try {
-            var field = findFieldByType(PlayerSkinTexture.class, File.class);
-            assert field != null;
-            field.setAccessible(true);
-            cacheFile = (File) field.get(texture);
-        } catch (ReflectiveOperationException e) {
-            LOGGER.info("Failed to access player skin cache file", e);
-        }
-
+    // Only reads and hashes the file; the render pool decodes it if no view of this hash is cached yet.
+    private static Optional<SkinSource> readPlayerSkinTexture(
+            MinecraftClient client,
+            Identifier textureId,
+            PlayerSkinTexture texture
+    ) {
+        File cacheFile = SkinTextureAccess.playerSkinCacheFile(texture);
         if (cacheFile == null) {
-            return encodeResourceTexture(client, texture);
+            return readResourceTexture(client, texture);
         }
 
-        try (InputStream input = new FileInputStream(cacheFile)) {
-            NativeImage image = NativeImage.read(input);
-            return encodeFrontView(image);
+        try {
+            byte[] fileBytes = Files.readAllBytes(cacheFile.toPath());
+            String contentHash = SkinPayloadCache.contentHash(fileBytes);
+            if (latestSkin.matches(textureId.toString(), contentHash)) {
+                return Optional.of(latestSkin);
+            }
+            return Optional.of(new SkinSource(textureId.toString(), contentHash, () -> decodePng(fileBytes)));
         } catch (Exception e) {
             LOGGER.warn("Failed to read player skin cache file {}", cacheFile, e);
             return Optional.empty();
         }
     }
 
-    private static Identifier getResourceTextureLocation(ResourceTexture texture) {
-        try {
-            var field = ResourceTexture.class.getDeclaredField("location");
-            field.setAccessible(true);
-            return (Identifier) field.get(texture);
-        } catch (ReflectiveOperationException e) {
-            LOGGER.debug("Failed to access ResourceTexture location", e);
-            return null;
+    public record Snapshot(
+            String mode,
+            String name,
+            double health,
+            double maxHealth
+    ) {
+        public static Snapshot defaultSnapshot() {
+            return new Snapshot("-----", "-----", 0.0, 0.0);
         }
     }
 
-    private static NativeImage buildFrontView(NativeImage skin) {
-        int skinWidth = skin.getWidth();
-        int skinHeight = skin.getHeight();
-        boolean hasSecondLayer = skinHeight >= 64 && skinWidth >= 64;
-        NativeImage front = new NativeImage(16, 32, true);
+    // A skin texture as the client tick found it. Its pixels are decoded on first use, which SkinRenders only
+    // does on its pool and only once the payload cache missed for this content hash.
+    public static final class SkinSource {
+        private static final SkinSource EMPTY = new SkinSource("", null, () -> null);
 
-        // Head
-        blit(skin, 8, 8, 8, 8, front, 4, 0);
-        if (hasSecondLayer) {
-            blitAlpha(skin, 40, 8, 8, 8, front, 4, 0);
-        }
+        private final String textureId;
+        private final String contentHash;
+        private final Decoder decoder;
+        private Pixels pixels;
+        private boolean decoded;
 
-        // Body
-        blit(skin, 20, 20, 8, 12, front, 4, 8);
-        if (hasSecondLayer) {
-            blitAlpha(skin, 20, 36, 8, 12, front, 4, 8);
+        private SkinSource(String textureId, String contentHash, Decoder decoder) {
+            this.textureId = textureId;
+            this.contentHash = contentHash;
+            this.decoder = decoder;
         }
 
-        // Right arm
-        blit(skin, 44, 20, 4, 12, front, 0, 8);
-        if (hasSecondLayer) {
-            blitAlpha(skin, 44, 36, 4, 12, front, 0, 8);
+        public static SkinSource empty() {
+            return EMPTY;
         }
 
-        // Left arm
-        if (hasSecondLayer) {
-            blit(skin, 36, 52, 4, 12, front, 12, 8);
-            blitAlpha(skin, 52, 52, 4, 12, front, 12, 8);
-        } else {
-            blit(skin, 44, 20, 4, 12, front, 12, 8);
+        static SkinSource of(String textureId, String contentHash, Pixels pixels) {
+            SkinSource skin = new SkinSource(textureId, contentHash, () -> pixels);
+            skin.pixels = pixels;
+            skin.decoded = true;
+            return skin;
         }
 
-        // Right leg
-        blit(skin, 4, 20, 4, 12, front, 4, 20);
-        if (hasSecondLayer) {
-            blitAlpha(skin, 4, 36, 4, 12, front, 4, 20);
+        public String textureId() {
+            return textureId;
         }
 
-        // Left leg
-        if (hasSecondLayer) {
-            blit(skin, 20, 52, 4, 12, front, 8, 20);
-            blitAlpha(skin, 4, 52, 4, 12, front, 8, 20);
-        } else {
-            blit(skin, 4, 20, 4, 12, front, 8, 20);
+        public String contentHash() {
+            return contentHash;
         }
 
-        return front;
-    }
+        public boolean isEmpty() {
+            return this == EMPTY;
+        }
 
-    private static void blit(NativeImage src, int sx, int sy, int w, int h, NativeImage dst, int dx, int dy) {
-        for (int y = 0; y < h; y++) {
-            for (int x = 0; x < w; x++) {
-                int color = src.getColorArgb(sx + x, sy + y);
-                dst.setColorArgb(dx + x, dy + y, color);
-            }
+        public boolean matches(String textureId, String contentHash) {
+            return !isEmpty() && this.textureId.equals(textureId) && Objects.equals(this.contentHash, contentHash);
         }
-    }
 
-    private static void blitAlpha(NativeImage src, int sx, int sy, int w, int h, NativeImage dst, int dx, int dy) {
-        for (int y = 0; y < h; y++) {
-            for (int x = 0; x < w; x++) {
-                int color = src.getColorArgb(sx + x, sy + y);
-                int alpha = (color >>> 24) & 0xFF;
-                if (alpha == 0) {
-                    continue;
+        // Null if the texture cannot be decoded or is not a skin.
+        public synchronized Pixels pixels() {
+            if (!decoded) {
+                decoded = true;
+                try {
+                    pixels = decoder.decode();
+                } catch (Exception e) {
+                    LOGGER.warn("Failed to decode skin {}", textureId, e);
                 }
-                dst.setColorArgb(dx + x, dy + y, color);
             }
+            return pixels;
         }
-    }
 
-    public record Snapshot(
-            String mode,
-            String name,
-            double health,
-            double maxHealth
-    ) {
-        public static Snapshot defaultSnapshot() {
-            return new Snapshot("-----", "-----", 0.0, 0.0);
+        public record Pixels(int width, int height, int[] argb) {
+        }
+
+        private interface Decoder {
+            Pixels decode() throws Exception;
         }
     }
 
-    public record SkinPayload(int width, int height, byte[] rgb565) {
+    // mask holds one bit per pixel (row-major, least significant bit first, 1 = opaque); empty means all opaque.
+    public record SkinPayload(int width, int height, byte[] wire, byte[] mask, long contentHash) {
+        private static final long FNV_OFFSET = 0xcbf29ce484222325L;
+        private static final long FNV_PRIME = 0x100000001b3L;
+        private static final byte[] NO_BYTES = new byte[0];
+
         public static SkinPayload empty() {
-            return new SkinPayload(0, 0, new byte[0]);
+            return new SkinPayload(0, 0, NO_BYTES, NO_BYTES, 0L);
         }
 
-        public byte[] toWireBytes() {
-            if (rgb565.length == 0) {
-                return new byte[0];
-            }
-            byte[] data = new byte[4 + rgb565.length];
-            data[0] = (byte) (width & 0xFF);
-            data[1] = (byte) ((width >>> 8) & 0xFF);
-            data[2] = (byte) (height & 0xFF);
-            data[3] = (byte) ((height >>> 8) & 0xFF);
-
-            for (int i = 0; i < rgb565.length; i += 2) {
-                byte lsb = rgb565[i];
-                byte msb = rgb565[i + 1];
-                data[4 + i] = msb;
-                data[4 + i + 1] = lsb;
+        public static SkinPayload ofWire(int width, int height, byte[] wire) {
+            return of(width, height, wire, NO_BYTES);
+        }
+
+        public static SkinPayload of(int width, int height, byte[] wire, byte[] mask) {
+            return new SkinPayload(width, height, wire, mask, hash(mask, hash(wire, FNV_OFFSET)));
+        }
+
+        private static long hash(byte[] bytes, long hash) {
+            for (byte value : bytes) {
+                hash = (hash ^ (value & 0xFF)) * FNV_PRIME;
             }
-            return data;
+            return hash;
+        }
+
+        public boolean isEmpty() {
+            return wire.length == 0;
+        }
+
+        public boolean sameContent(SkinPayload other) {
+            return other != null
+                    && contentHash == other.contentHash
+                    && width == other.width
+                    && height == other.height
+                    && Arrays.equals(wire, other.wire)
+                    && Arrays.equals(mask, other.mask);
+        }
+
+        public int pixelOffset(int x, int y) {
+            return SkinEncoder.HEADER_BYTES + (y * width + x) * 2;
+        }
+
+        // RGB565 value of the pixel at row-major index i.
+        public int pixel(int i) {
+            int offset = SkinEncoder.HEADER_BYTES + i * 2;
+            return ((wire[offset] & 0xFF) << 8) | (wire[offset + 1] & 0xFF);
+        }
+
+        public boolean opaque(int i) {
+            return mask.length == 0 || (mask[i / 8] & (1 << (i % 8))) != 0;
+        }
+
+        public byte[] toWireBytes() {
+            return wire;
         }
     }
 }
@@ -1,70 +1,316 @@
 package com.robcholz.lumen;
 
-import com.fazecast.jSerialComm.SerialPort;
+import com.robcholz.lumen.transport.LumenTransport;
+import com.robcholz.lumen.transport.Transports;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 import java.io.IOException;
-import java.nio.charset.StandardCharsets;
+import java.util.BitSet;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.Consumer;
 
 public class SerialPackClient implements AutoCloseable {
-    private final SerialPort port;
+    private static final Logger LOGGER = LoggerFactory.getLogger("lumen");
+    private static final long BAUD_SETTLE_MILLIS = 50;
+    private static final long DEVICE_BAUD_FALLBACK_MILLIS = 1200;
+    private static final int MAX_INBOUND_PAYLOAD = 4096;
+    private static final long MIN_WRITE_DEADLINE_NANOS = TimeUnit.MILLISECONDS.toNanos(500);
+    private static final long CREDIT_WAIT_NANOS = TimeUnit.SECONDS.toNanos(2);
+
+    private final LumenTransport transport;
     private final String portPath;
+    private final FrameBuffer frameBuffer = new FrameBuffer();
+    private final FrameDecoder decoder;
+    private final Thread reader;
+    private final Object creditLock = new Object();
+    private long credits;
+    private volatile boolean closed;
+    private volatile DeviceCapabilities capabilities;
+    private final Map<String, CompletableFuture<byte[]>> pendingReplies = new ConcurrentHashMap<>();
+    private volatile int baudRate;
+    private volatile Consumer<LumenFrame> inboundListener = frame -> {
+    };
+
+    public SerialPackClient(String portPath, int baudRate) throws IOException {
+        this(Transports.open(portPath, baudRate), baudRate);
+    }
+
+    public SerialPackClient(LumenTransport transport, int baudRate) {
+        this.transport = transport;
+        this.portPath = transport.address();
+        this.baudRate = baudRate;
+        capabilities = DeviceCapabilities.legacy().withMaxFrameBytes(transport.maxWriteBytes());
+        decoder = new FrameDecoder(LumenProtocol.DEVICE_PREFIX, MAX_INBOUND_PAYLOAD, this::onInbound);
+        reader = new Thread(this::runReader, "lumen-serial-reader");
+        reader.setDaemon(true);
+        reader.start();
+    }
+
+    public DeviceCapabilities handshake(long timeoutMillis) throws IOException {
+        try {
+            // A frame has to fit one transport write, or a datagram link would split it.
+            capabilities = DeviceCapabilities.parse(
+                    request(LumenProtocol.HELLO_PATH, LumenProtocol.hostHello(), timeoutMillis)
+            ).withMaxFrameBytes(transport.maxWriteBytes());
+        } catch (TimeoutException e) {
+            // Firmware without the handshake never answers; keep the write-only behaviour for it.
+            capabilities = DeviceCapabilities.legacy().withMaxFrameBytes(transport.maxWriteBytes());
+        } catch (IllegalArgumentException e) {
+            throw new IOException("Invalid device hello on " + portPath, e);
+        }
+        return capabilities;
+    }
 
-    public SerialPackClient(String portPath) throws IOException {
-        this.portPath = portPath;
-        port = SerialPort.getCommPort(portPath);
-        if (port == null) {
-            throw new IOException("Serial port not found: " + portPath);
+    // The device acknowledges at the current rate and then switches. If the host does not greet it at the
+    // new rate, it falls back on its own; the host mirrors that and verifies at the old rate again.
+    public boolean requestBaudRate(int rate, long timeoutMillis) throws IOException {
+        int previous = baudRate;
+        try {
+            byte[] ack = request(LumenProtocol.BAUD_PATH, LumenProtocol.u32(rate), timeoutMillis);
+            if (ack.length < 4 || DeviceCapabilities.readU32(ack, 0) != rate) {
+                return false;
+            }
+        } catch (TimeoutException e) {
+            return false;
+        }
+        switchBaudRate(rate);
+        if (!handshake(timeoutMillis).isLegacy()) {
+            return true;
+        }
+        LOGGER.debug("No handshake at {} baud on {}, falling back to {}", rate, portPath, previous);
+        switchBaudRate(previous);
+        sleep(DEVICE_BAUD_FALLBACK_MILLIS);
+        if (handshake(timeoutMillis).isLegacy()) {
+            throw new IOException("Device on " + portPath + " lost after baud change to " + rate);
+        }
+        return false;
+    }
+
+    public double probeThroughput(int payloadBytes, long timeoutMillis) throws IOException {
+        int frameBytes = frameBuffer.frameSize(LumenProtocol.PROBE_PATH, payloadBytes);
+        long start = System.nanoTime();
+        try {
+            byte[] ack = request(LumenProtocol.PROBE_PATH, new byte[payloadBytes], timeoutMillis);
+            if (ack.length < 4 || DeviceCapabilities.readU32(ack, 0) != payloadBytes) {
+                return -1;
+            }
+        } catch (TimeoutException e) {
+            return -1;
         }
-        port.setBaudRate(460800);
-        port.setComPortTimeouts(SerialPort.TIMEOUT_WRITE_BLOCKING, 0, 0);
-        if (!port.openPort()) {
-            throw new IOException("Failed to open serial port: " + portPath);
+        long elapsed = Math.max(1, System.nanoTime() - start);
+        return frameBytes * (double) TimeUnit.SECONDS.toNanos(1) / elapsed;
+    }
+
+    public int getBaudRate() {
+        return baudRate;
+    }
+
+    private void switchBaudRate(int rate) throws IOException {
+        if (!transport.setBaudRate(rate)) {
+            throw new IOException("Failed to set " + rate + " baud on " + portPath);
         }
+        baudRate = rate;
+        decoder.reset();
+        sleep(BAUD_SETTLE_MILLIS);
     }
 
-    private static byte[] encodeU32(int value) {
-        return new byte[]{
-                (byte) (value & 0xFF),
-                (byte) ((value >>> 8) & 0xFF),
-                (byte) ((value >>> 16) & 0xFF),
-                (byte) ((value >>> 24) & 0xFF)
-        };
+    private byte[] request(String path, byte[] data, long timeoutMillis) throws IOException, TimeoutException {
+        CompletableFuture<byte[]> reply = new CompletableFuture<>();
+        pendingReplies.put(path, reply);
+        try {
+            if (!sendAll(List.of(new LumenFrame(path, data))).isEmpty()) {
+                throw new IOException("Request " + path + " is too large for the device on " + portPath);
+            }
+            return reply.get(timeoutMillis, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted waiting for " + path + " on " + portPath, e);
+        } catch (ExecutionException e) {
+            throw new IOException("Request " + path + " failed on " + portPath, e.getCause());
+        } finally {
+            pendingReplies.remove(path, reply);
+        }
     }
 
-    public synchronized void send(String path, byte[] data) throws IOException {
-        if (!port.isOpen()) {
-            throw new IOException("Serial port is closed");
+    private static void sleep(long millis) throws IOException {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted", e);
         }
-        byte[] pathBytes = path.getBytes(StandardCharsets.UTF_8);
-        writeAll(pathBytes);
-        writeAll(new byte[]{'\n'});
-        writeAll(encodeU32(data.length));
-        writeAll(data);
+    }
+
+    public DeviceCapabilities getCapabilities() {
+        return capabilities;
+    }
+
+    public void setInboundListener(Consumer<LumenFrame> listener) {
+        inboundListener = listener;
+    }
+
+    // Goes through the same frame limit and credit accounting as sendAll; a frame the device cannot take is dropped.
+    public void send(String path, byte[] data) throws IOException {
+        sendAll(List.of(new LumenFrame(path, data)));
+    }
+
+    // Returns the indices of the frames that were too large for the device and left out.
+    public BitSet sendAll(List<LumenFrame> frames) throws IOException {
+        BitSet dropped = new BitSet();
+        sendAll(frames, dropped);
+        return dropped;
+    }
+
+    // Same, filling a caller-owned set so a steady writer does not allocate one per batch.
+    public synchronized void sendAll(List<LumenFrame> frames, BitSet dropped) throws IOException {
+        DeviceCapabilities device = capabilities;
+        frameBuffer.clear();
+        dropped.clear();
+        int maxFrame = device.frameLimit();
+        for (int i = 0; i < frames.size(); i++) {
+            LumenFrame frame = frames.get(i);
+            int size = frameBuffer.frameSize(frame.path(), frame.data().length);
+            if (size > maxFrame) {
+                LOGGER.debug("Dropping {} frame of {} bytes; device accepts at most {}",
+                        frame.path(), size, maxFrame);
+                dropped.set(i);
+                continue;
+            }
+            if (frameBuffer.length() + size > transport.maxWriteBytes()) {
+                flush();
+            }
+            if (device.flowControl() && frameBuffer.length() + size > availableCredits()) {
+                flush();
+                awaitCredits(size);
+            }
+            frameBuffer.append(frame.path(), frame.data());
+        }
+        flush();
+    }
+
+    private void flush() throws IOException {
+        if (!transport.isOpen()) {
+            throw new IOException("Link to " + portPath + " is closed");
+        }
+        if (frameBuffer.isEmpty()) {
+            return;
+        }
+        long deadline = System.nanoTime() + writeBudgetNanos(frameBuffer.length());
+        writeAll(frameBuffer.array(), frameBuffer.length(), deadline);
+        if (capabilities.flowControl()) {
+            synchronized (creditLock) {
+                credits -= frameBuffer.length();
+            }
+        }
+        frameBuffer.clear();
+    }
+
+    private long availableCredits() {
+        synchronized (creditLock) {
+            return credits;
+        }
+    }
+
+    private void awaitCredits(int required) throws IOException {
+        long deadline = System.nanoTime() + CREDIT_WAIT_NANOS;
+        synchronized (creditLock) {
+            while (credits < required) {
+                long remaining = deadline - System.nanoTime();
+                if (remaining <= 0 || closed) {
+                    throw new IOException("Device on " + portPath + " stopped granting receive credits");
+                }
+                try {
+                    TimeUnit.NANOSECONDS.timedWait(creditLock, remaining);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new IOException("Interrupted while waiting for credits on " + portPath, e);
+                }
+            }
+        }
+    }
+
+    private long writeBudgetNanos(int bytes) {
+        // Twice the time the frame needs on the wire (10 bits per byte), plus slack for the driver.
+        long wireNanos = bytes * 10L * TimeUnit.SECONDS.toNanos(1) / baudRate;
+        return MIN_WRITE_DEADLINE_NANOS + wireNanos * 2;
     }
 
     public boolean isOpen() {
-        return port.isOpen();
+        return !closed && transport.isOpen();
     }
 
     public String getPortPath() {
         return portPath;
     }
 
-    private void writeAll(byte[] bytes) throws IOException {
+    private void writeAll(byte[] bytes, int length, long deadline) throws IOException {
         int offset = 0;
-        while (offset < bytes.length) {
-            int written = port.writeBytes(bytes, bytes.length - offset, offset);
-            if (written <= 0) {
-                throw new IOException("Serial write failed");
+        while (offset < length) {
+            if (System.nanoTime() - deadline > 0) {
+                throw new IOException("Serial write deadline exceeded on " + portPath);
+            }
+            offset += transport.write(bytes, offset, length - offset);
+        }
+    }
+
+    private void runReader() {
+        byte[] buffer = new byte[512];
+        while (!closed && transport.isOpen()) {
+            try {
+                int read = transport.read(buffer, 0, buffer.length);
+                if (read > 0) {
+                    decoder.feed(buffer, 0, read);
+                }
+            } catch (IOException e) {
+                LOGGER.debug("Read failed on {}", portPath, e);
+                break;
             }
-            offset += written;
+        }
+        closed = true;
+        synchronized (creditLock) {
+            creditLock.notifyAll();
+        }
+    }
+
+    private void onInbound(LumenFrame frame) {
+        if (LumenProtocol.CREDIT_PATH.equals(frame.path())) {
+            if (frame.data().length >= 4) {
+                synchronized (creditLock) {
+                    credits += DeviceCapabilities.readU32(frame.data(), 0);
+                    creditLock.notifyAll();
+                }
+            }
+            return;
+        }
+        if (LumenProtocol.HELLO_PATH.equals(frame.path())) {
+            // Reset credits here, on the reader, so a credit frame right behind the hello is not lost.
+            try {
+                DeviceCapabilities device = DeviceCapabilities.parse(frame.data());
+                synchronized (creditLock) {
+                    credits = device.receiveCredits();
+                }
+            } catch (IllegalArgumentException e) {
+                LOGGER.debug("Ignoring malformed device hello on {}", portPath, e);
+            }
+        }
+        CompletableFuture<byte[]> reply = pendingReplies.remove(frame.path());
+        if (reply != null) {
+            reply.complete(frame.data());
+        } else {
+            inboundListener.accept(frame);
         }
     }
 
     @Override
     public void close() {
-        if (port.isOpen()) {
-            port.closePort();
-        }
+        closed = true;
+        transport.close();
     }
 }
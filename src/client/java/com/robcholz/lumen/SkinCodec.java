@@ -0,0 +1,268 @@
+package com.robcholz.lumen;
+
+import java.util.Arrays;
+
+// Codec-framed bodies start with u8 codec id and u32 raw length (little-endian), followed by the encoded bytes.
+public enum SkinCodec {
+    NONE(0),
+    RLE(1),
+    LZ4(2);
+
+    public static final int HEADER_BYTES = 5;
+    private static final int LZ4_HASH_BITS = 12;
+    private static final int LZ4_MIN_MATCH = 4;
+    private static final int LZ4_LAST_LITERALS = 5;
+    private static final int LZ4_MF_LIMIT = 12;
+    private static final int LZ4_MAX_OFFSET = 0xFFFF;
+    private static final int RLE_MAX_PACKET = 128;
+
+    private final int id;
+
+    SkinCodec(int id) {
+        this.id = id;
+    }
+
+    public int id() {
+        return id;
+    }
+
+    public int mask() {
+        return 1 << id;
+    }
+
+    public static SkinCodec fromId(int id) {
+        for (SkinCodec codec : values()) {
+            if (codec.id == id) {
+                return codec;
+            }
+        }
+        throw new IllegalArgumentException("Unknown skin codec " + id);
+    }
+
+    public byte[] wrap(byte[] raw) {
+        byte[] body = encode(raw);
+        SkinCodec used = this;
+        if (body.length >= raw.length) {
+            body = raw;
+            used = NONE;
+        }
+        byte[] data = new byte[HEADER_BYTES + body.length];
+        data[0] = (byte) used.id;
+        data[1] = (byte) (raw.length & 0xFF);
+        data[2] = (byte) ((raw.length >>> 8) & 0xFF);
+        data[3] = (byte) ((raw.length >>> 16) & 0xFF);
+        data[4] = (byte) ((raw.length >>> 24) & 0xFF);
+        System.arraycopy(body, 0, data, HEADER_BYTES, body.length);
+        return data;
+    }
+
+    public static byte[] unwrap(byte[] data) {
+        if (data.length < HEADER_BYTES) {
+            throw new IllegalArgumentException("Codec header truncated");
+        }
+        SkinCodec codec = fromId(data[0] & 0xFF);
+        int rawLength = (data[1] & 0xFF)
+                | ((data[2] & 0xFF) << 8)
+                | ((data[3] & 0xFF) << 16)
+                | ((data[4] & 0xFF) << 24);
+        return codec.decode(Arrays.copyOfRange(data, HEADER_BYTES, data.length), rawLength);
+    }
+
+    public byte[] encode(byte[] raw) {
+        return switch (this) {
+            case NONE -> raw;
+            case RLE -> encodeRle(raw);
+            case LZ4 -> encodeLz4(raw);
+        };
+    }
+
+    public byte[] decode(byte[] body, int rawLength) {
+        return switch (this) {
+            case NONE -> body;
+            case RLE -> decodeRle(body, rawLength);
+            case LZ4 -> decodeLz4(body, rawLength);
+        };
+    }
+
+    // RLE over 16-bit pixels: control byte with the high bit set repeats the next word (c & 0x7F) + 1 times,
+    // otherwise c + 1 literal words follow. An odd trailing byte is padded and cut off by the raw length.
+    private static byte[] encodeRle(byte[] raw) {
+        int words = (raw.length + 1) / 2;
+        byte[] out = new byte[raw.length + 1 + words / RLE_MAX_PACKET + 2];
+        int op = 0;
+        int word = 0;
+        while (word < words) {
+            int value = wordAt(raw, word);
+            int run = 1;
+            while (word + run < words && run < RLE_MAX_PACKET && wordAt(raw, word + run) == value) {
+                run++;
+            }
+            if (run > 1) {
+                out[op++] = (byte) (0x80 | (run - 1));
+                out[op++] = (byte) (value >>> 8);
+                out[op++] = (byte) value;
+                word += run;
+                continue;
+            }
+            int start = word;
+            int count = 0;
+            while (word < words && count < RLE_MAX_PACKET) {
+                if (word + 1 < words && wordAt(raw, word + 1) == wordAt(raw, word)) {
+                    break;
+                }
+                word++;
+                count++;
+            }
+            out[op++] = (byte) (count - 1);
+            for (int i = start; i < start + count; i++) {
+                int literal = wordAt(raw, i);
+                out[op++] = (byte) (literal >>> 8);
+                out[op++] = (byte) literal;
+            }
+        }
+        return Arrays.copyOf(out, op);
+    }
+
+    private static int wordAt(byte[] raw, int word) {
+        int index = word * 2;
+        int hi = raw[index] & 0xFF;
+        int lo = index + 1 < raw.length ? raw[index + 1] & 0xFF : 0;
+        return (hi << 8) | lo;
+    }
+
+    private static byte[] decodeRle(byte[] body, int rawLength) {
+        byte[] out = new byte[rawLength + 1];
+        int ip = 0;
+        int op = 0;
+        while (ip < body.length && op < rawLength) {
+            int control = body[ip++] & 0xFF;
+            if ((control & 0x80) != 0) {
+                byte hi = body[ip++];
+                byte lo = body[ip++];
+                for (int i = 0; i <= (control & 0x7F); i++) {
+                    out[op++] = hi;
+                    out[op++] = lo;
+                }
+            } else {
+                int bytes = (control + 1) * 2;
+                System.arraycopy(body, ip, out, op, bytes);
+                ip += bytes;
+                op += bytes;
+            }
+        }
+        return Arrays.copyOf(out, rawLength);
+    }
+
+    // LZ4 block format, greedy single-probe matcher.
+    private static byte[] encodeLz4(byte[] src) {
+        int length = src.length;
+        byte[] dst = new byte[length + length / 255 + 16];
+        int[] table = new int[1 << LZ4_HASH_BITS];
+        Arrays.fill(table, -1);
+        int anchor = 0;
+        int ip = 0;
+        int op = 0;
+        int matchLimit = length - LZ4_LAST_LITERALS;
+        int mfLimit = length - LZ4_MF_LIMIT;
+        while (ip < mfLimit) {
+            int sequence = readInt(src, ip);
+            int hash = (sequence * -1640531535) >>> (32 - LZ4_HASH_BITS);
+            int ref = table[hash];
+            table[hash] = ip;
+            if (ref < 0 || ip - ref > LZ4_MAX_OFFSET || readInt(src, ref) != sequence) {
+                ip++;
+                continue;
+            }
+            while (ip > anchor && ref > 0 && src[ip - 1] == src[ref - 1]) {
+                ip--;
+                ref--;
+            }
+            int matchLength = LZ4_MIN_MATCH;
+            while (ip + matchLength < matchLimit && src[ip + matchLength] == src[ref + matchLength]) {
+                matchLength++;
+            }
+            op = writeSequence(dst, op, src, anchor, ip - anchor, ip - ref, matchLength);
+            ip += matchLength;
+            anchor = ip;
+        }
+        op = writeLiterals(dst, op, src, anchor, length - anchor);
+        return Arrays.copyOf(dst, op);
+    }
+
+    private static int writeSequence(byte[] dst, int op, byte[] src, int anchor, int literals, int offset, int matchLength) {
+        int tokenIndex = op;
+        op = writeLiterals(dst, op, src, anchor, literals);
+        int extraMatch = matchLength - LZ4_MIN_MATCH;
+        dst[tokenIndex] |= (byte) Math.min(extraMatch, 15);
+        dst[op++] = (byte) offset;
+        dst[op++] = (byte) (offset >>> 8);
+        if (extraMatch >= 15) {
+            op = writeLength(dst, op, extraMatch - 15);
+        }
+        return op;
+    }
+
+    private static int writeLiterals(byte[] dst, int op, byte[] src, int anchor, int literals) {
+        dst[op++] = (byte) (Math.min(literals, 15) << 4);
+        if (literals >= 15) {
+            op = writeLength(dst, op, literals - 15);
+        }
+        System.arraycopy(src, anchor, dst, op, literals);
+        return op + literals;
+    }
+
+    private static int writeLength(byte[] dst, int op, int remaining) {
+        while (remaining >= 255) {
+            dst[op++] = (byte) 255;
+            remaining -= 255;
+        }
+        dst[op++] = (byte) remaining;
+        return op;
+    }
+
+    private static int readInt(byte[] src, int index) {
+        return (src[index] & 0xFF)
+                | ((src[index + 1] & 0xFF) << 8)
+                | ((src[index + 2] & 0xFF) << 16)
+                | ((src[index + 3] & 0xFF) << 24);
+    }
+
+    private static byte[] decodeLz4(byte[] body, int rawLength) {
+        byte[] out = new byte[rawLength];
+        int ip = 0;
+        int op = 0;
+        while (ip < body.length) {
+            int token = body[ip++] & 0xFF;
+            int literals = token >>> 4;
+            if (literals == 15) {
+                int extra;
+                do {
+                    extra = body[ip++] & 0xFF;
+                    literals += extra;
+                } while (extra == 255);
+            }
+            System.arraycopy(body, ip, out, op, literals);
+            ip += literals;
+            op += literals;
+            if (ip >= body.length) {
+                break;
+            }
+            int offset = (body[ip] & 0xFF) | ((body[ip + 1] & 0xFF) << 8);
+            ip += 2;
+            int matchLength = token & 0x0F;
+            if (matchLength == 15) {
+                int extra;
+                do {
+                    extra = body[ip++] & 0xFF;
+                    matchLength += extra;
+                } while (extra == 255);
+            }
+            matchLength += LZ4_MIN_MATCH;
+            int ref = op - offset;
+            for (int i = 0; i < matchLength; i++) {
+                out[op++] = out[ref + i];
+            }
+        }
+        return out;
+    }
+}
@@ -0,0 +1,305 @@
+package com.robcholz.lumen;
+
+public final class SkinEncoder {
+    public static final int FRONT_WIDTH = 16;
+    public static final int FRONT_HEIGHT = 32;
+    public static final int HEAD_SIZE = 8;
+    public static final int HEADER_BYTES = 4;
+    private static final int MIN_SKIN_WIDTH = 64;
+    private static final int MIN_SKIN_HEIGHT = 32;
+    // The isometric view is drawn this many times larger than needed, so area averaging smooths its slanted edges.
+    private static final int ISOMETRIC_SUPERSAMPLE = 2;
+    private static final int MAX_PIXELS_PER_TEXEL = 16;
+    // Height for devices that do not report a screen size, as sent before views existed.
+    public static final int DEFAULT_HEIGHT = 120;
+    // A screen size comes straight from the device hello; anything larger is a bug, not a display.
+    public static final int MAX_RENDER_SIZE = 512;
+    private static final int FRAME_OVERHEAD = 32;
+
+    record View(int width, int height, int[] argb) {
+    }
+
+    // The box a view is fitted into (width 0 = height only).
+    public record RenderSize(int maxWidth, int maxHeight) {
+    }
+
+    private SkinEncoder() {
+    }
+
+    public static boolean isSkin(int[] skin, int skinWidth, int skinHeight) {
+        return skinWidth >= MIN_SKIN_WIDTH && skinHeight >= MIN_SKIN_HEIGHT && skin.length >= skinWidth * skinHeight;
+    }
+
+    // The device's screen, clamped to MAX_RENDER_SIZE, then shrunk until a full RGB565 frame of any view fits
+    // maxFrameBytes, for firmware that takes a skin as one frame. Views are never wider than tall, so a height-only
+    // box is budgeted as a square.
+    public static RenderSize renderSize(int screenWidth, int screenHeight, int maxFrameBytes) {
+        int width = screenHeight > 0 ? Math.min(screenWidth, MAX_RENDER_SIZE) : 0;
+        int height = screenHeight > 0 ? Math.min(screenHeight, MAX_RENDER_SIZE) : DEFAULT_HEIGHT;
+        long pixels = Math.max(1, ((long) maxFrameBytes - FRAME_OVERHEAD - SkinCodec.HEADER_BYTES - HEADER_BYTES) / 2);
+        long area = (long) (width > 0 ? width : height) * height;
+        if (area > pixels) {
+            double scale = Math.sqrt(pixels / (double) area);
+            height = Math.max(1, (int) (height * scale));
+            width = width > 0 ? Math.max(1, (int) (width * scale)) : 0;
+        }
+        return new RenderSize(width, height);
+    }
+
+    public static LumenSyncState.SkinPayload encodeFrontView(int[] skin, int skinWidth, int skinHeight, int dstHeight) {
+        return encodeView(SkinView.FRONT, skin, skinWidth, skinHeight, 0, dstHeight, false);
+    }
+
+    // Fits the view into maxWidth x maxHeight (maxWidth 0 = height only) keeping its aspect ratio. Area averaging
+    // only applies when shrinking; enlarging stays nearest-neighbor so texels keep hard edges.
+    public static LumenSyncState.SkinPayload encodeView(
+            SkinView view,
+            int[] skin,
+            int skinWidth,
+            int skinHeight,
+            int maxWidth,
+            int maxHeight,
+            boolean areaAverage
+    ) {
+        if (!isSkin(skin, skinWidth, skinHeight)) {
+            return LumenSyncState.SkinPayload.empty();
+        }
+        View image = render(view, skin, skinWidth, skinHeight, maxHeight, areaAverage);
+        int dstHeight = maxHeight;
+        int dstWidth = scaledWidth(image.width(), image.height(), dstHeight);
+        if (maxWidth > 0 && dstWidth > maxWidth) {
+            dstWidth = maxWidth;
+            dstHeight = scaledWidth(image.height(), image.width(), maxWidth);
+        }
+        int[] pixels = image.argb();
+        int srcWidth = image.width();
+        int srcHeight = image.height();
+        if (areaAverage && dstWidth < srcWidth && dstHeight < srcHeight) {
+            pixels = scaleArea(pixels, srcWidth, srcHeight, dstWidth, dstHeight);
+            srcWidth = dstWidth;
+            srcHeight = dstHeight;
+        }
+        byte[] wire = encodeWire(pixels, srcWidth, srcHeight, dstWidth, dstHeight);
+        byte[] mask = encodeMask(pixels, srcWidth, srcHeight, dstWidth, dstHeight);
+        return LumenSyncState.SkinPayload.of(dstWidth, dstHeight, wire, mask);
+    }
+
+    static View render(SkinView view, int[] skin, int skinWidth, int skinHeight, int targetHeight, boolean supersample) {
+        return switch (view) {
+            case FRONT -> new View(FRONT_WIDTH, FRONT_HEIGHT, buildFrontView(skin, skinWidth, skinHeight));
+            case BACK -> new View(FRONT_WIDTH, FRONT_HEIGHT, buildBackView(skin, skinWidth, skinHeight));
+            case HEAD -> new View(HEAD_SIZE, HEAD_SIZE, buildHeadView(skin, skinWidth, skinHeight));
+            case ISOMETRIC -> IsometricSkinRenderer.render(skin, skinWidth, skinHeight, Math.max(1, Math.min(
+                    MAX_PIXELS_PER_TEXEL,
+                    (targetHeight * (supersample ? ISOMETRIC_SUPERSAMPLE : 1) + FRONT_HEIGHT - 1) / FRONT_HEIGHT)));
+        };
+    }
+
+    public static int scaledWidth(int srcWidth, int srcHeight, int dstHeight) {
+        return Math.max(1, Math.round((srcWidth * (float) dstHeight) / srcHeight));
+    }
+
+    static int[] buildFrontView(int[] skin, int skinWidth, int skinHeight) {
+        boolean hasSecondLayer = skinHeight >= 64 && skinWidth >= 64;
+        int[] front = new int[FRONT_WIDTH * FRONT_HEIGHT];
+
+        // Head
+        blit(skin, skinWidth, 8, 8, 8, 8, front, 4, 0);
+        if (hasSecondLayer) {
+            blitAlpha(skin, skinWidth, 40, 8, 8, 8, front, 4, 0);
+        }
+
+        // Body
+        blit(skin, skinWidth, 20, 20, 8, 12, front, 4, 8);
+        if (hasSecondLayer) {
+            blitAlpha(skin, skinWidth, 20, 36, 8, 12, front, 4, 8);
+        }
+
+        // Right arm
+        blit(skin, skinWidth, 44, 20, 4, 12, front, 0, 8);
+        if (hasSecondLayer) {
+            blitAlpha(skin, skinWidth, 44, 36, 4, 12, front, 0, 8);
+        }
+
+        // Left arm
+        if (hasSecondLayer) {
+            blit(skin, skinWidth, 36, 52, 4, 12, front, 12, 8);
+            blitAlpha(skin, skinWidth, 52, 52, 4, 12, front, 12, 8);
+        } else {
+            blit(skin, skinWidth, 44, 20, 4, 12, front, 12, 8);
+        }
+
+        // Right leg
+        blit(skin, skinWidth, 4, 20, 4, 12, front, 4, 20);
+        if (hasSecondLayer) {
+            blitAlpha(skin, skinWidth, 4, 36, 4, 12, front, 4, 20);
+        }
+
+        // Left leg
+        if (hasSecondLayer) {
+            blit(skin, skinWidth, 20, 52, 4, 12, front, 8, 20);
+            blitAlpha(skin, skinWidth, 4, 52, 4, 12, front, 8, 20);
+        } else {
+            blit(skin, skinWidth, 4, 20, 4, 12, front, 8, 20);
+        }
+
+        return front;
+    }
+
+    // Seen from behind, the player's right side is on the right.
+    static int[] buildBackView(int[] skin, int skinWidth, int skinHeight) {
+        boolean hasSecondLayer = skinHeight >= 64 && skinWidth >= 64;
+        int[] back = new int[FRONT_WIDTH * FRONT_HEIGHT];
+
+        // Head
+        blit(skin, skinWidth, 24, 8, 8, 8, back, 4, 0);
+        if (hasSecondLayer) {
+            blitAlpha(skin, skinWidth, 56, 8, 8, 8, back, 4, 0);
+        }
+
+        // Body
+        blit(skin, skinWidth, 32, 20, 8, 12, back, 4, 8);
+        if (hasSecondLayer) {
+            blitAlpha(skin, skinWidth, 32, 36, 8, 12, back, 4, 8);
+        }
+
+        // Right arm
+        blit(skin, skinWidth, 52, 20, 4, 12, back, 12, 8);
+        if (hasSecondLayer) {
+            blitAlpha(skin, skinWidth, 52, 36, 4, 12, back, 12, 8);
+        }
+
+        // Left arm
+        if (hasSecondLayer) {
+            blit(skin, skinWidth, 44, 52, 4, 12, back, 0, 8);
+            blitAlpha(skin, skinWidth, 60, 52, 4, 12, back, 0, 8);
+        } else {
+            blit(skin, skinWidth, 52, 20, 4, 12, back, 0, 8);
+        }
+
+        // Right leg
+        blit(skin, skinWidth, 12, 20, 4, 12, back, 8, 20);
+        if (hasSecondLayer) {
+            blitAlpha(skin, skinWidth, 12, 36, 4, 12, back, 8, 20);
+        }
+
+        // Left leg
+        if (hasSecondLayer) {
+            blit(skin, skinWidth, 28, 52, 4, 12, back, 4, 20);
+            blitAlpha(skin, skinWidth, 12, 52, 4, 12, back, 4, 20);
+        } else {
+            blit(skin, skinWidth, 12, 20, 4, 12, back, 4, 20);
+        }
+
+        return back;
+    }
+
+    static int[] buildHeadView(int[] skin, int skinWidth, int skinHeight) {
+        int[] front = buildFrontView(skin, skinWidth, skinHeight);
+        int[] head = new int[HEAD_SIZE * HEAD_SIZE];
+        for (int y = 0; y < HEAD_SIZE; y++) {
+            System.arraycopy(front, y * FRONT_WIDTH + 4, head, y * HEAD_SIZE, HEAD_SIZE);
+        }
+        return head;
+    }
+
+    // Box filter: a target pixel is opaque when at least half of its area is, and takes the alpha-weighted mean
+    // color, so outlines neither darken nor spread into transparent areas.
+    static int[] scaleArea(int[] argb, int srcWidth, int srcHeight, int dstWidth, int dstHeight) {
+        int[] scaled = new int[dstWidth * dstHeight];
+        double scaleX = (double) srcWidth / dstWidth;
+        double scaleY = (double) srcHeight / dstHeight;
+        double opaqueAlpha = 255.0 * scaleX * scaleY / 2;
+        for (int y = 0; y < dstHeight; y++) {
+            double y0 = y * scaleY;
+            double y1 = y0 + scaleY;
+            int syEnd = Math.min(srcHeight, (int) Math.ceil(y1));
+            for (int x = 0; x < dstWidth; x++) {
+                double x0 = x * scaleX;
+                double x1 = x0 + scaleX;
+                int sxEnd = Math.min(srcWidth, (int) Math.ceil(x1));
+                double alpha = 0;
+                double red = 0;
+                double green = 0;
+                double blue = 0;
+                for (int sy = (int) y0; sy < syEnd; sy++) {
+                    double weightY = Math.min(y1, sy + 1) - Math.max(y0, sy);
+                    for (int sx = (int) x0; sx < sxEnd; sx++) {
+                        int color = argb[sy * srcWidth + sx];
+                        double weight = (color >>> 24) * weightY * (Math.min(x1, sx + 1) - Math.max(x0, sx));
+                        alpha += weight;
+                        red += ((color >>> 16) & 0xFF) * weight;
+                        green += ((color >>> 8) & 0xFF) * weight;
+                        blue += (color & 0xFF) * weight;
+                    }
+                }
+                if (alpha >= opaqueAlpha) {
+                    scaled[y * dstWidth + x] = 0xFF000000
+                            | ((int) Math.round(red / alpha) << 16)
+                            | ((int) Math.round(green / alpha) << 8)
+                            | (int) Math.round(blue / alpha);
+                }
+            }
+        }
+        return scaled;
+    }
+
+    // Nearest-neighbor scale and RGB565 conversion in one pass, written straight in wire order:
+    // u16 width, u16 height (little-endian), then big-endian pixels.
+    static byte[] encodeWire(int[] argb, int srcWidth, int srcHeight, int dstWidth, int dstHeight) {
+        byte[] data = new byte[HEADER_BYTES + dstWidth * dstHeight * 2];
+        data[0] = (byte) (dstWidth & 0xFF);
+        data[1] = (byte) ((dstWidth >>> 8) & 0xFF);
+        data[2] = (byte) (dstHeight & 0xFF);
+        data[3] = (byte) ((dstHeight >>> 8) & 0xFF);
+        int idx = HEADER_BYTES;
+        for (int y = 0; y < dstHeight; y++) {
+            int row = ((y * srcHeight) / dstHeight) * srcWidth;
+            for (int x = 0; x < dstWidth; x++) {
+                int value = toRGB565(argb[row + (x * srcWidth) / dstWidth]);
+                data[idx++] = (byte) ((value >>> 8) & 0xFF);
+                data[idx++] = (byte) (value & 0xFF);
+            }
+        }
+        return data;
+    }
+
+    // Opacity bits sampled like encodeWire: one per pixel, row-major, least significant bit first.
+    static byte[] encodeMask(int[] argb, int srcWidth, int srcHeight, int dstWidth, int dstHeight) {
+        byte[] mask = new byte[(dstWidth * dstHeight + 7) / 8];
+        int bit = 0;
+        for (int y = 0; y < dstHeight; y++) {
+            int row = ((y * srcHeight) / dstHeight) * srcWidth;
+            for (int x = 0; x < dstWidth; x++, bit++) {
+                if ((argb[row + (x * srcWidth) / dstWidth] >>> 24) != 0) {
+                    mask[bit / 8] |= (byte) (1 << (bit % 8));
+                }
+            }
+        }
+        return mask;
+    }
+
+    static int toRGB565(int color) {
+        return ((color >>> 8) & 0xF800) | ((color >>> 5) & 0x07E0) | ((color & 0xFF) >>> 3);
+    }
+
+    private static void blit(int[] src, int srcWidth, int sx, int sy, int w, int h, int[] dst, int dx, int dy) {
+        for (int y = 0; y < h; y++) {
+            System.arraycopy(src, (sy + y) * srcWidth + sx, dst, (dy + y) * FRONT_WIDTH + dx, w);
+        }
+    }
+
+    private static void blitAlpha(int[] src, int srcWidth, int sx, int sy, int w, int h, int[] dst, int dx, int dy) {
+        for (int y = 0; y < h; y++) {
+            int srcRow = (sy + y) * srcWidth + sx;
+            int dstRow = (dy + y) * FRONT_WIDTH + dx;
+            for (int x = 0; x < w; x++) {
+                int color = src[srcRow + x];
+                if ((color >>> 24) == 0) {
+                    continue;
+                }
+                dst[dstRow + x] = color;
+            }
+        }
+    }
+}
@@ -0,0 +1,193 @@
+package com.robcholz.lumen;
+
+import com.robcholz.lumen.LumenSyncState.SkinPayload;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+public final class SkinFrameTracker {
+    public static final String FULL_PATH = "sync/skin";
+    public static final String DELTA_PATH = "sync/skin/delta";
+    public static final String INDEXED_PATH = "sync/skin/indexed";
+    public static final String PALETTE_PATH = "sync/skin/palette";
+    private static final int TILE_SIZE = 8;
+    private static final int DELTA_HEADER_BYTES = 6;
+    private static final int RECT_HEADER_BYTES = 8;
+
+    private SkinPayload lastSent;
+    private long lastSentConnection = -1;
+    private byte[] lastPalette;
+    private long lastPaletteConnection = -1;
+
+    // An image frame and, for indexed frames, the palette frame the device must hold before it.
+    public record SkinFrame(LumenFrame image, LumenFrame palette) {
+    }
+
+    public synchronized LumenFrame next(SkinPayload payload, long connection) {
+        return frame(base(connection), payload);
+    }
+
+    // What the device on this connection last received, or null if it needs a full frame.
+    public synchronized SkinPayload base(long connection) {
+        return lastSentConnection == connection ? lastSent : null;
+    }
+
+    public static LumenFrame frame(SkinPayload lastSent, SkinPayload payload) {
+        SkinFrame frame = encode(lastSent, payload, false, false);
+        return frame == null ? null : frame.image();
+    }
+
+    // With indexed set, full frames go out palette-indexed whenever that is smaller, even counting the palette;
+    // deltas stay RGB565, since the changed pixels are often new colors that the palette does not hold.
+    public static SkinFrame encode(SkinPayload lastSent, SkinPayload payload, boolean indexed, boolean dither) {
+        if (payload == null || payload.isEmpty()) {
+            return null;
+        }
+        if (lastSent == null
+                || lastSent.width() != payload.width()
+                || lastSent.height() != payload.height()
+                || !Arrays.equals(lastSent.mask(), payload.mask())) {
+            return full(payload, indexed, dither);
+        }
+        if (lastSent.sameContent(payload)) {
+            return null;
+        }
+        List<Rect> rects = dirtyRects(lastSent, payload);
+        if (rects.isEmpty()) {
+            return null;
+        }
+        int deltaSize = DELTA_HEADER_BYTES;
+        for (Rect rect : rects) {
+            deltaSize += RECT_HEADER_BYTES + rect.width() * rect.height() * 2;
+        }
+        if (deltaSize >= payload.wire().length) {
+            return full(payload, indexed, dither);
+        }
+        return new SkinFrame(new LumenFrame(DELTA_PATH, encodeDelta(payload, rects, deltaSize)), null);
+    }
+
+    private static SkinFrame full(SkinPayload payload, boolean indexed, boolean dither) {
+        if (indexed) {
+            SkinPalette.Indexed data = SkinPalette.encode(payload, dither);
+            if (data.length() < payload.wire().length) {
+                return new SkinFrame(new LumenFrame(INDEXED_PATH, data.frame()),
+                        new LumenFrame(PALETTE_PATH, data.palette()));
+            }
+        }
+        return new SkinFrame(new LumenFrame(FULL_PATH, payload.toWireBytes()), null);
+    }
+
+    // Whether the device on this connection already holds this palette.
+    public synchronized boolean hasPalette(byte[] palette, long connection) {
+        return lastPaletteConnection == connection && Arrays.equals(lastPalette, palette);
+    }
+
+    public synchronized void markPalette(byte[] palette, long connection) {
+        lastPalette = palette;
+        lastPaletteConnection = connection;
+    }
+
+    public synchronized void markSent(SkinPayload payload, long connection) {
+        lastSent = payload;
+        lastSentConnection = connection;
+    }
+
+    public synchronized void reset() {
+        lastSent = null;
+        lastSentConnection = -1;
+        lastPalette = null;
+        lastPaletteConnection = -1;
+    }
+
+    private static List<Rect> dirtyRects(SkinPayload previous, SkinPayload current) {
+        int width = current.width();
+        int height = current.height();
+        int tilesX = (width + TILE_SIZE - 1) / TILE_SIZE;
+        int tilesY = (height + TILE_SIZE - 1) / TILE_SIZE;
+        List<Rect> closed = new ArrayList<>();
+        List<Rect> open = new ArrayList<>();
+
+        for (int ty = 0; ty < tilesY; ty++) {
+            List<Rect> nextOpen = new ArrayList<>();
+            int y0 = ty * TILE_SIZE;
+            int y1 = Math.min(height, y0 + TILE_SIZE);
+            int runStart = -1;
+            for (int tx = 0; tx <= tilesX; tx++) {
+                boolean dirty = tx < tilesX && tileDirty(previous, current, tx * TILE_SIZE, y0,
+                        Math.min(width, (tx + 1) * TILE_SIZE), y1);
+                if (dirty && runStart < 0) {
+                    runStart = tx;
+                } else if (!dirty && runStart >= 0) {
+                    int x0 = runStart * TILE_SIZE;
+                    int x1 = Math.min(width, tx * TILE_SIZE);
+                    Rect above = takeMatching(open, x0, x1);
+                    if (above != null) {
+                        nextOpen.add(new Rect(x0, above.y(), x1 - x0, y1 - above.y()));
+                    } else {
+                        nextOpen.add(new Rect(x0, y0, x1 - x0, y1 - y0));
+                    }
+                    runStart = -1;
+                }
+            }
+            closed.addAll(open);
+            open = nextOpen;
+        }
+        closed.addAll(open);
+        return closed;
+    }
+
+    private static Rect takeMatching(List<Rect> open, int x0, int x1) {
+        for (int i = 0; i < open.size(); i++) {
+            Rect rect = open.get(i);
+            if (rect.x() == x0 && rect.x() + rect.width() == x1) {
+                return open.remove(i);
+            }
+        }
+        return null;
+    }
+
+    private static boolean tileDirty(SkinPayload previous, SkinPayload current, int x0, int y0, int x1, int y1) {
+        byte[] a = previous.wire();
+        byte[] b = current.wire();
+        for (int y = y0; y < y1; y++) {
+            int from = current.pixelOffset(x0, y);
+            int to = current.pixelOffset(x1, y);
+            for (int i = from; i < to; i++) {
+                if (a[i] != b[i]) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    private static byte[] encodeDelta(SkinPayload payload, List<Rect> rects, int size) {
+        byte[] data = new byte[size];
+        int idx = 0;
+        idx = putU16(data, idx, payload.width());
+        idx = putU16(data, idx, payload.height());
+        idx = putU16(data, idx, rects.size());
+        for (Rect rect : rects) {
+            idx = putU16(data, idx, rect.x());
+            idx = putU16(data, idx, rect.y());
+            idx = putU16(data, idx, rect.width());
+            idx = putU16(data, idx, rect.height());
+            int rowBytes = rect.width() * 2;
+            for (int y = rect.y(); y < rect.y() + rect.height(); y++) {
+                System.arraycopy(payload.wire(), payload.pixelOffset(rect.x(), y), data, idx, rowBytes);
+                idx += rowBytes;
+            }
+        }
+        return data;
+    }
+
+    private static int putU16(byte[] data, int idx, int value) {
+        data[idx] = (byte) (value & 0xFF);
+        data[idx + 1] = (byte) ((value >>> 8) & 0xFF);
+        return idx + 2;
+    }
+
+    private record Rect(int x, int y, int width, int height) {
+    }
+}
@@ -0,0 +1,334 @@
+package com.robcholz.lumen;
+
+import com.robcholz.lumen.LumenSyncState.SkinPayload;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+// Indexed skin: the palette goes out once per connection as its own frame, u8 entries - 1 then the entries as
+// big-endian RGB565 words. Indexed frames refer to the palette the device last received: u16 width, u16 height
+// (little-endian), u8 bits per index (4 or 8), the opacity mask (one bit per pixel, row-major, least
+// significant bit first, 1 = opaque), then one index per pixel, two per byte high nibble first at 4 bits.
+// Transparent pixels carry index 0. Skins with more than 256 colors are reduced by median cut, optionally with
+// Floyd-Steinberg dithering across the opaque pixels.
+public final class SkinPalette {
+    public static final int HEADER_BYTES = 5;
+    private static final int MAX_COLORS = 256;
+    private static final int NIBBLE_COLORS = 16;
+
+    public record Indexed(byte[] palette, byte[] frame) {
+        public int length() {
+            return palette.length + frame.length;
+        }
+    }
+
+    private SkinPalette() {
+    }
+
+    public static Indexed encode(SkinPayload payload, boolean dither) {
+        int width = payload.width();
+        int height = payload.height();
+        int pixels = width * height;
+        int[] colors = new int[pixels];
+        Map<Integer, Integer> counts = new HashMap<>();
+        for (int i = 0; i < pixels; i++) {
+            colors[i] = payload.pixel(i);
+            if (payload.opaque(i)) {
+                counts.merge(colors[i], 1, Integer::sum);
+            }
+        }
+        int[] palette;
+        int[] indices;
+        if (counts.size() <= MAX_COLORS) {
+            palette = exactPalette(counts);
+            indices = exactIndices(payload, colors, palette);
+        } else {
+            palette = medianCut(counts);
+            indices = dither
+                    ? ditheredIndices(payload, colors, palette)
+                    : nearestIndices(payload, colors, palette);
+        }
+        byte[] paletteData = new byte[1 + palette.length * 2];
+        paletteData[0] = (byte) (palette.length - 1);
+        int idx = 1;
+        for (int color : palette) {
+            paletteData[idx++] = (byte) ((color >>> 8) & 0xFF);
+            paletteData[idx++] = (byte) (color & 0xFF);
+        }
+        int bits = palette.length <= NIBBLE_COLORS ? 4 : 8;
+        int maskBytes = (pixels + 7) / 8;
+        int indexBytes = bits == 4 ? (pixels + 1) / 2 : pixels;
+        byte[] data = new byte[HEADER_BYTES + maskBytes + indexBytes];
+        data[0] = (byte) (width & 0xFF);
+        data[1] = (byte) ((width >>> 8) & 0xFF);
+        data[2] = (byte) (height & 0xFF);
+        data[3] = (byte) ((height >>> 8) & 0xFF);
+        data[4] = (byte) bits;
+        idx = HEADER_BYTES;
+        for (int i = 0; i < pixels; i++) {
+            if (payload.opaque(i)) {
+                data[idx + i / 8] |= (byte) (1 << (i % 8));
+            }
+        }
+        idx += maskBytes;
+        for (int i = 0; i < pixels; i++) {
+            if (bits == 8) {
+                data[idx + i] = (byte) indices[i];
+            } else {
+                data[idx + i / 2] |= (byte) (i % 2 == 0 ? indices[i] << 4 : indices[i]);
+            }
+        }
+        return new Indexed(paletteData, data);
+    }
+
+    // Most used colors first; a skin with no opaque pixels still gets one entry.
+    private static int[] exactPalette(Map<Integer, Integer> counts) {
+        if (counts.isEmpty()) {
+            return new int[]{0};
+        }
+        List<Map.Entry<Integer, Integer>> entries = new ArrayList<>(counts.entrySet());
+        entries.sort(Map.Entry.<Integer, Integer>comparingByValue().reversed()
+                .thenComparing(Map.Entry.comparingByKey()));
+        int[] palette = new int[entries.size()];
+        for (int i = 0; i < palette.length; i++) {
+            palette[i] = entries.get(i).getKey();
+        }
+        return palette;
+    }
+
+    private static int[] exactIndices(SkinPayload payload, int[] colors, int[] palette) {
+        Map<Integer, Integer> lookup = new HashMap<>();
+        for (int i = 0; i < palette.length; i++) {
+            lookup.put(palette[i], i);
+        }
+        int[] indices = new int[colors.length];
+        for (int i = 0; i < colors.length; i++) {
+            if (payload.opaque(i)) {
+                indices[i] = lookup.get(colors[i]);
+            }
+        }
+        return indices;
+    }
+
+    // Splits the box with the widest channel at its pixel-weighted median until there are MAX_COLORS boxes,
+    // then takes each box's weighted mean.
+    private static int[] medianCut(Map<Integer, Integer> counts) {
+        int[] colors = new int[counts.size()];
+        int[] weights = new int[counts.size()];
+        int n = 0;
+        for (Map.Entry<Integer, Integer> entry : counts.entrySet()) {
+            colors[n] = entry.getKey();
+            weights[n++] = entry.getValue();
+        }
+        List<Box> boxes = new ArrayList<>();
+        boxes.add(new Box(colors, weights, 0, colors.length));
+        while (boxes.size() < MAX_COLORS) {
+            Box widest = null;
+            for (Box box : boxes) {
+                if (box.end - box.start > 1 && (widest == null || box.range() > widest.range())) {
+                    widest = box;
+                }
+            }
+            if (widest == null) {
+                break;
+            }
+            boxes.remove(widest);
+            boxes.addAll(widest.split());
+        }
+        int[] palette = new int[boxes.size()];
+        for (int i = 0; i < palette.length; i++) {
+            palette[i] = boxes.get(i).mean();
+        }
+        return palette;
+    }
+
+    private static int[] nearestIndices(SkinPayload payload, int[] colors, int[] palette) {
+        Map<Integer, Integer> nearest = new HashMap<>();
+        int[] indices = new int[colors.length];
+        for (int i = 0; i < colors.length; i++) {
+            if (payload.opaque(i)) {
+                int color = colors[i];
+                indices[i] = nearest.computeIfAbsent(color,
+                        key -> nearest(palette, red(key), green(key), blue(key)));
+            }
+        }
+        return indices;
+    }
+
+    // Floyd-Steinberg in 8-bit RGB; error only flows between opaque pixels so outlines stay clean.
+    private static int[] ditheredIndices(SkinPayload payload, int[] colors, int[] palette) {
+        int width = payload.width();
+        int height = payload.height();
+        float[] error = new float[(width + 2) * 2 * 3];
+        int[] indices = new int[colors.length];
+        for (int y = 0; y < height; y++) {
+            int current = (y % 2) * (width + 2) * 3;
+            int next = ((y + 1) % 2) * (width + 2) * 3;
+            Arrays.fill(error, next, next + (width + 2) * 3, 0);
+            for (int x = 0; x < width; x++) {
+                int i = y * width + x;
+                if (!payload.opaque(i)) {
+                    continue;
+                }
+                int e = current + (x + 1) * 3;
+                int r = clamp(red(colors[i]) + error[e]);
+                int g = clamp(green(colors[i]) + error[e + 1]);
+                int b = clamp(blue(colors[i]) + error[e + 2]);
+                int index = nearest(palette, r, g, b);
+                indices[i] = index;
+                float[] residual = {
+                        r - red(palette[index]), g - green(palette[index]), b - blue(palette[index])
+                };
+                boolean right = x + 1 < width && payload.opaque(i + 1);
+                boolean below = y + 1 < height;
+                for (int c = 0; c < 3; c++) {
+                    if (right) {
+                        error[e + 3 + c] += residual[c] * 7 / 16;
+                    }
+                    if (below) {
+                        int n = next + (x + 1) * 3 + c;
+                        if (x > 0 && payload.opaque(i + width - 1)) {
+                            error[n - 3] += residual[c] * 3 / 16;
+                        }
+                        if (payload.opaque(i + width)) {
+                            error[n] += residual[c] * 5 / 16;
+                        }
+                        if (x + 1 < width && payload.opaque(i + width + 1)) {
+                            error[n + 3] += residual[c] / 16;
+                        }
+                    }
+                }
+            }
+        }
+        return indices;
+    }
+
+    private static int nearest(int[] palette, int r, int g, int b) {
+        int best = 0;
+        int bestDistance = Integer.MAX_VALUE;
+        for (int i = 0; i < palette.length; i++) {
+            int dr = red(palette[i]) - r;
+            int dg = green(palette[i]) - g;
+            int db = blue(palette[i]) - b;
+            int distance = dr * dr + dg * dg + db * db;
+            if (distance < bestDistance) {
+                bestDistance = distance;
+                best = i;
+            }
+        }
+        return best;
+    }
+
+    private static int clamp(float value) {
+        return Math.max(0, Math.min(255, Math.round(value)));
+    }
+
+    private static int red(int rgb565) {
+        int red = (rgb565 >>> 11) & 0x1F;
+        return (red << 3) | (red >>> 2);
+    }
+
+    private static int green(int rgb565) {
+        int green = (rgb565 >>> 5) & 0x3F;
+        return (green << 2) | (green >>> 4);
+    }
+
+    private static int blue(int rgb565) {
+        int blue = rgb565 & 0x1F;
+        return (blue << 3) | (blue >>> 2);
+    }
+
+    private static int channel(int rgb565, int channel) {
+        return switch (channel) {
+            case 0 -> red(rgb565);
+            case 1 -> green(rgb565);
+            default -> blue(rgb565);
+        };
+    }
+
+    private static final class Box {
+        private final int[] colors;
+        private final int[] weights;
+        private final int start;
+        private final int end;
+        private int widestChannel;
+        private int range = -1;
+
+        private Box(int[] colors, int[] weights, int start, int end) {
+            this.colors = colors;
+            this.weights = weights;
+            this.start = start;
+            this.end = end;
+        }
+
+        private int range() {
+            if (range < 0) {
+                for (int c = 0; c < 3; c++) {
+                    int min = 255;
+                    int max = 0;
+                    for (int i = start; i < end; i++) {
+                        int value = channel(colors[i], c);
+                        min = Math.min(min, value);
+                        max = Math.max(max, value);
+                    }
+                    if (max - min > range) {
+                        range = max - min;
+                        widestChannel = c;
+                    }
+                }
+            }
+            return range;
+        }
+
+        private List<Box> split() {
+            range();
+            int channel = widestChannel;
+            Integer[] order = new Integer[end - start];
+            for (int i = 0; i < order.length; i++) {
+                order[i] = start + i;
+            }
+            Arrays.sort(order, Comparator.comparingInt(i -> channel(colors[i], channel)));
+            int[] sortedColors = new int[order.length];
+            int[] sortedWeights = new int[order.length];
+            long total = 0;
+            for (int i = 0; i < order.length; i++) {
+                sortedColors[i] = colors[order[i]];
+                sortedWeights[i] = weights[order[i]];
+                total += sortedWeights[i];
+            }
+            System.arraycopy(sortedColors, 0, colors, start, order.length);
+            System.arraycopy(sortedWeights, 0, weights, start, order.length);
+            long half = 0;
+            int median = start + 1;
+            for (int i = start; i < end - 1; i++) {
+                half += weights[i];
+                median = i + 1;
+                if (half * 2 >= total) {
+                    break;
+                }
+            }
+            return List.of(new Box(colors, weights, start, median), new Box(colors, weights, median, end));
+        }
+
+        private int mean() {
+            long r = 0;
+            long g = 0;
+            long b = 0;
+            long total = 0;
+            for (int i = start; i < end; i++) {
+                r += (long) red(colors[i]) * weights[i];
+                g += (long) green(colors[i]) * weights[i];
+                b += (long) blue(colors[i]) * weights[i];
+                total += weights[i];
+            }
+            int red = (int) (r / total);
+            int green = (int) (g / total);
+            int blue = (int) (b / total);
+            return ((red & 0xF8) << 8) | ((green & 0xFC) << 3) | (blue >>> 3);
+        }
+    }
+}
@@ -0,0 +1,176 @@
+package com.robcholz.lumen;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.FileTime;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HexFormat;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+public final class SkinPayloadCache {
+    private static final Logger LOGGER = LoggerFactory.getLogger("lumen");
+    private static final int MAGIC = 0x4C534B32; // "LSK2"
+    private static final int MAX_MEMORY_ENTRIES = 64;
+    private static final int MAX_DISK_ENTRIES = 128;
+
+    private final Path directory;
+    private final LinkedHashMap<String, LumenSyncState.SkinPayload> memory =
+            new LinkedHashMap<>(16, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<String, LumenSyncState.SkinPayload> eldest) {
+                    return size() > MAX_MEMORY_ENTRIES;
+                }
+            };
+
+    public SkinPayloadCache(Path directory) {
+        this.directory = directory;
+    }
+
+    public static String contentHash(byte[] bytes) {
+        try {
+            return HexFormat.of().formatHex(MessageDigest.getInstance("SHA-1").digest(bytes));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-1 not available", e);
+        }
+    }
+
+    // variant names the rendering (view, size, scaling), so every view of a skin has its own entry.
+    public synchronized LumenSyncState.SkinPayload get(String textureId, String contentHash, String variant) {
+        LumenSyncState.SkinPayload payload = memory.get(memoryKey(textureId, contentHash, variant));
+        if (payload != null || contentHash == null) {
+            return payload;
+        }
+        payload = readDisk(contentHash, variant);
+        if (payload != null) {
+            memory.put(memoryKey(textureId, contentHash, variant), payload);
+        }
+        return payload;
+    }
+
+    // Memory only, for callers that must not touch the disk.
+    public synchronized LumenSyncState.SkinPayload peek(String textureId, String contentHash, String variant) {
+        return memory.get(memoryKey(textureId, contentHash, variant));
+    }
+
+    public synchronized void put(String textureId, String contentHash, String variant, LumenSyncState.SkinPayload payload) {
+        if (payload.isEmpty()) {
+            return;
+        }
+        memory.put(memoryKey(textureId, contentHash, variant), payload);
+        if (contentHash != null) {
+            writeDisk(contentHash, variant, payload);
+        }
+    }
+
+    private static String memoryKey(String textureId, String contentHash, String variant) {
+        return (contentHash == null ? textureId : textureId + "#" + contentHash) + "/" + variant;
+    }
+
+    private Path diskPath(String contentHash, String variant) {
+        return directory.resolve(contentHash + "-" + variant + ".bin");
+    }
+
+    private LumenSyncState.SkinPayload readDisk(String contentHash, String variant) {
+        Path path = diskPath(contentHash, variant);
+        if (!Files.isRegularFile(path)) {
+            return null;
+        }
+        try (InputStream input = Files.newInputStream(path);
+             DataInputStream data = new DataInputStream(input)) {
+            if (data.readInt() != MAGIC) {
+                return null;
+            }
+            int width = data.readUnsignedShort();
+            int height = data.readUnsignedShort();
+            // Lengths come from disk: check them against the size before allocating anything.
+            int pixels = width * height;
+            if (data.readInt() != SkinEncoder.HEADER_BYTES + pixels * 2) {
+                return null;
+            }
+            byte[] wire = new byte[SkinEncoder.HEADER_BYTES + pixels * 2];
+            data.readFully(wire);
+            if (DeviceCapabilities.readU16(wire, 0) != width || DeviceCapabilities.readU16(wire, 2) != height) {
+                return null;
+            }
+            if (data.readInt() != (pixels + 7) / 8) {
+                return null;
+            }
+            byte[] mask = new byte[(pixels + 7) / 8];
+            data.readFully(mask);
+            Files.setLastModifiedTime(path, FileTime.fromMillis(System.currentTimeMillis()));
+            return LumenSyncState.SkinPayload.of(width, height, wire, mask);
+        } catch (IOException e) {
+            LOGGER.debug("Discarding unreadable skin cache entry {}", path, e);
+            return null;
+        }
+    }
+
+    private void writeDisk(String contentHash, String variant, LumenSyncState.SkinPayload payload) {
+        Path path = diskPath(contentHash, variant);
+        Path temp = null;
+        try {
+            Files.createDirectories(directory);
+            temp = Files.createTempFile(directory, contentHash, ".tmp");
+            try (OutputStream output = Files.newOutputStream(temp);
+                 DataOutputStream data = new DataOutputStream(output)) {
+                data.writeInt(MAGIC);
+                data.writeShort(payload.width());
+                data.writeShort(payload.height());
+                data.writeInt(payload.wire().length);
+                data.write(payload.wire());
+                data.writeInt(payload.mask().length);
+                data.write(payload.mask());
+            }
+            Files.move(temp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            temp = null;
+            prune();
+        } catch (IOException e) {
+            LOGGER.debug("Failed to write skin cache entry {}", path, e);
+        } finally {
+            if (temp != null) {
+                try {
+                    Files.deleteIfExists(temp);
+                } catch (IOException e) {
+                    LOGGER.debug("Failed to delete {}", temp, e);
+                }
+            }
+        }
+    }
+
+    private void prune() throws IOException {
+        List<Path> entries = new ArrayList<>();
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory, "*.bin")) {
+            stream.forEach(entries::add);
+        }
+        if (entries.size() <= MAX_DISK_ENTRIES) {
+            return;
+        }
+        entries.sort(Comparator.comparing(SkinPayloadCache::lastModified));
+        for (int i = 0; i < entries.size() - MAX_DISK_ENTRIES; i++) {
+            Files.deleteIfExists(entries.get(i));
+        }
+    }
+
+    private static FileTime lastModified(Path path) {
+        try {
+            return Files.getLastModifiedTime(path);
+        } catch (IOException e) {
+            return FileTime.fromMillis(0);
+        }
+    }
+}
@@ -0,0 +1,111 @@
+package com.robcholz.lumen;
+
+import com.robcholz.lumen.LumenSyncState.SkinPayload;
+import com.robcholz.lumen.LumenSyncState.SkinSource;
+import net.fabricmc.loader.api.FabricLoader;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+
+// Skin views at each device's resolution, drawn on a small background pool. The first request for a skin at a
+// given size renders every view at once, so a device switching views later finds its frame already cached.
+// Callers (the serial writers) only look in memory; disk cache reads happen on the pool, and the skin texture
+// is only decoded there once both caches missed.
+public final class SkinRenders {
+    private static final Logger LOGGER = LoggerFactory.getLogger("lumen");
+    private static final int THREADS = Math.max(1, Math.min(SkinView.values().length,
+            Runtime.getRuntime().availableProcessors() - 1));
+    private static final AtomicInteger THREAD_IDS = new AtomicInteger();
+    private static final ExecutorService POOL = Executors.newFixedThreadPool(THREADS, r -> {
+        Thread thread = new Thread(r, "lumen-skin-render-" + THREAD_IDS.incrementAndGet());
+        thread.setDaemon(true);
+        thread.setPriority(Thread.MIN_PRIORITY);
+        return thread;
+    });
+    private static final SkinPayloadCache CACHE = new SkinPayloadCache(
+            FabricLoader.getInstance().getConfigDir().resolve("lumen").resolve("skins"));
+    private static final Set<String> RENDERING = ConcurrentHashMap.newKeySet();
+    private static volatile Consumer<String> onRendered = key -> {
+    };
+
+    private SkinRenders() {
+    }
+
+    // Runs on a render thread whenever a view finishes, with the key of that view.
+    public static void onRendered(Consumer<String> listener) {
+        onRendered = listener;
+    }
+
+    // Names the view payload() looks up for this skin and device, as later passed to the onRendered listener.
+    public static String key(SkinSource skin, SkinView view, DeviceCapabilities capabilities, boolean areaAverage) {
+        SkinEncoder.RenderSize size = renderSize(capabilities);
+        return key(skin, variant(view, size.maxWidth(), size.maxHeight(), areaAverage));
+    }
+
+    // The cached view at the size the device can show and take, or null while it is still being rendered.
+    public static SkinPayload payload(SkinSource skin, SkinView view, DeviceCapabilities capabilities, boolean areaAverage) {
+        SkinEncoder.RenderSize size = renderSize(capabilities);
+        int maxWidth = size.maxWidth();
+        int maxHeight = size.maxHeight();
+        SkinPayload payload = CACHE.peek(skin.textureId(), skin.contentHash(),
+                variant(view, maxWidth, maxHeight, areaAverage));
+        if (payload != null) {
+            return payload;
+        }
+        for (SkinView each : SkinView.values()) {
+            render(skin, each, maxWidth, maxHeight, areaAverage);
+        }
+        return null;
+    }
+
+    // Without chunked transfer the whole view has to fit one frame.
+    private static SkinEncoder.RenderSize renderSize(DeviceCapabilities capabilities) {
+        return SkinEncoder.renderSize(capabilities.screenWidth(), capabilities.screenHeight(),
+                capabilities.chunkedSkins() ? Integer.MAX_VALUE : capabilities.frameLimit());
+    }
+
+    private static void render(SkinSource skin, SkinView view, int maxWidth, int maxHeight, boolean areaAverage) {
+        String variant = variant(view, maxWidth, maxHeight, areaAverage);
+        String key = key(skin, variant);
+        if (CACHE.peek(skin.textureId(), skin.contentHash(), variant) != null || !RENDERING.add(key)) {
+            return;
+        }
+        POOL.execute(() -> {
+            try {
+                SkinPayload payload = CACHE.get(skin.textureId(), skin.contentHash(), variant);
+                if (payload == null) {
+                    SkinSource.Pixels pixels = skin.pixels();
+                    if (pixels == null) {
+                        return;
+                    }
+                    payload = SkinEncoder.encodeView(view, pixels.argb(), pixels.width(), pixels.height(),
+                            maxWidth, maxHeight, areaAverage);
+                    if (payload.isEmpty()) {
+                        return;
+                    }
+                    CACHE.put(skin.textureId(), skin.contentHash(), variant, payload);
+                }
+                onRendered.accept(key);
+            } catch (RuntimeException e) {
+                LOGGER.debug("Failed to render {} view of {}", view.key(), skin.textureId(), e);
+            } finally {
+                RENDERING.remove(key);
+            }
+        });
+    }
+
+    private static String key(SkinSource skin, String variant) {
+        return skin.textureId() + "#" + skin.contentHash() + "/" + variant;
+    }
+
+    // e.g. "front-h120" for the original 120-pixel-high front view, "isometric-240x240-area" for a square screen.
+    private static String variant(SkinView view, int maxWidth, int maxHeight, boolean areaAverage) {
+        return view.key() + "-" + (maxWidth > 0 ? maxWidth + "x" : "h") + maxHeight + (areaAverage ? "-area" : "");
+    }
+}
@@ -0,0 +1,179 @@
+package com.robcholz.lumen;
+
+import net.minecraft.client.texture.NativeImage;
+import net.minecraft.client.texture.PlayerSkinTexture;
+import net.minecraft.client.texture.ResourceTexture;
+import net.minecraft.resource.ResourceManager;
+import net.minecraft.util.Identifier;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.invoke.VarHandle;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.function.Function;
+
+// Resolved once by type rather than by name, so the lookups survive intermediary remapping in production.
+public final class SkinTextureAccess {
+    private static final Logger LOGGER = LoggerFactory.getLogger("lumen");
+    private static final List<String> FAILURES = new ArrayList<>();
+    private static final VarHandle PLAYER_SKIN_CACHE_FILE = resolveField(PlayerSkinTexture.class, File.class);
+    private static final VarHandle RESOURCE_LOCATION = resolveField(ResourceTexture.class, Identifier.class);
+    private static final Class<?> TEXTURE_DATA = resolveTextureDataClass();
+    private static final MethodHandle TEXTURE_DATA_LOAD = resolveTextureDataLoad();
+    private static final MethodHandle TEXTURE_DATA_GET_IMAGE = resolveTextureDataGetImage();
+
+    private SkinTextureAccess() {
+    }
+
+    public static boolean init() {
+        if (FAILURES.isEmpty()) {
+            LOGGER.debug("Skin texture accessors resolved");
+            return true;
+        }
+        LOGGER.error("Lumen could not resolve skin texture internals ({}); skins will not be sent. "
+                + "The Minecraft mappings probably changed.", String.join(", ", FAILURES));
+        return false;
+    }
+
+    public static File playerSkinCacheFile(PlayerSkinTexture texture) {
+        if (PLAYER_SKIN_CACHE_FILE == null) {
+            return null;
+        }
+        return (File) PLAYER_SKIN_CACHE_FILE.get(texture);
+    }
+
+    public static Identifier resourceLocation(ResourceTexture texture) {
+        if (RESOURCE_LOCATION == null) {
+            return null;
+        }
+        return (Identifier) RESOURCE_LOCATION.get(texture);
+    }
+
+    public static <T> Optional<T> withResourceImage(
+            ResourceManager resourceManager,
+            Identifier location,
+            Function<NativeImage, Optional<T>> reader
+    ) throws IOException {
+        if (TEXTURE_DATA_LOAD == null || TEXTURE_DATA_GET_IMAGE == null) {
+            return Optional.empty();
+        }
+        try (Closeable textureData = loadTextureData(resourceManager, location)) {
+            NativeImage image = getImage(textureData);
+            return reader.apply(image);
+        }
+    }
+
+    private static Closeable loadTextureData(ResourceManager resourceManager, Identifier location) throws IOException {
+        try {
+            return (Closeable) TEXTURE_DATA_LOAD.invoke(resourceManager, location);
+        } catch (IOException | RuntimeException | Error e) {
+            throw e;
+        } catch (Throwable e) {
+            throw new IOException("Failed to load texture data for " + location, e);
+        }
+    }
+
+    private static NativeImage getImage(Closeable textureData) throws IOException {
+        try {
+            return (NativeImage) TEXTURE_DATA_GET_IMAGE.invoke(textureData);
+        } catch (IOException | RuntimeException | Error e) {
+            throw e;
+        } catch (Throwable e) {
+            throw new IOException("Failed to read texture data image", e);
+        }
+    }
+
+    private static VarHandle resolveField(Class<?> owner, Class<?> type) {
+        Field match = null;
+        for (Field field : owner.getDeclaredFields()) {
+            if (field.getType() == type && !Modifier.isStatic(field.getModifiers())) {
+                if (match != null) {
+                    FAILURES.add(owner.getSimpleName() + " has several " + type.getSimpleName() + " fields");
+                    return null;
+                }
+                match = field;
+            }
+        }
+        if (match == null) {
+            FAILURES.add(owner.getSimpleName() + " has no " + type.getSimpleName() + " field");
+            return null;
+        }
+        try {
+            return MethodHandles.privateLookupIn(owner, MethodHandles.lookup()).unreflectVarHandle(match);
+        } catch (IllegalAccessException e) {
+            FAILURES.add(owner.getSimpleName() + "." + match.getName() + " is not accessible");
+            return null;
+        }
+    }
+
+    private static Class<?> resolveTextureDataClass() {
+        for (Class<?> nested : ResourceTexture.class.getDeclaredClasses()) {
+            if (Closeable.class.isAssignableFrom(nested) && findStaticLoader(nested) != null) {
+                return nested;
+            }
+        }
+        FAILURES.add("ResourceTexture texture data class not found");
+        return null;
+    }
+
+    private static Method findStaticLoader(Class<?> owner) {
+        for (Method method : owner.getDeclaredMethods()) {
+            Class<?>[] parameters = method.getParameterTypes();
+            if (Modifier.isStatic(method.getModifiers())
+                    && method.getReturnType() == owner
+                    && parameters.length == 2
+                    && parameters[0] == ResourceManager.class
+                    && parameters[1] == Identifier.class) {
+                return method;
+            }
+        }
+        return null;
+    }
+
+    private static MethodHandle resolveTextureDataLoad() {
+        if (TEXTURE_DATA == null) {
+            return null;
+        }
+        try {
+            MethodHandle handle = MethodHandles.privateLookupIn(TEXTURE_DATA, MethodHandles.lookup())
+                    .unreflect(findStaticLoader(TEXTURE_DATA));
+            return handle.asType(MethodType.methodType(Closeable.class, ResourceManager.class, Identifier.class));
+        } catch (IllegalAccessException e) {
+            FAILURES.add("texture data loader is not accessible");
+            return null;
+        }
+    }
+
+    private static MethodHandle resolveTextureDataGetImage() {
+        if (TEXTURE_DATA == null) {
+            return null;
+        }
+        for (Method method : TEXTURE_DATA.getDeclaredMethods()) {
+            if (!Modifier.isStatic(method.getModifiers())
+                    && method.getReturnType() == NativeImage.class
+                    && method.getParameterCount() == 0) {
+                try {
+                    MethodHandle handle = MethodHandles.privateLookupIn(TEXTURE_DATA, MethodHandles.lookup())
+                            .unreflect(method);
+                    return handle.asType(MethodType.methodType(NativeImage.class, Closeable.class));
+                } catch (IllegalAccessException e) {
+                    FAILURES.add("texture data image getter is not accessible");
+                    return null;
+                }
+            }
+        }
+        FAILURES.add("texture data image getter not found");
+        return null;
+    }
+}
@@ -0,0 +1,167 @@
+package com.robcholz.lumen;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.CRC32;
+
+// Chunk layout: u32 transfer id, u8 kind (0 full, 1 delta, 2 indexed), u8 reserved, u16 index, u16 count, u32 total length,
+// u32 CRC32 of this chunk's data, then the data. The device answers each chunk with lumen/skin/ack carrying
+// u32 transfer id and u16 next expected index, which also rewinds the host after a bad or missing chunk. When no
+// ack arrives for ACK_TIMEOUT with chunks in flight (the last ack or the tail of the window was lost), the host
+// resends from the last acknowledged chunk.
+public final class SkinTransfer {
+    public static final String CHUNK_PATH = "sync/skin/chunk";
+    public static final String ACK_PATH = "lumen/skin/ack";
+    public static final int HEADER_BYTES = 18;
+    private static final int MAX_CHUNK_BYTES = 1024;
+    private static final int FRAME_OVERHEAD = 32;
+    private static final int WINDOW_CHUNKS = 4;
+    static final long ACK_TIMEOUT_NANOS = TimeUnit.SECONDS.toNanos(1);
+
+    private int transferId;
+    private int kind;
+    private byte[] data;
+    private int chunkSize;
+    private int chunkCount;
+    private int acked;
+    private int sent;
+    private int rewoundTo = -1;
+    private long connection = -1;
+    private long ackDeadline;
+    private Runnable onComplete;
+
+    // A chunk must fit the receive window as well as the frame limit, or it could never collect its credits.
+    public static int chunkSize(DeviceCapabilities capabilities) {
+        return Math.max(64, Math.min(MAX_CHUNK_BYTES, capabilities.frameLimit() - FRAME_OVERHEAD - HEADER_BYTES));
+    }
+
+    public synchronized List<LumenFrame> start(LumenFrame frame, int chunkSize, long connection, Runnable onComplete) {
+        int id = crc(frame.data(), 0, frame.data().length);
+        if (data == null || id != transferId || this.chunkSize != chunkSize) {
+            transferId = id;
+            kind = switch (frame.path()) {
+                case SkinFrameTracker.DELTA_PATH -> 1;
+                case SkinFrameTracker.INDEXED_PATH -> 2;
+                default -> 0;
+            };
+            data = frame.data();
+            this.chunkSize = chunkSize;
+            chunkCount = Math.max(1, (data.length + chunkSize - 1) / chunkSize);
+            acked = 0;
+            sent = 0;
+            this.connection = -1;
+        }
+        if (connection != this.connection) {
+            // Same transfer after a reconnect: pick up after the last acknowledged chunk. On the same connection
+            // the chunks in flight are left alone; a lost one is resent on the ack timeout.
+            rewoundTo = -1;
+            sent = acked;
+        }
+        this.connection = connection;
+        this.onComplete = onComplete;
+        return nextChunks(connection);
+    }
+
+    public synchronized List<LumenFrame> nextChunks(long connection) {
+        if (data == null || connection != this.connection) {
+            return List.of();
+        }
+        int end = Math.min(chunkCount, acked + WINDOW_CHUNKS);
+        List<LumenFrame> frames = new ArrayList<>(Math.max(0, end - sent));
+        while (sent < end) {
+            frames.add(new LumenFrame(CHUNK_PATH, encodeChunk(sent)));
+            sent++;
+        }
+        if (!frames.isEmpty()) {
+            ackDeadline = System.nanoTime() + ACK_TIMEOUT_NANOS;
+        }
+        return frames;
+    }
+
+    // True when chunks sent on this connection went unacknowledged for ACK_TIMEOUT.
+    public synchronized boolean retransmitDue(long connection, long now) {
+        return data != null && connection == this.connection && sent > acked && now - ackDeadline > 0;
+    }
+
+    // Rewinds to the last acknowledged chunk if the ack is still overdue, then hands out the window again.
+    public synchronized List<LumenFrame> retransmit(long connection, long now) {
+        if (retransmitDue(connection, now)) {
+            sent = acked;
+            rewoundTo = -1;
+        }
+        return nextChunks(connection);
+    }
+
+    // Returns true when more chunks can be sent.
+    public synchronized boolean onAck(byte[] ack) {
+        if (data == null || ack.length < 6 || readInt(ack, 0) != transferId) {
+            return false;
+        }
+        int next = DeviceCapabilities.readU16(ack, 4);
+        if (next > chunkCount) {
+            return false;
+        }
+        if (next > acked) {
+            acked = next;
+            rewoundTo = -1;
+            ackDeadline = System.nanoTime() + ACK_TIMEOUT_NANOS;
+        } else if (next < sent && next != rewoundTo) {
+            // No progress: the device dropped a chunk or lost its state, so resend from what it expects.
+            // Repeats of the same ack from chunks already in flight rewind only once.
+            acked = next;
+            sent = next;
+            rewoundTo = next;
+        }
+        if (acked == chunkCount) {
+            Runnable complete = onComplete;
+            data = null;
+            onComplete = null;
+            if (complete != null) {
+                complete.run();
+            }
+            return false;
+        }
+        return sent < Math.min(chunkCount, acked + WINDOW_CHUNKS);
+    }
+
+    private byte[] encodeChunk(int index) {
+        int offset = index * chunkSize;
+        int length = Math.min(chunkSize, data.length - offset);
+        byte[] chunk = new byte[HEADER_BYTES + length];
+        putU32(chunk, 0, transferId);
+        chunk[4] = (byte) kind;
+        chunk[5] = 0;
+        putU16(chunk, 6, index);
+        putU16(chunk, 8, chunkCount);
+        putU32(chunk, 10, data.length);
+        putU32(chunk, 14, crc(data, offset, length));
+        System.arraycopy(data, offset, chunk, HEADER_BYTES, length);
+        return chunk;
+    }
+
+    private static int crc(byte[] bytes, int offset, int length) {
+        CRC32 crc = new CRC32();
+        crc.update(bytes, offset, length);
+        return (int) crc.getValue();
+    }
+
+    private static int readInt(byte[] data, int idx) {
+        return (data[idx] & 0xFF)
+                | ((data[idx + 1] & 0xFF) << 8)
+                | ((data[idx + 2] & 0xFF) << 16)
+                | ((data[idx + 3] & 0xFF) << 24);
+    }
+
+    private static void putU16(byte[] data, int idx, int value) {
+        data[idx] = (byte) (value & 0xFF);
+        data[idx + 1] = (byte) ((value >>> 8) & 0xFF);
+    }
+
+    private static void putU32(byte[] data, int idx, int value) {
+        data[idx] = (byte) (value & 0xFF);
+        data[idx + 1] = (byte) ((value >>> 8) & 0xFF);
+        data[idx + 2] = (byte) ((value >>> 16) & 0xFF);
+        data[idx + 3] = (byte) ((value >>> 24) & 0xFF);
+    }
+}
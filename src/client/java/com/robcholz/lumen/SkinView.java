@@ -0,0 +1,37 @@
+package com.robcholz.lumen;
+
+// What a skin frame shows. A device picks its view by sending lumen/skin/view (u8 view id); until it does,
+// the configured view is sent.
+public enum SkinView {
+    FRONT(0, "front"),
+    BACK(1, "back"),
+    HEAD(2, "head"),
+    ISOMETRIC(3, "isometric");
+
+    public static final String REQUEST_PATH = "lumen/skin/view";
+
+    private final int id;
+    private final String key;
+
+    SkinView(int id, String key) {
+        this.id = id;
+        this.key = key;
+    }
+
+    public int id() {
+        return id;
+    }
+
+    public String key() {
+        return key;
+    }
+
+    public static SkinView byId(int id) {
+        for (SkinView view : values()) {
+            if (view.id == id) {
+                return view;
+            }
+        }
+        return null;
+    }
+}
@@ -0,0 +1,70 @@
+package com.robcholz.lumen;
+
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
+
+public final class SnapshotCodec {
+    public static final String SNAPSHOT_PATH = "sync";
+    public static final String NAME_PATH = "sync/name";
+    public static final byte VERSION = 1;
+    public static final int SNAPSHOT_BYTES = 12;
+    private static final int MAX_NAME_BYTES = 255;
+
+    // Ids are assigned once for the whole session so a snapshot frame is the same for every device;
+    // each device only needs the name frame once per connection before the id shows up.
+    private final Map<String, LumenFrame> nameFrames = new HashMap<>();
+
+    public synchronized LumenFrame nameFrame(String name) {
+        LumenFrame frame = nameFrames.get(name);
+        if (frame != null) {
+            return frame;
+        }
+        int id = nameFrames.size() & 0xFFFF;
+        byte[] nameBytes = name.getBytes(StandardCharsets.UTF_8);
+        int length = Math.min(nameBytes.length, MAX_NAME_BYTES);
+        byte[] data = new byte[4 + length];
+        data[0] = VERSION;
+        data[1] = (byte) (id & 0xFF);
+        data[2] = (byte) ((id >>> 8) & 0xFF);
+        data[3] = (byte) length;
+        System.arraycopy(nameBytes, 0, data, 4, length);
+        frame = new LumenFrame(NAME_PATH, data);
+        nameFrames.put(name, frame);
+        return frame;
+    }
+
+    public synchronized LumenFrame encode(LumenSyncState.Snapshot snapshot) {
+        int nameId = nameId(nameFrame(snapshot.name()));
+        byte[] data = new byte[SNAPSHOT_BYTES];
+        data[0] = VERSION;
+        data[1] = modeId(snapshot.mode());
+        data[2] = (byte) (nameId & 0xFF);
+        data[3] = (byte) ((nameId >>> 8) & 0xFF);
+        putF32(data, 4, (float) snapshot.health());
+        putF32(data, 8, (float) snapshot.maxHealth());
+        return new LumenFrame(SNAPSHOT_PATH, data);
+    }
+
+    private static int nameId(LumenFrame nameFrame) {
+        return (nameFrame.data()[1] & 0xFF) | ((nameFrame.data()[2] & 0xFF) << 8);
+    }
+
+    private static byte modeId(String mode) {
+        return switch (mode) {
+            case "Survival" -> 1;
+            case "Creative" -> 2;
+            case "Adventure" -> 3;
+            case "Spectator" -> 4;
+            default -> 0;
+        };
+    }
+
+    private static void putF32(byte[] data, int idx, float value) {
+        int bits = Float.floatToIntBits(value);
+        data[idx] = (byte) (bits & 0xFF);
+        data[idx + 1] = (byte) ((bits >>> 8) & 0xFF);
+        data[idx + 2] = (byte) ((bits >>> 16) & 0xFF);
+        data[idx + 3] = (byte) ((bits >>> 24) & 0xFF);
+    }
+}
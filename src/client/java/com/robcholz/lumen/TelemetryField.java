@@ -0,0 +1,170 @@
+package com.robcholz.lumen;
+
+import net.minecraft.entity.effect.StatusEffectInstance;
+import net.minecraft.entity.player.PlayerEntity;
+import net.minecraft.item.ItemStack;
+import net.minecraft.registry.Registries;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+
+// Optional player values beyond the snapshot. Each one is its own channel ("telemetry/<key>") with a
+// little-endian payload, so a device can take exactly the fields it shows, each at its own rate.
+public enum TelemetryField {
+    // u8 food level
+    HUNGER(1, "hunger", player -> new byte[]{(byte) player.getHungerManager().getFoodLevel()}),
+    // f32 saturation
+    SATURATION(2, "saturation", player -> buffer(4).putFloat(player.getHungerManager().getSaturationLevel()).array()),
+    // u8 armor points
+    ARMOR(3, "armor", player -> new byte[]{(byte) Math.max(0, Math.min(255, player.getArmor()))}),
+    // u32 level, f32 progress towards the next level (0..1)
+    XP(4, "xp", player -> buffer(8).putInt(player.experienceLevel).putFloat(player.experienceProgress).array()),
+    // f32 x, y, z
+    POSITION(5, "position", player -> buffer(12)
+            .putFloat((float) player.getX()).putFloat((float) player.getY()).putFloat((float) player.getZ()).array()),
+    // f32 yaw (-180..180, 0 = south), f32 pitch
+    FACING(6, "facing", player -> buffer(8).putFloat(wrapDegrees(player.getYaw())).putFloat(player.getPitch()).array()),
+    // u8 count, u8 id length, id (e.g. "minecraft:diamond_sword"); count 0 for an empty hand
+    HELD_ITEM(7, "held_item", TelemetryField::heldItem),
+    // u16 air ticks, u16 max air ticks
+    AIR(8, "air", player -> buffer(4)
+            .putShort((short) Math.max(0, player.getAir())).putShort((short) player.getMaxAir()).array()),
+    // u8 count, then per effect: u8 amplifier, u32 remaining ticks (0xFFFFFFFF = infinite), u8 id length, id
+    EFFECTS(9, "effects", TelemetryField::effects);
+
+    public static final String PATH_PREFIX = "telemetry/";
+    // Device -> host: repeated u8 field id, u16 interval in ms (0 = off). Replaces the device's previous request.
+    public static final String SUBSCRIBE_PATH = "lumen/telemetry";
+    private static final int MAX_ID_BYTES = 255;
+    private static final int MAX_EFFECTS = 255;
+
+    private final int id;
+    private final String key;
+    private final String path;
+    private final Function<PlayerEntity, byte[]> capture;
+
+    TelemetryField(int id, String key, Function<PlayerEntity, byte[]> capture) {
+        this.id = id;
+        this.key = key;
+        this.path = PATH_PREFIX + key;
+        this.capture = capture;
+    }
+
+    public int id() {
+        return id;
+    }
+
+    public String key() {
+        return key;
+    }
+
+    public String path() {
+        return path;
+    }
+
+    // Must run on the client thread, like LumenSyncState.publish.
+    public byte[] capture(PlayerEntity player) {
+        return capture.apply(player);
+    }
+
+    public static TelemetryField byId(int id) {
+        for (TelemetryField field : values()) {
+            if (field.id == id) {
+                return field;
+            }
+        }
+        return null;
+    }
+
+    public static TelemetryField byKey(String key) {
+        for (TelemetryField field : values()) {
+            if (field.key.equals(key)) {
+                return field;
+            }
+        }
+        return null;
+    }
+
+    public static Map<TelemetryField, Integer> parseSubscription(byte[] data) {
+        Map<TelemetryField, Integer> fields = new EnumMap<>(TelemetryField.class);
+        for (int i = 0; i + 3 <= data.length; i += 3) {
+            TelemetryField field = byId(data[i] & 0xFF);
+            if (field != null) {
+                fields.put(field, (data[i + 1] & 0xFF) | ((data[i + 2] & 0xFF) << 8));
+            }
+        }
+        return fields;
+    }
+
+    private static byte[] heldItem(PlayerEntity player) {
+        ItemStack stack = player.getMainHandStack();
+        if (stack == null || stack.isEmpty()) {
+            return new byte[2];
+        }
+        byte[] itemId = idBytes(Registries.ITEM.getId(stack.getItem()).toString());
+        ByteBuffer data = buffer(2 + itemId.length);
+        data.put((byte) Math.min(255, stack.getCount()));
+        data.put((byte) itemId.length);
+        data.put(itemId);
+        return data.array();
+    }
+
+    private static byte[] effects(PlayerEntity player) {
+        Collection<StatusEffectInstance> active = player.getStatusEffects();
+        List<byte[]> ids = new ArrayList<>();
+        int size = 1;
+        for (StatusEffectInstance effect : active) {
+            if (ids.size() == MAX_EFFECTS) {
+                break;
+            }
+            byte[] effectId = idBytes(effect.getEffectType().getIdAsString());
+            ids.add(effectId);
+            size += 6 + effectId.length;
+        }
+        ByteBuffer data = buffer(size);
+        data.put((byte) ids.size());
+        int index = 0;
+        for (StatusEffectInstance effect : active) {
+            if (index == ids.size()) {
+                break;
+            }
+            byte[] effectId = ids.get(index++);
+            data.put((byte) Math.min(255, effect.getAmplifier()));
+            data.putInt(effect.isInfinite() ? -1 : effect.getDuration());
+            data.put((byte) effectId.length);
+            data.put(effectId);
+        }
+        return data.array();
+    }
+
+    private static byte[] idBytes(String id) {
+        byte[] bytes = id.getBytes(StandardCharsets.UTF_8);
+        if (bytes.length <= MAX_ID_BYTES) {
+            return bytes;
+        }
+        byte[] trimmed = new byte[MAX_ID_BYTES];
+        System.arraycopy(bytes, 0, trimmed, 0, MAX_ID_BYTES);
+        return trimmed;
+    }
+
+    private static float wrapDegrees(float degrees) {
+        float wrapped = degrees % 360.0F;
+        if (wrapped >= 180.0F) {
+            wrapped -= 360.0F;
+        } else if (wrapped < -180.0F) {
+            wrapped += 360.0F;
+        }
+        return wrapped;
+    }
+
+    private static ByteBuffer buffer(int size) {
+        return ByteBuffer.allocate(size).order(ByteOrder.LITTLE_ENDIAN);
+    }
+}
@@ -0,0 +1,185 @@
+package com.robcholz.lumen.client;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+// Keeps one device's link just below saturation. Every second the budget (a share of the measured link rate) is
+// handed out by priority: channels that kept up reserve a little more than they used, channels that had to wait
+// split what is left at their priority, and what the level did not use flows down to the next one. After a message, its
+// channel may send again once its allowance has paid for those bytes, so a throttled channel's interval
+// stretches in proportion and shrinks back as headroom returns. Mailboxes keep the newest value meanwhile,
+// so a stretched channel skips stale states instead of queueing them.
+final class BandwidthGovernor {
+    private static final Logger LOGGER = LoggerFactory.getLogger("lumen");
+    private static final long WINDOW_NANOS = TimeUnit.SECONDS.toNanos(1);
+    private static final double SMOOTHING = 0.5;
+    private static final double HEADROOM = 1.25;
+    private static final double MIN_RATE = 64;
+    private static final int PRIORITIES = 3;
+    // Writes blocked for at least this share of the window: the driver buffer was full, so bytes per busy second
+    // is the rate the link really carries.
+    private static final double SATURATED_BUSY = 0.5;
+
+    private final String device;
+    private final Map<String, Channel> channels = new HashMap<>();
+    private long connection = -1;
+    private double capacity;
+    private double achieved;
+    private double budget;
+    private long windowStart = System.nanoTime();
+    private long windowBytes;
+    private long windowBusyNanos;
+
+    private static final class Channel {
+        private final String name;
+        private final int priority;
+        private long windowBytes;
+        private double rate;
+        private double allowed = Double.MAX_VALUE;
+        private boolean waited;
+        private boolean throttled;
+        private boolean held;
+        private long nextSendNanos;
+
+        private Channel(String name, int priority) {
+            this.name = name;
+            this.priority = priority;
+        }
+    }
+
+    BandwidthGovernor(String device) {
+        this.device = device;
+    }
+
+    // Called by the writer with the current link before each batch.
+    void onLink(LinkSession session, int budgetPercent, int maxBytesPerSecond) {
+        if (session.connection() != connection) {
+            connection = session.connection();
+            capacity = session.throughputBytesPerSecond() > 0
+                    ? session.throughputBytesPerSecond()
+                    : session.baudRate() / 10.0;
+            achieved = 0;
+            for (Channel channel : channels.values()) {
+                channel.allowed = Double.MAX_VALUE;
+                channel.nextSendNanos = 0;
+            }
+        }
+        double limit = capacity * budgetPercent / 100.0;
+        budget = maxBytesPerSecond > 0 ? Math.min(limit, maxBytesPerSecond) : limit;
+    }
+
+    // 0 when the channel may send now, otherwise how long until it may.
+    long delayNanos(String name, int priority, long now) {
+        Channel channel = channel(name, priority);
+        long delay = channel.nextSendNanos - now;
+        if (delay <= 0) {
+            return 0;
+        }
+        channel.waited = true;
+        if (!channel.held) {
+            channel.held = true;
+            LumenMetrics.get().throttled();
+        }
+        return delay;
+    }
+
+    void onSent(String name, int priority, long bytes, long now) {
+        Channel channel = channel(name, priority);
+        channel.windowBytes += bytes;
+        channel.held = false;
+        if (channel.allowed != Double.MAX_VALUE && bytes > 0) {
+            channel.nextSendNanos = now + (long) (bytes * 1e9 / channel.allowed);
+        }
+    }
+
+    // One sendAll of the given size that blocked for writeNanos.
+    void onWrite(long bytes, long writeNanos, long now) {
+        windowBytes += bytes;
+        windowBusyNanos += writeNanos;
+        if (now - windowStart >= WINDOW_NANOS) {
+            rebalance(now);
+        }
+    }
+
+    private void rebalance(long now) {
+        double seconds = (now - windowStart) / 1e9;
+        windowStart = now;
+        double observed = windowBytes / seconds;
+        double busy = windowBusyNanos / 1e9;
+        achieved = achieved == 0 ? observed : achieved + SMOOTHING * (observed - achieved);
+        if (busy >= seconds * SATURATED_BUSY) {
+            capacity += SMOOTHING * (windowBytes / busy - capacity);
+        } else {
+            // Unblocked writes above the handshake estimate mean the link is faster than measured.
+            capacity = Math.max(capacity, achieved);
+        }
+        windowBytes = 0;
+        windowBusyNanos = 0;
+
+        List<List<Channel>> levels = new ArrayList<>(PRIORITIES);
+        for (int i = 0; i < PRIORITIES; i++) {
+            levels.add(new ArrayList<>());
+        }
+        for (Channel channel : channels.values()) {
+            double used = channel.windowBytes / seconds;
+            channel.windowBytes = 0;
+            channel.rate = channel.rate == 0 ? used : channel.rate + SMOOTHING * (used - channel.rate);
+            levels.get(Math.min(PRIORITIES - 1, channel.priority)).add(channel);
+        }
+        double remaining = budget;
+        for (List<Channel> level : levels) {
+            double reserved = 0;
+            double used = 0;
+            int waiting = 0;
+            for (Channel channel : level) {
+                used += channel.rate * HEADROOM;
+                if (channel.waited) {
+                    waiting++;
+                } else {
+                    reserved += channel.rate * HEADROOM;
+                }
+            }
+            double share = waiting == 0 ? 0 : Math.max(0, remaining - reserved) / waiting;
+            for (Channel channel : level) {
+                // A channel that never had to wait may burst into everything left at its priority.
+                channel.allowed = Math.max(MIN_RATE, channel.waited ? share : remaining);
+            }
+            // A waiting channel that is short of its share grows into it window by window, so lower priorities
+            // only lose what it actually sends.
+            remaining = Math.max(0, remaining - used);
+        }
+        report(observed);
+    }
+
+    private void report(double observed) {
+        LumenMetrics metrics = LumenMetrics.get();
+        metrics.linkRate(device, observed, budget);
+        for (Channel channel : channels.values()) {
+            boolean throttled = channel.waited;
+            metrics.channelAllowance(device, channel.name, channel.allowed);
+            if (throttled != channel.throttled) {
+                channel.throttled = throttled;
+                if (throttled) {
+                    LOGGER.info("Link {} near its budget ({} of {} B/s): throttling {} to {} B/s",
+                            device, Math.round(observed), Math.round(budget), channel.name, Math.round(channel.allowed));
+                } else {
+                    LOGGER.info("Link {} has headroom again: {} back to its own rate", device, channel.name);
+                }
+            } else if (throttled) {
+                LOGGER.debug("Link {}: {} allowed {} B/s, used {} B/s", device, channel.name,
+                        Math.round(channel.allowed), Math.round(channel.rate));
+            }
+            channel.waited = false;
+        }
+    }
+
+    private Channel channel(String name, int priority) {
+        return channels.computeIfAbsent(name, key -> new Channel(key, priority));
+    }
+}
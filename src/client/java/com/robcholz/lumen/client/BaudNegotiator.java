@@ -0,0 +1,78 @@
+package com.robcholz.lumen.client;
+
+import com.robcholz.lumen.DeviceCapabilities;
+import com.robcholz.lumen.SerialPackClient;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+
+final class BaudNegotiator {
+    private static final Logger LOGGER = LoggerFactory.getLogger("lumen");
+    private static final int[] AUTO_RATES = {921600, 1500000, 2000000};
+    private static final int PROBE_MAX_BYTES = 8192;
+    private static final int PROBE_FRAME_OVERHEAD = 32;
+    private static final long REQUEST_TIMEOUT_MILLIS = 500;
+    private static final long PROBE_TIMEOUT_MILLIS = 2000;
+    private static final double MIN_IMPROVEMENT = 1.05;
+
+    private BaudNegotiator() {
+    }
+
+    static double probe(SerialPackClient client, DeviceCapabilities capabilities) throws IOException {
+        double measured = measure(client, capabilities);
+        return measured > 0 ? measured : estimatedThroughput(client.getBaudRate());
+    }
+
+    // Steps up through the faster rates the device allows, keeping a rate only if the probe shows a real gain.
+    // Without a measurement there is nothing to compare against, so an unanswered probe ends the climb.
+    static double negotiate(SerialPackClient client, DeviceCapabilities capabilities, int ceiling) throws IOException {
+        int bestRate = client.getBaudRate();
+        double bestThroughput = measure(client, capabilities);
+        if (bestThroughput <= 0) {
+            LOGGER.info("Throughput probe on {} got no answer, staying at {} baud", client.getPortPath(), bestRate);
+            return estimatedThroughput(bestRate);
+        }
+        int limit = Math.min(capabilities.maxBaudRate(), ceiling);
+        for (int rate : AUTO_RATES) {
+            if (rate <= bestRate || rate > limit) {
+                continue;
+            }
+            if (!client.requestBaudRate(rate, REQUEST_TIMEOUT_MILLIS)) {
+                LOGGER.info("Device on {} rejected {} baud, staying at {}", client.getPortPath(), rate, bestRate);
+                break;
+            }
+            double throughput = measure(client, client.getCapabilities());
+            if (throughput <= 0 || throughput < bestThroughput * MIN_IMPROVEMENT) {
+                if (throughput <= 0) {
+                    LOGGER.info("Throughput probe at {} baud on {} got no answer; reverting to {}",
+                            rate, client.getPortPath(), bestRate);
+                } else {
+                    LOGGER.info("{} baud on {} measured {} B/s, no better than {} baud; reverting",
+                            rate, client.getPortPath(), Math.round(throughput), bestRate);
+                }
+                if (!client.requestBaudRate(bestRate, REQUEST_TIMEOUT_MILLIS)) {
+                    throw new IOException("Failed to return to " + bestRate + " baud on " + client.getPortPath());
+                }
+                break;
+            }
+            bestRate = rate;
+            bestThroughput = throughput;
+        }
+        return bestThroughput;
+    }
+
+    // Bytes per second, or -1 without a valid answer. The probe is sized like a skin chunk, so it fits both
+    // the frame limit and the receive window and is never held back or dropped for credits.
+    private static double measure(SerialPackClient client, DeviceCapabilities capabilities) throws IOException {
+        if (capabilities.isLegacy()) {
+            return -1;
+        }
+        int payload = Math.max(0, Math.min(PROBE_MAX_BYTES, capabilities.frameLimit() - PROBE_FRAME_OVERHEAD));
+        return client.probeThroughput(payload, PROBE_TIMEOUT_MILLIS);
+    }
+
+    static double estimatedThroughput(int baudRate) {
+        return baudRate / 10.0;
+    }
+}
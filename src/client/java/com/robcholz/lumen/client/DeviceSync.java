@@ -0,0 +1,110 @@
+package com.robcholz.lumen.client;
+
+import com.robcholz.lumen.SkinFrameTracker;
+import com.robcholz.lumen.SkinTransfer;
+import com.robcholz.lumen.SkinView;
+import com.robcholz.lumen.TelemetryField;
+
+import java.util.Arrays;
+import java.util.EnumMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+// What one display has received so far. Survives reconnects so an interrupted skin transfer can resume.
+public final class DeviceSync {
+    private static final int MIN_TELEMETRY_INTERVAL_MILLIS = 50;
+    private final SkinFrameTracker skinTracker = new SkinFrameTracker();
+    private final SkinTransfer skinTransfer = new SkinTransfer();
+    private final Set<String> sentNames = new HashSet<>();
+    private long namesConnection = -1;
+    // Fields and intervals (ms) the device asked for itself; 0 turns a configured field off for it.
+    private volatile Map<TelemetryField, Integer> requestedTelemetry = Map.of();
+    private volatile SkinView requestedSkinView;
+    private String awaitedSkinRender;
+    private final Map<TelemetryField, byte[]> postedTelemetry = new EnumMap<>(TelemetryField.class);
+    private final Map<TelemetryField, Long> postedTelemetryNanos = new EnumMap<>(TelemetryField.class);
+    private long telemetryConnection = -1;
+
+    public SkinFrameTracker skinTracker() {
+        return skinTracker;
+    }
+
+    public SkinTransfer skinTransfer() {
+        return skinTransfer;
+    }
+
+    public synchronized boolean needsName(String name, long connection) {
+        if (namesConnection != connection) {
+            namesConnection = connection;
+            sentNames.clear();
+        }
+        return sentNames.add(name);
+    }
+
+    public Map<TelemetryField, Integer> requestedTelemetry() {
+        return requestedTelemetry;
+    }
+
+    public void requestTelemetry(Map<TelemetryField, Integer> fields) {
+        requestedTelemetry = Map.copyOf(fields);
+    }
+
+    // The device's own request wins over the configured interval (ms, keyed by field key); -1 when the field is off.
+    public long telemetryIntervalNanos(TelemetryField field, Map<String, Integer> configured) {
+        Integer millis = requestedTelemetry.get(field);
+        if (millis == null) {
+            millis = configured.get(field.key());
+        }
+        if (millis == null || millis <= 0) {
+            return -1;
+        }
+        return TimeUnit.MILLISECONDS.toNanos(Math.max(MIN_TELEMETRY_INTERVAL_MILLIS, millis));
+    }
+
+    // The device's own choice wins over the configured view.
+    public SkinView skinView(SkinView configured) {
+        SkinView requested = requestedSkinView;
+        return requested != null ? requested : configured;
+    }
+
+    public void requestSkinView(SkinView view) {
+        requestedSkinView = view;
+    }
+
+    // The view this device is waiting on (SkinRenders.key), so only its own render triggers a post.
+    public synchronized void awaitSkinRender(String key) {
+        awaitedSkinRender = key;
+    }
+
+    // True, once, when the finished view is the one this device was waiting on.
+    public synchronized boolean skinRendered(String key) {
+        if (key.equals(awaitedSkinRender)) {
+            awaitedSkinRender = null;
+            return true;
+        }
+        return false;
+    }
+
+    // True when the value differs from what this connection was last given and the field's interval has passed;
+    // the value is then recorded as posted. A new connection starts over, so the device gets every field again.
+    public synchronized boolean telemetryDue(TelemetryField field, byte[] value, long intervalNanos, long now,
+                                             long connection) {
+        if (telemetryConnection != connection) {
+            telemetryConnection = connection;
+            postedTelemetry.clear();
+            postedTelemetryNanos.clear();
+        }
+        Long posted = postedTelemetryNanos.get(field);
+        if (posted != null && now - posted < intervalNanos) {
+            return false;
+        }
+        if (Arrays.equals(postedTelemetry.get(field), value)) {
+            return false;
+        }
+        postedTelemetry.put(field, value);
+        postedTelemetryNanos.put(field, now);
+        return true;
+    }
+}
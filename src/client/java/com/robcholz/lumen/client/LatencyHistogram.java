@@ -0,0 +1,67 @@
+package com.robcholz.lumen.client;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+// Power-of-two microsecond buckets: recording is a few atomic adds, and percentiles are accurate to a factor of two,
+// which is enough to tell a 1 ms write from a 40 ms one.
+public final class LatencyHistogram {
+    private static final int BUCKETS = 40;
+
+    private final AtomicLongArray buckets = new AtomicLongArray(BUCKETS);
+    private final LongAdder count = new LongAdder();
+    private final LongAdder totalNanos = new LongAdder();
+    private final AtomicLong maxNanos = new AtomicLong();
+
+    public void record(long nanos) {
+        long value = Math.max(0, nanos);
+        buckets.incrementAndGet(bucket(value / 1000));
+        count.increment();
+        totalNanos.add(value);
+        maxNanos.accumulateAndGet(value, Math::max);
+    }
+
+    public Snapshot snapshot() {
+        long[] counts = new long[BUCKETS];
+        for (int i = 0; i < BUCKETS; i++) {
+            counts[i] = buckets.get(i);
+        }
+        return new Snapshot(counts, count.sum(), totalNanos.sum(), maxNanos.get());
+    }
+
+    private static int bucket(long micros) {
+        return Math.min(BUCKETS - 1, 64 - Long.numberOfLeadingZeros(micros));
+    }
+
+    public record Snapshot(long[] buckets, long count, long totalNanos, long maxNanos) {
+        // What was recorded since an earlier snapshot; the max stays the all-time one.
+        public Snapshot since(Snapshot earlier) {
+            long[] counts = new long[buckets.length];
+            for (int i = 0; i < counts.length; i++) {
+                counts[i] = buckets[i] - earlier.buckets[i];
+            }
+            return new Snapshot(counts, count - earlier.count, totalNanos - earlier.totalNanos, maxNanos);
+        }
+
+        public double meanMicros() {
+            return count == 0 ? 0 : totalNanos / 1000.0 / count;
+        }
+
+        // Upper bound of the bucket holding the given fraction of samples.
+        public double percentileMicros(double fraction) {
+            if (count == 0) {
+                return 0;
+            }
+            long rank = (long) Math.ceil(fraction * count);
+            long seen = 0;
+            for (int i = 0; i < buckets.length; i++) {
+                seen += buckets[i];
+                if (seen >= rank) {
+                    return i == 0 ? 1 : 1L << i;
+                }
+            }
+            return maxNanos / 1000.0;
+        }
+    }
+}
@@ -0,0 +1,42 @@
+package com.robcholz.lumen.client;
+
+import com.robcholz.lumen.DeviceCapabilities;
+import com.robcholz.lumen.SkinCodec;
+import com.robcholz.lumen.SkinTransfer;
+
+public record LinkSession(
+        long connection,
+        DeviceCapabilities capabilities,
+        int baudRate,
+        double throughputBytesPerSecond,
+        DeviceSync device
+) {
+    private static final int SLICE_MILLIS = 20;
+    private static final int MIN_SLICE_BYTES = 256;
+    private static final int MAX_SLICE_BYTES = 1024;
+
+    // What the link carries in about SLICE_MILLIS: the longest an urgent frame should wait behind bulk data.
+    public int sliceBytes() {
+        double bytesPerSecond = throughputBytesPerSecond > 0 ? throughputBytesPerSecond : baudRate / 10.0;
+        return clampSlice(bytesPerSecond);
+    }
+
+    // Skin chunks about one slice long, so urgent frames can go out between any two of them. Sized from the baud
+    // rate and rounded down to a power of two rather than taken from the probe: the probe is re-measured on
+    // every connect, and a different chunk size would restart a transfer that could have resumed.
+    public int skinChunkBytes() {
+        return Math.min(SkinTransfer.chunkSize(capabilities), Integer.highestOneBit(clampSlice(baudRate / 10.0)));
+    }
+
+    private static int clampSlice(double bytesPerSecond) {
+        return (int) Math.max(MIN_SLICE_BYTES, Math.min(MAX_SLICE_BYTES, bytesPerSecond * SLICE_MILLIS / 1000));
+    }
+
+    public SkinCodec skinCodec(SkinCodec preferred) {
+        // Legacy firmware cannot announce codecs, so the configured codec is an explicit opt-in there.
+        if (capabilities.isLegacy() || capabilities.supports(preferred)) {
+            return preferred;
+        }
+        return SkinCodec.NONE;
+    }
+}
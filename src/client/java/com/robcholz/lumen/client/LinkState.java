@@ -0,0 +1,8 @@
+package com.robcholz.lumen.client;
+
+public enum LinkState {
+    DISCONNECTED,
+    CONNECTING,
+    HANDSHAKING,
+    READY
+}
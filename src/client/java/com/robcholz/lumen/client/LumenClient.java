@@ -3,14 +3,24 @@ package com.robcholz.lumen.client;
 import com.google.gson.FieldNamingPolicy;
 import com.google.gson.Gson;
 import com.google.gson.GsonBuilder;
+import com.robcholz.lumen.LumenFrame;
 import com.robcholz.lumen.LumenSyncState;
+import com.robcholz.lumen.SkinFrameTracker;
+import com.robcholz.lumen.SkinRenders;
+import com.robcholz.lumen.SkinTextureAccess;
+import com.robcholz.lumen.SkinTransfer;
+import com.robcholz.lumen.SkinView;
+import com.robcholz.lumen.SnapshotCodec;
+import com.robcholz.lumen.TelemetryField;
 import com.robcholz.lumen.client.config.LumenConfig;
 import com.robcholz.lumen.client.config.LumenConfigManager;
 import net.fabricmc.api.ClientModInitializer;
+import net.fabricmc.fabric.api.client.event.lifecycle.v1.ClientTickEvents;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.nio.charset.StandardCharsets;
+import java.util.List;
 import java.util.concurrent.Executors;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.TimeUnit;
@@ -24,30 +34,75 @@ public class LumenClient implements ClientModInitializer {
                 thread.setDaemon(true);
                 return thread;
             });
+    private static final SnapshotCodec SNAPSHOT_CODEC = new SnapshotCodec();
+    private static volatile LumenDevices devices;
+    private static final Gson SNAPSHOT_GSON = new GsonBuilder()
+            .setFieldNamingPolicy(FieldNamingPolicy.LOWER_CASE_WITH_UNDERSCORES)
+            .create();
 
-    private static void sendPlayerInfo(LumenSerialManager serial) {
+    public static LinkState linkState() {
+        LumenDevices current = devices;
+        return current == null ? LinkState.DISCONNECTED : current.state();
+    }
+
+    private static void pollPlayerInfo(LumenDevices devices) {
+        if (LumenConfigManager.get().eventDrivenSync) {
+            return;
+        }
+        sendPlayerInfo(devices, LumenSyncState.latestSnapshot());
+    }
+
+    private static void sendPlayerInfo(LumenDevices devices, LumenSyncState.Snapshot snapshot) {
         try {
-            LumenSyncState.Snapshot snapshot = LumenSyncState.requestPlayerSnapshot();
-            Gson gson = new GsonBuilder()
-                    .setFieldNamingPolicy(FieldNamingPolicy.LOWER_CASE_WITH_UNDERSCORES)
-                    .create();
-            serial.send(
-                    "sync",
-                    gson.toJson(snapshot).getBytes(StandardCharsets.UTF_8)
-            );
+            if (LumenConfigManager.get().syncFormat == LumenConfig.SyncFormat.JSON) {
+                devices.send(
+                        SnapshotCodec.SNAPSHOT_PATH,
+                        SNAPSHOT_GSON.toJson(snapshot).getBytes(StandardCharsets.UTF_8)
+                );
+                return;
+            }
+            // Encoded once here; each device only decides whether it still needs the name frame.
+            LumenFrame frame = SNAPSHOT_CODEC.encode(snapshot);
+            List<LumenFrame> withName = List.of(SNAPSHOT_CODEC.nameFrame(snapshot.name()), frame);
+            List<LumenFrame> withoutName = List.of(frame);
+            devices.post(SnapshotCodec.SNAPSHOT_PATH, session ->
+                    session.device().needsName(snapshot.name(), session.connection()) ? withName : withoutName);
         } catch (Exception e) {
             LOGGER.debug("Failed to send player info over serial", e);
         }
     }
 
-    private static void sendSkinInfo(LumenSerialManager serial) {
+    // A lost ack would otherwise stall a chunked skin until the next scheduled post.
+    private static void resendSkinChunks(LumenDevices devices) {
+        long now = System.nanoTime();
+        for (LumenSerialManager manager : devices.managers()) {
+            if (manager.device().skinTransfer().retransmitDue(manager.connection(), now)) {
+                manager.offer(SkinFrameTracker.FULL_PATH, session ->
+                        session.device().skinTransfer().retransmit(session.connection(), System.nanoTime()));
+            }
+        }
+    }
+
+    // Each view of a skin finishes on its own; only a device that was waiting on this one gets the skin again.
+    private static void sendRenderedSkin(LumenDevices devices, String key) {
+        LumenSyncState.SkinSource skin = LumenSyncState.latestSkin();
+        if (skin.isEmpty()) {
+            return;
+        }
+        for (LumenSerialManager manager : devices.managers()) {
+            if (manager.subscribes(SkinFrameTracker.FULL_PATH) && manager.device().skinRendered(key)) {
+                manager.post(SkinFrameTracker.FULL_PATH, new SkinMessage(skin));
+            }
+        }
+    }
+
+    private static void sendSkinInfo(LumenDevices devices) {
         try {
-            LumenSyncState.SkinPayload payload = LumenSyncState.requestSkinPayload();
-            byte[] data = payload.toWireBytes();
-            if (data.length == 0) {
+            LumenSyncState.SkinSource skin = LumenSyncState.latestSkin();
+            if (skin.isEmpty()) {
                 return;
             }
-            serial.send("sync/skin", data);
+            devices.post(SkinFrameTracker.FULL_PATH, new SkinMessage(skin));
         } catch (Exception e) {
             LOGGER.debug("Failed to send skin info over serial", e);
         }
@@ -55,25 +110,67 @@ public class LumenClient implements ClientModInitializer {
 
     @Override
     public void onInitializeClient() {
+        SkinTextureAccess.init();
         LumenConfig config = LumenConfigManager.get();
         String portPath = SerialPortLocator.resolvePortPath(config);
-        if (portPath == null || portPath.isBlank()) {
+        if (config.devices.isEmpty() && (portPath == null || portPath.isBlank())) {
             LOGGER.warn("No serial port configured; set it in Mod Menu or via -Dlumen.serialPort/LUMEN_SERIAL_PORT");
         }
 
-        LumenSerialManager serial = new LumenSerialManager();
+        LumenDevices devices = new LumenDevices();
+        LumenClient.devices = devices;
+        devices.onInbound(SkinTransfer.ACK_PATH, (manager, ack) -> {
+            if (manager.device().skinTransfer().onAck(ack)) {
+                manager.offer(SkinFrameTracker.FULL_PATH,
+                        session -> session.device().skinTransfer().nextChunks(session.connection()));
+            }
+        });
+        devices.onInbound(TelemetryField.SUBSCRIBE_PATH, (manager, request) ->
+                manager.device().requestTelemetry(TelemetryField.parseSubscription(request)));
+        devices.onInbound(SkinView.REQUEST_PATH, (manager, request) -> {
+            SkinView view = request.length > 0 ? SkinView.byId(request[0] & 0xFF) : null;
+            if (view == null) {
+                return;
+            }
+            manager.device().requestSkinView(view);
+            LumenSyncState.SkinSource skin = LumenSyncState.latestSkin();
+            if (!skin.isEmpty()) {
+                manager.post(SkinFrameTracker.FULL_PATH, new SkinMessage(skin));
+            }
+        });
+        // Views render in the background; send one as soon as a device's view is ready instead of on the next schedule.
+        SkinRenders.onRendered(key -> SERIAL_EXECUTOR.execute(() -> sendRenderedSkin(devices, key)));
+        TelemetryPublisher telemetry = new TelemetryPublisher(devices);
+        SnapshotChangeDetector snapshotDetector = new SnapshotChangeDetector(
+                SERIAL_EXECUTOR,
+                snapshot -> sendPlayerInfo(devices, snapshot)
+        );
+        LumenMetrics.register();
+        ClientTickEvents.END_CLIENT_TICK.register(client -> {
+            long captureStart = System.nanoTime();
+            LumenSyncState.publish(client);
+            telemetry.onEndTick(client);
+            LumenMetrics.get().capture().record(System.nanoTime() - captureStart);
+            snapshotDetector.onEndTick();
+        });
         SERIAL_EXECUTOR.scheduleAtFixedRate(
-                () -> sendPlayerInfo(serial),
+                () -> pollPlayerInfo(devices),
                 0,
                 1,
                 TimeUnit.SECONDS
         );
         SERIAL_EXECUTOR.scheduleAtFixedRate(
-                () -> sendSkinInfo(serial),
+                () -> sendSkinInfo(devices),
                 0,
                 20,
                 TimeUnit.SECONDS
         );
+        SERIAL_EXECUTOR.scheduleAtFixedRate(
+                () -> resendSkinChunks(devices),
+                250,
+                250,
+                TimeUnit.MILLISECONDS
+        );
 
         LOGGER.info("Lumen client ready");
     }
@@ -0,0 +1,107 @@
+package com.robcholz.lumen.client;
+
+import com.robcholz.lumen.client.config.LumenConfig;
+import com.robcholz.lumen.client.config.LumenConfigManager;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.BiConsumer;
+
+// Fans every message out to the configured displays. Each one has its own writer and connector, so a slow
+// or missing device only ever delays itself; a message instance is shared, so its encoding can be too.
+public final class LumenDevices implements AutoCloseable {
+    private static final Logger LOGGER = LoggerFactory.getLogger("lumen");
+
+    private final Map<String, BiConsumer<LumenSerialManager, byte[]>> inboundHandlers = new HashMap<>();
+    private List<LumenConfig.DeviceEndpoint> endpoints = List.of();
+    private volatile List<LumenSerialManager> managers = List.of();
+    private boolean closed;
+
+    // Devices only change when the config is saved, so the send path never has to compare endpoints.
+    public LumenDevices() {
+        reconfigure(LumenConfigManager.get().endpoints());
+        LumenConfigManager.onSave(config -> reconfigure(config.endpoints()));
+    }
+
+    public void send(String path, byte[] data) {
+        post(path, SerialMessage.of(path, data));
+    }
+
+    public void post(String channel, SerialMessage message) {
+        for (LumenSerialManager manager : managers()) {
+            if (manager.subscribes(channel)) {
+                manager.post(channel, message);
+            }
+        }
+    }
+
+    public synchronized void onInbound(String path, BiConsumer<LumenSerialManager, byte[]> handler) {
+        inboundHandlers.put(path, handler);
+        for (LumenSerialManager manager : managers) {
+            manager.onInbound(path, data -> handler.accept(manager, data));
+        }
+    }
+
+    public LinkState state() {
+        LinkState best = LinkState.DISCONNECTED;
+        for (LumenSerialManager manager : managers()) {
+            LinkState state = manager.state();
+            if (state.ordinal() > best.ordinal()) {
+                best = state;
+            }
+        }
+        return best;
+    }
+
+    List<LumenSerialManager> managers() {
+        return managers;
+    }
+
+    private synchronized void reconfigure(List<LumenConfig.DeviceEndpoint> configured) {
+        if (closed || configured.equals(endpoints)) {
+            return;
+        }
+        List<LumenSerialManager> previous = new ArrayList<>(managers);
+        List<LumenSerialManager> next = new ArrayList<>(configured.size());
+        for (LumenConfig.DeviceEndpoint endpoint : configured) {
+            LumenSerialManager reused = null;
+            for (LumenSerialManager manager : previous) {
+                if (manager.endpoint().equals(endpoint)) {
+                    reused = manager;
+                    break;
+                }
+            }
+            if (reused != null) {
+                previous.remove(reused);
+                next.add(reused);
+                continue;
+            }
+            LumenSerialManager manager = new LumenSerialManager(endpoint.copy());
+            inboundHandlers.forEach((path, handler) -> manager.onInbound(path, data -> handler.accept(manager, data)));
+            next.add(manager);
+        }
+        for (LumenSerialManager removed : previous) {
+            removed.close();
+        }
+        endpoints = new ArrayList<>(configured.size());
+        for (LumenConfig.DeviceEndpoint endpoint : configured) {
+            endpoints.add(endpoint.copy());
+        }
+        managers = List.copyOf(next);
+        LOGGER.info("Lumen devices: {}", endpoints);
+    }
+
+    @Override
+    public synchronized void close() {
+        closed = true;
+        for (LumenSerialManager manager : managers) {
+            manager.close();
+        }
+        managers = List.of();
+        endpoints = List.of();
+    }
+}
@@ -0,0 +1,213 @@
+package com.robcholz.lumen.client;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.management.JMException;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+// Process-wide counters for every device, cheap enough to update on the writer and render threads.
+public final class LumenMetrics implements LumenMetricsMXBean {
+    private static final Logger LOGGER = LoggerFactory.getLogger("lumen");
+    private static final String OBJECT_NAME = "com.robcholz.lumen:type=Metrics";
+    private static final LumenMetrics INSTANCE = new LumenMetrics();
+
+    private final Map<String, Channel> channels = new ConcurrentHashMap<>();
+    private final LongAdder framesDropped = new LongAdder();
+    private final LongAdder messagesReplaced = new LongAdder();
+    private final LongAdder sendFailures = new LongAdder();
+    private final LongAdder connects = new LongAdder();
+    private final LongAdder reconnects = new LongAdder();
+    private final LongAdder connectFailures = new LongAdder();
+    private final LongAdder throttled = new LongAdder();
+    private final Map<String, Long> linkRates = new ConcurrentHashMap<>();
+    private final Map<String, Long> linkBudgets = new ConcurrentHashMap<>();
+    private final Map<String, Long> channelAllowances = new ConcurrentHashMap<>();
+    private final LatencyHistogram writeLatency = new LatencyHistogram();
+    private final LatencyHistogram capture = new LatencyHistogram();
+
+    private record Channel(LongAdder bytes, LongAdder frames) {
+    }
+
+    private LumenMetrics() {
+    }
+
+    public static LumenMetrics get() {
+        return INSTANCE;
+    }
+
+    static void register() {
+        try {
+            ManagementFactory.getPlatformMBeanServer().registerMBean(INSTANCE, new ObjectName(OBJECT_NAME));
+        } catch (JMException | SecurityException e) {
+            LOGGER.debug("Failed to register Lumen metrics with JMX", e);
+        }
+    }
+
+    void sent(String channel, int frames, long bytes) {
+        Channel stats = channels.computeIfAbsent(channel, key -> new Channel(new LongAdder(), new LongAdder()));
+        stats.bytes().add(bytes);
+        stats.frames().add(frames);
+    }
+
+    void dropped(int frames) {
+        framesDropped.add(frames);
+    }
+
+    void replaced() {
+        messagesReplaced.increment();
+    }
+
+    void sendFailed() {
+        sendFailures.increment();
+    }
+
+    void connected(boolean reconnect) {
+        connects.increment();
+        if (reconnect) {
+            reconnects.increment();
+        }
+    }
+
+    void connectFailed() {
+        connectFailures.increment();
+    }
+
+    void throttled() {
+        throttled.increment();
+    }
+
+    void linkRate(String device, double bytesPerSecond, double budget) {
+        linkRates.put(device, Math.round(bytesPerSecond));
+        linkBudgets.put(device, Math.round(budget));
+    }
+
+    void channelAllowance(String device, String channel, double bytesPerSecond) {
+        channelAllowances.put(device + " " + channel, Math.round(bytesPerSecond));
+    }
+
+    public LatencyHistogram writeLatency() {
+        return writeLatency;
+    }
+
+    public LatencyHistogram capture() {
+        return capture;
+    }
+
+    @Override
+    public long getBytesSent() {
+        long total = 0;
+        for (Channel channel : channels.values()) {
+            total += channel.bytes().sum();
+        }
+        return total;
+    }
+
+    @Override
+    public long getFramesSent() {
+        long total = 0;
+        for (Channel channel : channels.values()) {
+            total += channel.frames().sum();
+        }
+        return total;
+    }
+
+    @Override
+    public Map<String, Long> getBytesSentByChannel() {
+        Map<String, Long> result = new TreeMap<>();
+        channels.forEach((name, channel) -> result.put(name, channel.bytes().sum()));
+        return result;
+    }
+
+    @Override
+    public Map<String, Long> getFramesSentByChannel() {
+        Map<String, Long> result = new TreeMap<>();
+        channels.forEach((name, channel) -> result.put(name, channel.frames().sum()));
+        return result;
+    }
+
+    @Override
+    public long getFramesDropped() {
+        return framesDropped.sum();
+    }
+
+    @Override
+    public long getMessagesReplaced() {
+        return messagesReplaced.sum();
+    }
+
+    @Override
+    public long getSendFailures() {
+        return sendFailures.sum();
+    }
+
+    @Override
+    public long getConnects() {
+        return connects.sum();
+    }
+
+    @Override
+    public long getReconnects() {
+        return reconnects.sum();
+    }
+
+    @Override
+    public long getConnectFailures() {
+        return connectFailures.sum();
+    }
+
+    @Override
+    public long getThrottledSends() {
+        return throttled.sum();
+    }
+
+    @Override
+    public Map<String, Long> getLinkBytesPerSecond() {
+        return new TreeMap<>(linkRates);
+    }
+
+    @Override
+    public Map<String, Long> getLinkBudgetBytesPerSecond() {
+        return new TreeMap<>(linkBudgets);
+    }
+
+    @Override
+    public Map<String, Long> getChannelAllowanceBytesPerSecond() {
+        return new TreeMap<>(channelAllowances);
+    }
+
+    @Override
+    public double getWriteLatencyMeanMicros() {
+        return writeLatency.snapshot().meanMicros();
+    }
+
+    @Override
+    public double getWriteLatencyP99Micros() {
+        return writeLatency.snapshot().percentileMicros(0.99);
+    }
+
+    @Override
+    public double getWriteLatencyMaxMicros() {
+        return writeLatency.snapshot().maxNanos() / 1000.0;
+    }
+
+    @Override
+    public double getCaptureMeanMicros() {
+        return capture.snapshot().meanMicros();
+    }
+
+    @Override
+    public double getCaptureP99Micros() {
+        return capture.snapshot().percentileMicros(0.99);
+    }
+
+    @Override
+    public double getCaptureMaxMicros() {
+        return capture.snapshot().maxNanos() / 1000.0;
+    }
+}
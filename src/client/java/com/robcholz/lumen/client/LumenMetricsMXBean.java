@@ -0,0 +1,48 @@
+package com.robcholz.lumen.client;
+
+import java.util.Map;
+
+// Read-only view of LumenMetrics under com.robcholz.lumen:type=Metrics, for JConsole or VisualVM.
+public interface LumenMetricsMXBean {
+    long getBytesSent();
+
+    long getFramesSent();
+
+    Map<String, Long> getBytesSentByChannel();
+
+    Map<String, Long> getFramesSentByChannel();
+
+    long getFramesDropped();
+
+    long getMessagesReplaced();
+
+    long getSendFailures();
+
+    long getConnects();
+
+    long getReconnects();
+
+    long getConnectFailures();
+
+    long getThrottledSends();
+
+    // Per device: bytes per second written over the last second, and the governor's budget.
+    Map<String, Long> getLinkBytesPerSecond();
+
+    Map<String, Long> getLinkBudgetBytesPerSecond();
+
+    // Per "device channel": what the governor currently lets the channel send.
+    Map<String, Long> getChannelAllowanceBytesPerSecond();
+
+    double getWriteLatencyMeanMicros();
+
+    double getWriteLatencyP99Micros();
+
+    double getWriteLatencyMaxMicros();
+
+    double getCaptureMeanMicros();
+
+    double getCaptureP99Micros();
+
+    double getCaptureMaxMicros();
+}
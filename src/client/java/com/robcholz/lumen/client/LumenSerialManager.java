@@ -1,83 +1,383 @@
 package com.robcholz.lumen.client;
 
-import com.robcholz.lumen.SerialPackClient;
+import com.robcholz.lumen.FrameBuffer;
+import com.robcholz.lumen.LumenFrame;
+import com.robcholz.lumen.SnapshotCodec;
+import com.robcholz.lumen.TelemetryField;
 import com.robcholz.lumen.client.config.LumenConfig;
 import com.robcholz.lumen.client.config.LumenConfigManager;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Consumer;
 
 public final class LumenSerialManager implements AutoCloseable {
     private static final Logger LOGGER = LoggerFactory.getLogger("lumen");
+    private static final long IDLE_RETRY_NANOS = TimeUnit.MILLISECONDS.toNanos(500);
 
-    private SerialPackClient client;
-    private String connectedPortPath;
-    private long lastReconnectAttemptMillis;
-    private boolean hasAttemptedInitialConnect;
+    private final LinkedHashMap<String, SerialMessage> mailboxes = new LinkedHashMap<>();
+    private final Thread writer;
+    // Writer-thread state, reused for every batch so a steady stream of posts allocates nothing here.
+    private final List<String> batchChannels = new ArrayList<>();
+    private final List<SerialMessage> batchMessages = new ArrayList<>();
+    private final List<Pending> queue = new ArrayList<>();
+    private final ArrayDeque<Pending> spare = new ArrayDeque<>();
+    private final List<LumenFrame> pendingFrames = new ArrayList<>();
+    private final List<Pending> pendingOwners = new ArrayList<>();
+    private final List<Pending> completed = new ArrayList<>();
+    private final BitSet dropped = new BitSet();
+    private final Map<String, Consumer<byte[]>> inboundHandlers = new ConcurrentHashMap<>();
+    private final FrameBuffer sizing = new FrameBuffer();
+    private final LumenConfig.DeviceEndpoint endpoint;
+    private final DeviceSync device = new DeviceSync();
+    private final SerialConnector connector;
+    private final BandwidthGovernor governor;
+    private long throttledNanos;
+    private volatile boolean closed;
+    private long nextWriteNanos = System.nanoTime();
+
+    public LumenSerialManager(LumenConfig.DeviceEndpoint endpoint) {
+        this.endpoint = endpoint;
+        governor = new BandwidthGovernor(endpoint.toString());
+        connector = new SerialConnector(endpoint, device, this::dispatchInbound, this::wakeWriter);
+        writer = new Thread(this::runWriter, "lumen-serial-writer-" + endpoint);
+        writer.setDaemon(true);
+        writer.start();
+    }
 
     public void send(String path, byte[] data) {
-        if (!ensureConnected()) {
+        post(path, SerialMessage.of(path, data));
+    }
+
+    public void post(String channel, SerialMessage message) {
+        SerialMessage replaced;
+        synchronized (mailboxes) {
+            replaced = mailboxes.put(channel, message);
+        }
+        if (replaced != null) {
+            // The link did not keep up: the older message on this channel is never sent.
+            LumenMetrics.get().replaced();
+        }
+        LockSupport.unpark(writer);
+    }
+
+    // Queues a message only if the channel has nothing pending, so a newer post is never replaced.
+    public void offer(String channel, SerialMessage message) {
+        synchronized (mailboxes) {
+            mailboxes.putIfAbsent(channel, message);
+        }
+        LockSupport.unpark(writer);
+    }
+
+    private void wakeWriter() {
+        LockSupport.unpark(writer);
+    }
+
+    public LumenConfig.DeviceEndpoint endpoint() {
+        return endpoint;
+    }
+
+    public DeviceSync device() {
+        return device;
+    }
+
+    public boolean subscribes(String channel) {
+        return endpoint.subscribes(channel);
+    }
+
+    public void onInbound(String path, Consumer<byte[]> handler) {
+        inboundHandlers.put(path, handler);
+    }
+
+    private void dispatchInbound(LumenFrame frame) {
+        Consumer<byte[]> handler = inboundHandlers.get(frame.path());
+        if (handler == null) {
+            LOGGER.debug("Ignoring inbound {} frame", frame.path());
             return;
         }
         try {
-            client.send(path, data);
+            handler.accept(frame.data());
+        } catch (RuntimeException e) {
+            LOGGER.debug("Inbound handler for {} failed", frame.path(), e);
+        }
+    }
+
+    public LinkState state() {
+        return connector.state();
+    }
+
+    // Id of the live connection, or -1 while there is none.
+    public long connection() {
+        SerialConnector.Link link = connector.link();
+        return link == null ? -1 : link.session().connection();
+    }
+
+    private void runWriter() {
+        while (!closed) {
+            drainMailboxes(Integer.MAX_VALUE);
+            if (batchChannels.isEmpty()) {
+                // Held back by the governor: wake when the first channel may send again.
+                if (throttledNanos > 0) {
+                    LockSupport.parkNanos(this, throttledNanos);
+                } else {
+                    LockSupport.park(this);
+                }
+                continue;
+            }
+            SerialConnector.Link link = connector.link();
+            if (link == null) {
+                // The connector unparks the writer as soon as the link is ready.
+                restore();
+                LockSupport.parkNanos(this, IDLE_RETRY_NANOS);
+                continue;
+            }
+            long waitNanos = nextWriteNanos - System.nanoTime();
+            if (waitNanos > 0) {
+                // Over this device's byte budget: let newer posts replace what is queued meanwhile.
+                restore();
+                LockSupport.parkNanos(this, waitNanos);
+                continue;
+            }
+            write(link);
+        }
+        connector.close();
+    }
+
+    // Sends a batch most urgent channel first, as slices of about one slice time on this link. Between slices,
+    // newly posted messages more urgent than what is left jump the queue, so a health update waits for one
+    // slice at most instead of a whole skin. A single frame is never split; large skins are already chunked.
+    private void write(SerialConnector.Link link) {
+        LinkSession current = link.session();
+        LumenMetrics metrics = LumenMetrics.get();
+        enqueue(current);
+        int sliceBytes = current.sliceBytes();
+        governor.onLink(current, LumenConfigManager.get().linkBudgetPercent, endpoint.maxBytesPerSecond);
+        try {
+            while (!queue.isEmpty() && !closed) {
+                long waitNanos = nextWriteNanos - System.nanoTime();
+                if (waitNanos > 0) {
+                    LockSupport.parkNanos(this, waitNanos);
+                }
+                sendSlice(link, sliceBytes);
+                if (!queue.isEmpty()) {
+                    drainMailboxes(queue.get(0).priority);
+                    enqueue(current);
+                }
+            }
         } catch (IOException e) {
             LOGGER.debug("Serial send failed, closing connection", e);
-            closeClient();
+            metrics.sendFailed();
+            int unsent = pendingFrames.size();
+            for (Pending pending : queue) {
+                unsent += pending.frames.size() - pending.next;
+            }
+            metrics.dropped(unsent);
+            connector.connectionLost(link);
+        } finally {
+            pendingFrames.clear();
+            pendingOwners.clear();
+            recycle(completed);
+            recycle(queue);
         }
     }
 
-    private boolean ensureConnected() {
-        LumenConfig config = LumenConfigManager.get();
-        String desiredPortPath = SerialPortLocator.resolvePortPath(config);
-        if (desiredPortPath == null || desiredPortPath.isBlank()) {
-            return false;
+    private void sendSlice(SerialConnector.Link link, int sliceBytes) throws IOException {
+        LumenMetrics metrics = LumenMetrics.get();
+        pendingFrames.clear();
+        pendingOwners.clear();
+        completed.clear();
+        long bytes = 0;
+        while (!queue.isEmpty() && (pendingFrames.isEmpty() || bytes < sliceBytes)) {
+            Pending pending = queue.get(0);
+            if (pending.next == pending.frames.size()) {
+                completed.add(queue.remove(0));
+                continue;
+            }
+            LumenFrame frame = pending.frames.get(pending.next++);
+            long size = sizing.frameSize(frame.path(), frame.data().length);
+            pending.bytes += size;
+            bytes += size;
+            pendingFrames.add(frame);
+            pendingOwners.add(pending);
         }
-        if (client != null && !client.isOpen()) {
-            closeClient();
+        if (!queue.isEmpty() && queue.get(0).next == queue.get(0).frames.size()) {
+            completed.add(queue.remove(0));
         }
-        if (client != null && !desiredPortPath.equals(connectedPortPath)) {
-            closeClient();
+        if (!pendingFrames.isEmpty()) {
+            long start = System.nanoTime();
+            link.client().sendAll(pendingFrames, dropped);
+            long elapsed = System.nanoTime() - start;
+            metrics.writeLatency().record(elapsed);
+            // Only what reached the wire counts towards metrics, the governor and pacing.
+            for (int i = dropped.nextSetBit(0); i >= 0; i = dropped.nextSetBit(i + 1)) {
+                LumenFrame frame = pendingFrames.get(i);
+                long size = sizing.frameSize(frame.path(), frame.data().length);
+                Pending owner = pendingOwners.get(i);
+                owner.dropped++;
+                owner.bytes -= size;
+                bytes -= size;
+            }
+            if (!dropped.isEmpty()) {
+                metrics.dropped(dropped.cardinality());
+            }
+            governor.onWrite(bytes, elapsed, start + elapsed);
+            pace(bytes);
+            pendingFrames.clear();
+            pendingOwners.clear();
         }
-        if (client != null) {
-            return true;
+        long now = System.nanoTime();
+        for (int i = 0; i < completed.size(); i++) {
+            Pending pending = completed.get(i);
+            metrics.sent(pending.channel, pending.frames.size() - pending.dropped, pending.bytes);
+            governor.onSent(pending.channel, pending.priority, pending.bytes, now);
+            // The device is missing part of this message, so it must not count as delivered.
+            if (pending.dropped == 0) {
+                pending.message.onSent(link.session());
+            }
         }
+        recycle(completed);
+    }
 
-        long now = System.currentTimeMillis();
-        if (hasAttemptedInitialConnect) {
-            if (!config.autoReconnect) {
-                return false;
+    // Encodes the drained batch into the queue, which stays ordered by priority. Each message goes behind
+    // everything of its own priority, so a partly sent message stays ahead of newer ones.
+    private void enqueue(LinkSession session) {
+        for (int i = 0; i < batchChannels.size(); i++) {
+            String channel = batchChannels.get(i);
+            SerialMessage message = batchMessages.get(i);
+            List<LumenFrame> frames;
+            try {
+                frames = message.encode(session);
+            } catch (RuntimeException e) {
+                LOGGER.debug("Failed to encode serial message for {}", channel, e);
+                LumenMetrics.get().dropped(1);
+                continue;
             }
-            long intervalMillis = Math.max(1, config.reconnectPeriodSeconds) * 1000L;
-            if (now - lastReconnectAttemptMillis < intervalMillis) {
-                return false;
+            Pending pending = spare.isEmpty() ? new Pending() : spare.pop();
+            pending.set(channel, priority(channel), message, frames);
+            int at = queue.size();
+            while (at > 0 && queue.get(at - 1).priority > pending.priority) {
+                at--;
             }
+            queue.add(at, pending);
         }
+        batchChannels.clear();
+        batchMessages.clear();
+    }
 
-        hasAttemptedInitialConnect = true;
-        lastReconnectAttemptMillis = now;
-        try {
-            client = new SerialPackClient(desiredPortPath);
-            connectedPortPath = desiredPortPath;
-            return true;
-        } catch (IOException e) {
-            LOGGER.debug("Failed to connect to serial port {}", desiredPortPath, e);
-            closeClient();
-            return false;
+    private void recycle(List<Pending> pendings) {
+        for (int i = 0; i < pendings.size(); i++) {
+            Pending pending = pendings.get(i);
+            pending.set(null, 0, null, null);
+            spare.push(pending);
+        }
+        pendings.clear();
+    }
+
+    private static int priority(String channel) {
+        if (SnapshotCodec.SNAPSHOT_PATH.equals(channel) || SnapshotCodec.NAME_PATH.equals(channel)) {
+            return 0;
+        }
+        if (channel.startsWith(TelemetryField.PATH_PREFIX)) {
+            return 1;
         }
+        return 2;
     }
 
-    private void closeClient() {
-        if (client != null) {
-            client.close();
+    private void pace(long bytes) {
+        if (endpoint.maxBytesPerSecond <= 0) {
+            return;
+        }
+        long now = System.nanoTime();
+        nextWriteNanos = Math.max(nextWriteNanos, now) + bytes * TimeUnit.SECONDS.toNanos(1) / endpoint.maxBytesPerSecond;
+    }
+
+    // Moves the messages on channels more urgent than the given priority that the governor lets through into the
+    // batch; the rest stay in their mailbox, where newer posts keep replacing them, and throttledNanos says when to
+    // look again.
+    private void drainMailboxes(int morePriorityThan) {
+        throttledNanos = 0;
+        synchronized (mailboxes) {
+            if (mailboxes.isEmpty()) {
+                return;
+            }
+            long now = System.nanoTime();
+            Iterator<Map.Entry<String, SerialMessage>> entries = mailboxes.entrySet().iterator();
+            while (entries.hasNext()) {
+                Map.Entry<String, SerialMessage> entry = entries.next();
+                int priority = priority(entry.getKey());
+                if (priority >= morePriorityThan) {
+                    continue;
+                }
+                long delay = governor.delayNanos(entry.getKey(), priority, now);
+                if (delay > 0) {
+                    throttledNanos = throttledNanos == 0 ? delay : Math.min(throttledNanos, delay);
+                    continue;
+                }
+                batchChannels.add(entry.getKey());
+                batchMessages.add(entry.getValue());
+                entries.remove();
+            }
+        }
+    }
+
+    // Puts the batch back ahead of anything posted meanwhile; a newer post on the same channel still wins.
+    private void restore() {
+        synchronized (mailboxes) {
+            int restored = batchChannels.size();
+            for (int i = 0; i < restored; i++) {
+                SerialMessage newer = mailboxes.remove(batchChannels.get(i));
+                if (newer != null) {
+                    LumenMetrics.get().replaced();
+                    batchMessages.set(i, newer);
+                }
+            }
+            for (Map.Entry<String, SerialMessage> entry : mailboxes.entrySet()) {
+                batchChannels.add(entry.getKey());
+                batchMessages.add(entry.getValue());
+            }
+            mailboxes.clear();
+            for (int i = 0; i < batchChannels.size(); i++) {
+                mailboxes.put(batchChannels.get(i), batchMessages.get(i));
+            }
         }
-        client = null;
-        connectedPortPath = null;
+        batchChannels.clear();
+        batchMessages.clear();
     }
 
     @Override
     public void close() {
-        closeClient();
+        closed = true;
+        LockSupport.unpark(writer);
+    }
+
+    private static final class Pending {
+        private String channel;
+        private int priority;
+        private SerialMessage message;
+        private List<LumenFrame> frames;
+        private int next;
+        private int dropped;
+        private long bytes;
+
+        private void set(String channel, int priority, SerialMessage message, List<LumenFrame> frames) {
+            this.channel = channel;
+            this.priority = priority;
+            this.message = message;
+            this.frames = frames;
+            next = 0;
+            dropped = 0;
+            bytes = 0;
+        }
     }
 }
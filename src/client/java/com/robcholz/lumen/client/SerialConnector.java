@@ -0,0 +1,215 @@
+package com.robcholz.lumen.client;
+
+import com.robcholz.lumen.DeviceCapabilities;
+import com.robcholz.lumen.LumenFrame;
+import com.robcholz.lumen.SerialPackClient;
+import com.robcholz.lumen.client.config.LumenConfig;
+import com.robcholz.lumen.client.config.LumenConfigManager;
+import com.robcholz.lumen.transport.Transports;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Consumer;
+
+// Owns the port on its own thread: DISCONNECTED -> CONNECTING (open) -> HANDSHAKING (hello, baud, probe) -> READY.
+// Writers only ever look at the published link, so a slow open never holds up queued messages.
+final class SerialConnector {
+    private static final Logger LOGGER = LoggerFactory.getLogger("lumen");
+    private static final long HANDSHAKE_TIMEOUT_MILLIS = 500;
+    private static final long CHECK_INTERVAL_NANOS = TimeUnit.MILLISECONDS.toNanos(500);
+    private static final long INITIAL_BACKOFF_MILLIS = 250;
+    // Connection ids are unique across all devices so per-connection state never mixes them up.
+    private static final AtomicLong CONNECTIONS = new AtomicLong();
+
+    record Link(SerialPackClient client, LinkSession session) {
+    }
+
+    private final LumenConfig.DeviceEndpoint endpoint;
+    private final DeviceSync device;
+    private final Consumer<LumenFrame> inboundListener;
+    private final Runnable onReady;
+    private final Thread thread;
+    private volatile LinkState state = LinkState.DISCONNECTED;
+    private volatile Link link;
+    private volatile Link lostLink;
+    private volatile boolean closed;
+
+    private SerialPackClient client;
+    private String connectedPortPath;
+    private boolean hasAttemptedInitialConnect;
+    private boolean hasConnected;
+    private long nextAttemptMillis;
+    private int failures;
+    private long attemptedPortsVersion = -1;
+    private String baudCeilingPortPath;
+    private int baudCeiling = Integer.MAX_VALUE;
+
+    SerialConnector(
+            LumenConfig.DeviceEndpoint endpoint,
+            DeviceSync device,
+            Consumer<LumenFrame> inboundListener,
+            Runnable onReady
+    ) {
+        this.endpoint = endpoint;
+        this.device = device;
+        this.inboundListener = inboundListener;
+        this.onReady = onReady;
+        thread = new Thread(this::run, "lumen-serial-connector-" + endpoint);
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    LinkState state() {
+        return state;
+    }
+
+    Link link() {
+        return link;
+    }
+
+    // Called by the writer when a send on this link failed.
+    void connectionLost(Link failed) {
+        if (failed == null || link != failed) {
+            return;
+        }
+        link = null;
+        lostLink = failed;
+        failed.client().close();
+        LockSupport.unpark(thread);
+    }
+
+    void close() {
+        closed = true;
+        LockSupport.unpark(thread);
+    }
+
+    private void run() {
+        while (!closed) {
+            if (state == LinkState.READY) {
+                checkLink();
+            } else {
+                tryConnect();
+            }
+            long waitNanos = CHECK_INTERVAL_NANOS;
+            long untilAttemptMillis = nextAttemptMillis - System.currentTimeMillis();
+            if (state != LinkState.READY && untilAttemptMillis > 0) {
+                waitNanos = Math.min(waitNanos, TimeUnit.MILLISECONDS.toNanos(untilAttemptMillis));
+            }
+            LockSupport.parkNanos(this, waitNanos);
+        }
+        disconnect();
+    }
+
+    private String desiredPortPath(LumenConfig config) {
+        return endpoint.portPath.isEmpty() ? SerialPortLocator.resolvePortPath(config) : endpoint.portPath;
+    }
+
+    private int configuredBaudRate(LumenConfig config) {
+        return endpoint.baudRate > 0 ? endpoint.baudRate : config.baudRate;
+    }
+
+    private void checkLink() {
+        String desiredPortPath = desiredPortPath(LumenConfigManager.get());
+        Link lost = lostLink;
+        if (lost != null) {
+            lostLink = null;
+            lowerBaudCeiling(lost.session());
+        }
+        if (link == null || !client.isOpen() || !client.getPortPath().equals(desiredPortPath)) {
+            disconnect();
+            scheduleRetry(true);
+        }
+    }
+
+    private void tryConnect() {
+        LumenConfig config = LumenConfigManager.get();
+        String desiredPortPath = desiredPortPath(config);
+        if (desiredPortPath == null || desiredPortPath.isBlank()) {
+            return;
+        }
+        long portsVersion = SerialPortLocator.portsVersion();
+        if (hasAttemptedInitialConnect) {
+            if (!config.autoReconnect) {
+                return;
+            }
+            // A device that was just plugged in is tried right away instead of waiting out the backoff.
+            if (System.currentTimeMillis() < nextAttemptMillis && portsVersion == attemptedPortsVersion) {
+                return;
+            }
+        }
+
+        hasAttemptedInitialConnect = true;
+        attemptedPortsVersion = portsVersion;
+        try {
+            if (!desiredPortPath.equals(baudCeilingPortPath)) {
+                baudCeilingPortPath = desiredPortPath;
+                baudCeiling = Integer.MAX_VALUE;
+            }
+            state = LinkState.CONNECTING;
+            client = new SerialPackClient(desiredPortPath, configuredBaudRate(config));
+            client.setInboundListener(inboundListener);
+            connectedPortPath = desiredPortPath;
+            state = LinkState.HANDSHAKING;
+            DeviceCapabilities capabilities = client.handshake(HANDSHAKE_TIMEOUT_MILLIS);
+            double throughput = config.autoBaud && !capabilities.isLegacy() && Transports.isSerial(desiredPortPath)
+                    ? BaudNegotiator.negotiate(client, capabilities, baudCeiling)
+                    : BaudNegotiator.probe(client, capabilities);
+            capabilities = client.getCapabilities();
+            LinkSession session = new LinkSession(
+                    CONNECTIONS.incrementAndGet(), capabilities, client.getBaudRate(), throughput, device);
+            if (capabilities.isLegacy()) {
+                LOGGER.info("Connected to {} at {} baud (no handshake, write-only mode)",
+                        desiredPortPath, client.getBaudRate());
+            } else {
+                LOGGER.info("Connected to {} at {} baud, {} B/s measured: {}",
+                        desiredPortPath, client.getBaudRate(), Math.round(throughput), capabilities);
+            }
+            failures = 0;
+            LumenMetrics.get().connected(hasConnected);
+            hasConnected = true;
+            link = new Link(client, session);
+            state = LinkState.READY;
+            onReady.run();
+        } catch (IOException e) {
+            LOGGER.debug("Failed to connect to serial port {}", desiredPortPath, e);
+            LumenMetrics.get().connectFailed();
+            disconnect();
+            scheduleRetry(false);
+        }
+    }
+
+    // Exponential backoff with jitter (half to all of the step), capped at the configured reconnect period. A link that was
+    // up and dropped starts over at the shortest delay.
+    private void scheduleRetry(boolean wasReady) {
+        failures = wasReady ? 0 : failures + 1;
+        long capMillis = Math.max(1, LumenConfigManager.get().reconnectPeriodSeconds) * 1000L;
+        long backoff = Math.min(capMillis, INITIAL_BACKOFF_MILLIS << Math.min(failures, 16));
+        long delay = backoff / 2 + ThreadLocalRandom.current().nextLong(backoff / 2 + 1);
+        nextAttemptMillis = System.currentTimeMillis() + delay;
+        LOGGER.debug("Next serial connect attempt in {} ms", delay);
+    }
+
+    private void lowerBaudCeiling(LinkSession session) {
+        // A link that fails above the configured rate is renegotiated below that rate next time.
+        if (session.baudRate() > configuredBaudRate(LumenConfigManager.get())) {
+            baudCeiling = session.baudRate() - 1;
+            LOGGER.info("Serial errors at {} baud on {}, capping auto baud below it",
+                    session.baudRate(), connectedPortPath);
+        }
+    }
+
+    private void disconnect() {
+        link = null;
+        if (client != null) {
+            client.close();
+        }
+        client = null;
+        connectedPortPath = null;
+        state = LinkState.DISCONNECTED;
+    }
+}
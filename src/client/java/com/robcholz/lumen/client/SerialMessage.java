@@ -0,0 +1,18 @@
+package com.robcholz.lumen.client;
+
+import com.robcholz.lumen.LumenFrame;
+
+import java.util.List;
+
+@FunctionalInterface
+public interface SerialMessage {
+    List<LumenFrame> encode(LinkSession session);
+
+    default void onSent(LinkSession session) {
+    }
+
+    static SerialMessage of(String path, byte[] data) {
+        List<LumenFrame> frames = List.of(new LumenFrame(path, data));
+        return session -> frames;
+    }
+}
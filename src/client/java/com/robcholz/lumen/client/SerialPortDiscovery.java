@@ -0,0 +1,198 @@
+package com.robcholz.lumen.client;
+
+import com.fazecast.jSerialComm.SerialPort;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+// Enumerates ports on its own thread so callers only ever read the cached list. On Linux, tty nodes
+// appearing or disappearing under /dev trigger a rescan; elsewhere the list is refreshed periodically.
+final class SerialPortDiscovery {
+    private static final Logger LOGGER = LoggerFactory.getLogger("lumen");
+    private static final Path DEV = Path.of("/dev");
+    private static final long POLL_SLICE_MILLIS = 250;
+    private static final long WATCHED_RESCAN_MILLIS = TimeUnit.SECONDS.toMillis(30);
+    private static final long UNWATCHED_RESCAN_MILLIS = TimeUnit.SECONDS.toMillis(3);
+    private static final long HOTPLUG_SETTLE_MILLIS = 300;
+    // USB serial bridges and native USB CDC on the boards Lumen runs on; -1 matches any product.
+    private static final int[][] KNOWN_DEVICES = {
+            {0x303A, -1},     // Espressif native USB
+            {0x10C4, 0xEA60}, // Silicon Labs CP210x
+            {0x1A86, 0x7523}, // WCH CH340
+            {0x1A86, 0x55D3}, // WCH CH343
+            {0x0403, -1},     // FTDI
+    };
+
+    private static final Object LOCK = new Object();
+    private static volatile List<Port> ports;
+    private static volatile long version;
+    private static volatile boolean rescanRequested;
+    private static Thread thread;
+
+    record Port(String name, int vendorId, int productId) {
+        boolean isUsb() {
+            return vendorId > 0;
+        }
+
+        boolean isKnownDevice() {
+            for (int[] device : KNOWN_DEVICES) {
+                if (device[0] == vendorId && (device[1] == -1 || device[1] == productId)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        boolean looksLikeSerialName() {
+            String lower = name.toLowerCase();
+            return lower.contains("usb") || lower.contains("modem") || lower.contains("tty");
+        }
+    }
+
+    private SerialPortDiscovery() {
+    }
+
+    static List<Port> ports() {
+        ensureStarted();
+        List<Port> current = ports;
+        return current == null ? List.of() : current;
+    }
+
+    static long version() {
+        ensureStarted();
+        return version;
+    }
+
+    static void rescan() {
+        rescanRequested = true;
+        ensureStarted();
+        LockSupport.unpark(thread);
+    }
+
+    static Port bestPort() {
+        Port best = null;
+        int bestScore = -1;
+        for (Port port : ports()) {
+            int score = port.isKnownDevice() ? 3 : port.isUsb() ? 2 : port.looksLikeSerialName() ? 1 : 0;
+            if (score > bestScore) {
+                best = port;
+                bestScore = score;
+            }
+        }
+        return best;
+    }
+
+    private static void ensureStarted() {
+        synchronized (LOCK) {
+            if (thread != null) {
+                return;
+            }
+            // The first scan runs on the caller (client init) so the initial port is known right away.
+            scan();
+            thread = new Thread(SerialPortDiscovery::run, "lumen-port-discovery");
+            thread.setDaemon(true);
+            thread.start();
+        }
+    }
+
+    private static void run() {
+        WatchService watcher = openDevWatcher();
+        long rescanMillis = watcher != null ? WATCHED_RESCAN_MILLIS : UNWATCHED_RESCAN_MILLIS;
+        long lastScan = System.currentTimeMillis();
+        while (true) {
+            boolean hotplug = watcher != null && awaitTtyEvent(watcher);
+            if (hotplug) {
+                // Let udev finish creating the node and applying permissions before opening it.
+                LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(HOTPLUG_SETTLE_MILLIS));
+                drain(watcher);
+            } else if (watcher == null) {
+                LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(POLL_SLICE_MILLIS));
+            }
+            long now = System.currentTimeMillis();
+            if (hotplug || rescanRequested || now - lastScan >= rescanMillis) {
+                rescanRequested = false;
+                scan();
+                lastScan = now;
+            }
+        }
+    }
+
+    private static WatchService openDevWatcher() {
+        if (!System.getProperty("os.name", "").toLowerCase().contains("linux") || !Files.isDirectory(DEV)) {
+            return null;
+        }
+        try {
+            WatchService watcher = FileSystems.getDefault().newWatchService();
+            DEV.register(watcher, StandardWatchEventKinds.ENTRY_CREATE, StandardWatchEventKinds.ENTRY_DELETE);
+            return watcher;
+        } catch (IOException | UnsupportedOperationException e) {
+            LOGGER.debug("Cannot watch {} for serial hotplug, falling back to periodic scans", DEV, e);
+            return null;
+        }
+    }
+
+    private static boolean awaitTtyEvent(WatchService watcher) {
+        try {
+            WatchKey key = watcher.poll(POLL_SLICE_MILLIS, TimeUnit.MILLISECONDS);
+            if (key == null) {
+                return false;
+            }
+            boolean tty = false;
+            for (WatchEvent<?> event : key.pollEvents()) {
+                if (event.kind() == StandardWatchEventKinds.OVERFLOW
+                        || event.context().toString().startsWith("tty")
+                        || event.context().toString().startsWith("cu.")) {
+                    tty = true;
+                }
+            }
+            key.reset();
+            return tty;
+        } catch (InterruptedException | ClosedWatchServiceException e) {
+            return false;
+        }
+    }
+
+    private static void drain(WatchService watcher) {
+        WatchKey key;
+        while ((key = watcher.poll()) != null) {
+            key.pollEvents();
+            key.reset();
+        }
+    }
+
+    private static void scan() {
+        List<Port> found = new ArrayList<>();
+        try {
+            for (SerialPort port : SerialPort.getCommPorts()) {
+                String name = port.getSystemPortName();
+                if (name != null && !name.isBlank()) {
+                    found.add(new Port(name.trim(), port.getVendorID(), port.getProductID()));
+                }
+            }
+        } catch (RuntimeException | LinkageError e) {
+            LOGGER.debug("Serial port enumeration failed", e);
+            return;
+        }
+        found.sort(Comparator.comparing(Port::name));
+        List<Port> result = List.copyOf(found);
+        if (!result.equals(ports)) {
+            ports = result;
+            version++;
+            LOGGER.debug("Serial ports: {}", result);
+        }
+    }
+}
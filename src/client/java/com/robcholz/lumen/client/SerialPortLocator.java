@@ -1,10 +1,8 @@
 package com.robcholz.lumen.client;
 
-import com.fazecast.jSerialComm.SerialPort;
 import com.robcholz.lumen.client.config.LumenConfig;
 
 import java.util.ArrayList;
-import java.util.Collections;
 import java.util.List;
 
 public final class SerialPortLocator {
@@ -28,38 +26,27 @@ public final class SerialPortLocator {
     }
 
     public static String autoDetectPort() {
-        SerialPort[] ports = SerialPort.getCommPorts();
-        if (ports.length == 0) {
-            return null;
-        }
-        String best = null;
-        for (SerialPort port : ports) {
-            String name = normalize(port.getSystemPortName());
-            String lower = name.toLowerCase();
-            if (lower.contains("usb") || lower.contains("modem") || lower.contains("tty")) {
-                best = port.getSystemPortName();
-                break;
-            }
-        }
-        if (best != null) {
-            return best;
-        }
-        return ports[0].getSystemPortName();
+        SerialPortDiscovery.Port best = SerialPortDiscovery.bestPort();
+        return best == null ? null : best.name();
     }
 
     public static List<String> listPorts() {
-        SerialPort[] ports = SerialPort.getCommPorts();
-        List<String> names = new ArrayList<>(ports.length);
-        for (SerialPort port : ports) {
-            String name = normalize(port.getSystemPortName());
-            if (!name.isEmpty()) {
-                names.add(name);
-            }
+        List<SerialPortDiscovery.Port> ports = SerialPortDiscovery.ports();
+        List<String> names = new ArrayList<>(ports.size());
+        for (SerialPortDiscovery.Port port : ports) {
+            names.add(port.name());
         }
-        Collections.sort(names);
         return names;
     }
 
+    public static void rescanPorts() {
+        SerialPortDiscovery.rescan();
+    }
+
+    public static long portsVersion() {
+        return SerialPortDiscovery.version();
+    }
+
     private static String normalize(String value) {
         if (value == null) {
             return "";
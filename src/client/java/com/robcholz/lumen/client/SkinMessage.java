@@ -0,0 +1,139 @@
+package com.robcholz.lumen.client;
+
+import com.robcholz.lumen.DeviceCapabilities;
+import com.robcholz.lumen.LumenFrame;
+import com.robcholz.lumen.LumenSyncState.SkinPayload;
+import com.robcholz.lumen.LumenSyncState.SkinSource;
+import com.robcholz.lumen.SkinCodec;
+import com.robcholz.lumen.SkinFrameTracker;
+import com.robcholz.lumen.SkinRenders;
+import com.robcholz.lumen.SkinView;
+import com.robcholz.lumen.client.config.LumenConfig;
+import com.robcholz.lumen.client.config.LumenConfigManager;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+// One instance is posted to every device. Each device gets the view it asked for at its own screen size;
+// devices that last received the same render and use the same codec get the same frame, so each distinct full
+// or delta frame is built and compressed only once.
+final class SkinMessage implements SerialMessage {
+    private final SkinSource skin;
+    private final List<Encoded> encoded = new ArrayList<>();
+    private final Map<Long, SkinPayload> rendered = new HashMap<>();
+    private final Map<Long, LumenFrame> palettes = new HashMap<>();
+    private final Set<Long> chunkedConnections = new HashSet<>();
+
+    SkinMessage(SkinSource skin) {
+        this.skin = skin;
+    }
+
+    @Override
+    public List<LumenFrame> encode(LinkSession session) {
+        DeviceSync device = session.device();
+        long connection = session.connection();
+        LumenConfig config = LumenConfigManager.get();
+        DeviceCapabilities capabilities = session.capabilities();
+        SkinView view = device.skinView(config.skinView);
+        // Registered before the lookup, so a render finishing in between still posts the skin again.
+        String key = SkinRenders.key(skin, view, capabilities, config.skinAreaAverage);
+        device.awaitSkinRender(key);
+        SkinPayload payload = SkinRenders.payload(skin, view, capabilities, config.skinAreaAverage);
+        if (payload == null) {
+            // Still rendering; the skin is posted to this device again once its view is ready.
+            return List.of();
+        }
+        device.skinRendered(key);
+        synchronized (rendered) {
+            rendered.put(connection, payload);
+        }
+        boolean indexed = config.skinIndexed && capabilities.indexedSkins();
+        SkinFrameTracker.SkinFrame frame = frame(device.skinTracker().base(connection), payload,
+                session.skinCodec(config.skinCodec), indexed, config.skinDither);
+        if (frame == null) {
+            return List.of();
+        }
+        List<LumenFrame> frames = new ArrayList<>(2);
+        LumenFrame palette = frame.palette();
+        if (palette != null) {
+            synchronized (palettes) {
+                palettes.put(connection, palette);
+            }
+            if (!device.skinTracker().hasPalette(palette.data(), connection)) {
+                frames.add(palette);
+            }
+        }
+        int chunkSize = session.skinChunkBytes();
+        if (!capabilities.chunkedSkins() || frame.image().data().length <= chunkSize) {
+            frames.add(frame.image());
+            return frames;
+        }
+        synchronized (chunkedConnections) {
+            chunkedConnections.add(connection);
+        }
+        // The tracker only advances once the device has acknowledged the last chunk.
+        frames.addAll(device.skinTransfer().start(frame.image(), chunkSize, connection,
+                () -> device.skinTracker().markSent(payload, connection)));
+        return frames;
+    }
+
+    @Override
+    public void onSent(LinkSession session) {
+        LumenFrame palette;
+        synchronized (palettes) {
+            palette = palettes.get(session.connection());
+        }
+        if (palette != null) {
+            session.device().skinTracker().markPalette(palette.data(), session.connection());
+        }
+        synchronized (chunkedConnections) {
+            if (chunkedConnections.contains(session.connection())) {
+                return;
+            }
+        }
+        SkinPayload payload;
+        synchronized (rendered) {
+            payload = rendered.get(session.connection());
+        }
+        if (payload != null) {
+            session.device().skinTracker().markSent(payload, session.connection());
+        }
+    }
+
+    private synchronized SkinFrameTracker.SkinFrame frame(
+            SkinPayload base,
+            SkinPayload payload,
+            SkinCodec codec,
+            boolean indexed,
+            boolean dither
+    ) {
+        for (Encoded entry : encoded) {
+            if (entry.base() == base && entry.payload() == payload && entry.codec() == codec
+                    && entry.indexed() == indexed) {
+                return entry.frame();
+            }
+        }
+        SkinFrameTracker.SkinFrame frame = SkinFrameTracker.encode(base, payload, indexed, dither);
+        // The palette is small and goes out once per connection, so only the image is compressed.
+        if (frame != null && codec != SkinCodec.NONE) {
+            LumenFrame image = frame.image();
+            frame = new SkinFrameTracker.SkinFrame(new LumenFrame(image.path(), codec.wrap(image.data())),
+                    frame.palette());
+        }
+        encoded.add(new Encoded(base, payload, codec, indexed, frame));
+        return frame;
+    }
+
+    private record Encoded(
+            SkinPayload base,
+            SkinPayload payload,
+            SkinCodec codec,
+            boolean indexed,
+            SkinFrameTracker.SkinFrame frame
+    ) {
+    }
+}
@@ -0,0 +1,50 @@
+package com.robcholz.lumen.client;
+
+import com.robcholz.lumen.LumenSyncState;
+import com.robcholz.lumen.client.config.LumenConfig;
+import com.robcholz.lumen.client.config.LumenConfigManager;
+
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Consumer;
+
+final class SnapshotChangeDetector {
+    private final Executor executor;
+    private final Consumer<LumenSyncState.Snapshot> sink;
+    private final AtomicReference<LumenSyncState.Snapshot> pending = new AtomicReference<>();
+    private LumenSyncState.Snapshot lastEmitted;
+    private long lastEmitNanos;
+
+    SnapshotChangeDetector(Executor executor, Consumer<LumenSyncState.Snapshot> sink) {
+        this.executor = executor;
+        this.sink = sink;
+    }
+
+    void onEndTick() {
+        LumenConfig config = LumenConfigManager.get();
+        if (!config.eventDrivenSync) {
+            lastEmitted = null;
+            return;
+        }
+        LumenSyncState.Snapshot snapshot = LumenSyncState.latestSnapshot();
+        long now = System.nanoTime();
+        long keepaliveNanos = TimeUnit.SECONDS.toNanos(config.keepaliveSeconds);
+        if (snapshot.equals(lastEmitted) && now - lastEmitNanos < keepaliveNanos) {
+            return;
+        }
+        lastEmitted = snapshot;
+        lastEmitNanos = now;
+        // Only one drain is queued at a time; later changes replace the pending value.
+        if (pending.getAndSet(snapshot) == null) {
+            executor.execute(this::drain);
+        }
+    }
+
+    private void drain() {
+        LumenSyncState.Snapshot snapshot = pending.getAndSet(null);
+        if (snapshot != null) {
+            sink.accept(snapshot);
+        }
+    }
+}
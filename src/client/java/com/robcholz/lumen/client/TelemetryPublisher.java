@@ -0,0 +1,69 @@
+package com.robcholz.lumen.client;
+
+import com.robcholz.lumen.TelemetryField;
+import com.robcholz.lumen.client.config.LumenConfigManager;
+import net.minecraft.client.MinecraftClient;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+
+// Runs on the client tick. A field is captured only when a connected display subscribes to it and the shortest
+// of their intervals has passed; each display is then given the value only if it changed since its last one.
+final class TelemetryPublisher {
+    private static final Logger LOGGER = LoggerFactory.getLogger("lumen");
+
+    private final LumenDevices devices;
+    private final Map<TelemetryField, Long> capturedNanos = new EnumMap<>(TelemetryField.class);
+
+    TelemetryPublisher(LumenDevices devices) {
+        this.devices = devices;
+    }
+
+    void onEndTick(MinecraftClient client) {
+        if (client.player == null) {
+            return;
+        }
+        List<LumenSerialManager> managers = devices.managers();
+        Map<String, Integer> configured = LumenConfigManager.get().telemetry;
+        long now = System.nanoTime();
+        for (TelemetryField field : TelemetryField.values()) {
+            long captureInterval = Long.MAX_VALUE;
+            for (LumenSerialManager manager : managers) {
+                long interval = intervalNanos(manager, field, configured);
+                if (interval >= 0 && manager.connection() >= 0) {
+                    captureInterval = Math.min(captureInterval, interval);
+                }
+            }
+            if (captureInterval == Long.MAX_VALUE) {
+                continue;
+            }
+            Long captured = capturedNanos.get(field);
+            if (captured != null && now - captured < captureInterval) {
+                continue;
+            }
+            capturedNanos.put(field, now);
+            byte[] value;
+            try {
+                value = field.capture(client.player);
+            } catch (RuntimeException e) {
+                LOGGER.debug("Failed to capture telemetry field {}", field.key(), e);
+                continue;
+            }
+            for (LumenSerialManager manager : managers) {
+                long interval = intervalNanos(manager, field, configured);
+                long connection = manager.connection();
+                if (interval >= 0 && connection >= 0
+                        && manager.device().telemetryDue(field, value, interval, now, connection)) {
+                    manager.post(field.path(), SerialMessage.of(field.path(), value));
+                }
+            }
+        }
+    }
+
+    private static long intervalNanos(LumenSerialManager manager, TelemetryField field, Map<String, Integer> configured) {
+        return manager.subscribes(field.path()) ? manager.device().telemetryIntervalNanos(field, configured) : -1;
+    }
+}
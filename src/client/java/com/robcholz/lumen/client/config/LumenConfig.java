@@ -2,6 +2,9 @@ package com.robcholz.lumen.client.config;
 
 import com.google.gson.Gson;
 import com.google.gson.GsonBuilder;
+import com.robcholz.lumen.SkinCodec;
+import com.robcholz.lumen.SkinView;
+import com.robcholz.lumen.TelemetryField;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -10,14 +13,40 @@ import java.io.Reader;
 import java.io.Writer;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
 
 public class LumenConfig {
+    public static final int DEFAULT_BAUD_RATE = 460800;
     private static final Logger LOGGER = LoggerFactory.getLogger("lumen");
     private static final Gson GSON = new GsonBuilder().setPrettyPrinting().create();
 
     public String portPath = "";
     public boolean autoReconnect = true;
     public int reconnectPeriodSeconds = 5;
+    public int baudRate = DEFAULT_BAUD_RATE;
+    public boolean autoBaud = false;
+    public boolean eventDrivenSync = true;
+    public int keepaliveSeconds = 5;
+    public SyncFormat syncFormat = SyncFormat.BINARY;
+    public SkinCodec skinCodec = SkinCodec.NONE;
+    // Palette-indexed full skin frames for firmware that announces support; dithering only matters past 256 colors.
+    public boolean skinIndexed = true;
+    public boolean skinDither = true;
+    // View sent to devices that have not picked one; each is rendered at the size the device reports.
+    public SkinView skinView = SkinView.FRONT;
+    // Box-filter downscaling (anti-aliased edges) instead of nearest-neighbor when a view is shrunk.
+    public boolean skinAreaAverage = true;
+    // Share of the measured link rate the bandwidth governor lets each device use.
+    public int linkBudgetPercent = 80;
+    // Extra displays; when empty, the single port above (or auto-detect) is used.
+    public List<DeviceEndpoint> devices = new ArrayList<>();
+    // Telemetry fields sent to every display, by key (e.g. "hunger", "position") with an interval in ms.
+    // Devices can request more on their own; fields nobody subscribes to are never captured.
+    public Map<String, Integer> telemetry = new LinkedHashMap<>();
 
     public static LumenConfig load(Path path) {
         if (!Files.exists(path)) {
@@ -41,9 +70,32 @@ public class LumenConfig {
         copy.portPath = portPath;
         copy.autoReconnect = autoReconnect;
         copy.reconnectPeriodSeconds = reconnectPeriodSeconds;
+        copy.baudRate = baudRate;
+        copy.autoBaud = autoBaud;
+        copy.eventDrivenSync = eventDrivenSync;
+        copy.keepaliveSeconds = keepaliveSeconds;
+        copy.syncFormat = syncFormat;
+        copy.skinCodec = skinCodec;
+        copy.skinIndexed = skinIndexed;
+        copy.skinDither = skinDither;
+        copy.skinView = skinView;
+        copy.skinAreaAverage = skinAreaAverage;
+        copy.linkBudgetPercent = linkBudgetPercent;
+        copy.devices = new ArrayList<>(devices.size());
+        for (DeviceEndpoint device : devices) {
+            copy.devices.add(device.copy());
+        }
+        copy.telemetry = new LinkedHashMap<>(telemetry);
         return copy;
     }
 
+    public List<DeviceEndpoint> endpoints() {
+        if (devices.isEmpty()) {
+            return List.of(new DeviceEndpoint());
+        }
+        return devices;
+    }
+
     public void save(Path path) {
         normalize();
         try {
@@ -63,5 +115,105 @@ public class LumenConfig {
         if (reconnectPeriodSeconds < 1) {
             reconnectPeriodSeconds = 1;
         }
+        if (baudRate < 300) {
+            baudRate = DEFAULT_BAUD_RATE;
+        }
+        if (keepaliveSeconds < 1) {
+            keepaliveSeconds = 1;
+        }
+        if (syncFormat == null) {
+            syncFormat = SyncFormat.BINARY;
+        }
+        if (skinCodec == null) {
+            skinCodec = SkinCodec.NONE;
+        }
+        if (skinView == null) {
+            skinView = SkinView.FRONT;
+        }
+        linkBudgetPercent = Math.max(10, Math.min(100, linkBudgetPercent));
+        if (devices == null) {
+            devices = new ArrayList<>();
+        }
+        devices.removeIf(Objects::isNull);
+        for (DeviceEndpoint device : devices) {
+            device.normalize();
+        }
+        if (telemetry == null) {
+            telemetry = new LinkedHashMap<>();
+        }
+        telemetry.entrySet().removeIf(entry -> {
+            if (entry.getKey() == null || entry.getValue() == null) {
+                return true;
+            }
+            if (TelemetryField.byKey(entry.getKey()) == null) {
+                LOGGER.warn("Ignoring unknown telemetry field '{}'", entry.getKey());
+                return true;
+            }
+            return false;
+        });
+    }
+
+    public static class DeviceEndpoint {
+        public String portPath = "";
+        // 0 uses the global baud rate.
+        public int baudRate = 0;
+        // Channels this device receives, e.g. "sync" or "sync/skin"; empty means all.
+        public List<String> channels = new ArrayList<>();
+        // 0 means unlimited.
+        public int maxBytesPerSecond = 0;
+
+        public DeviceEndpoint copy() {
+            DeviceEndpoint copy = new DeviceEndpoint();
+            copy.portPath = portPath;
+            copy.baudRate = baudRate;
+            copy.channels = new ArrayList<>(channels);
+            copy.maxBytesPerSecond = maxBytesPerSecond;
+            return copy;
+        }
+
+        public boolean subscribes(String channel) {
+            return channels.isEmpty() || channels.contains(channel);
+        }
+
+        private void normalize() {
+            if (portPath == null) {
+                portPath = "";
+            }
+            portPath = portPath.trim();
+            if (baudRate != 0 && baudRate < 300) {
+                baudRate = 0;
+            }
+            if (channels == null) {
+                channels = new ArrayList<>();
+            }
+            channels.removeIf(Objects::isNull);
+            if (maxBytesPerSecond < 0) {
+                maxBytesPerSecond = 0;
+            }
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            return o instanceof DeviceEndpoint other
+                    && portPath.equals(other.portPath)
+                    && baudRate == other.baudRate
+                    && channels.equals(other.channels)
+                    && maxBytesPerSecond == other.maxBytesPerSecond;
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(portPath, baudRate, channels, maxBytesPerSecond);
+        }
+
+        @Override
+        public String toString() {
+            return portPath.isEmpty() ? "auto" : portPath;
+        }
+    }
+
+    public enum SyncFormat {
+        BINARY,
+        JSON
     }
 }
@@ -3,10 +3,14 @@ package com.robcholz.lumen.client.config;
 import net.fabricmc.loader.api.FabricLoader;
 
 import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.Consumer;
 
 public final class LumenConfigManager {
     private static final String FILE_NAME = "lumen.json";
     private static final Path CONFIG_PATH = FabricLoader.getInstance().getConfigDir().resolve(FILE_NAME);
+    private static final List<Consumer<LumenConfig>> SAVE_LISTENERS = new CopyOnWriteArrayList<>();
     private static volatile LumenConfig config = LumenConfig.load(CONFIG_PATH);
 
     private LumenConfigManager() {
@@ -19,5 +23,12 @@ public final class LumenConfigManager {
     public static void save(LumenConfig updated) {
         config = updated;
         updated.save(CONFIG_PATH);
+        for (Consumer<LumenConfig> listener : SAVE_LISTENERS) {
+            listener.accept(updated);
+        }
+    }
+
+    public static void onSave(Consumer<LumenConfig> listener) {
+        SAVE_LISTENERS.add(listener);
     }
 }
@@ -1,31 +1,53 @@
 package com.robcholz.lumen.client.config;
 
+import com.robcholz.lumen.client.LatencyHistogram;
+import com.robcholz.lumen.client.LinkState;
+import com.robcholz.lumen.client.LumenClient;
+import com.robcholz.lumen.client.LumenMetrics;
 import com.robcholz.lumen.client.SerialPortLocator;
 import net.minecraft.client.gui.screen.Screen;
 import net.minecraft.client.gui.widget.ButtonWidget;
 import net.minecraft.client.gui.widget.TextFieldWidget;
+import net.minecraft.text.OrderedText;
 import net.minecraft.text.Text;
 
+import java.util.ArrayList;
 import java.util.List;
+import java.util.Locale;
+import java.util.Map;
 
 public class LumenConfigScreen extends Screen {
     private static final int ENTRY_HEIGHT = 20;
     private static final int LIST_PADDING = 2;
+    private static final int STATS_SAMPLE_TICKS = 20;
     private final Screen parent;
     private final LumenConfig workingConfig;
     private TextFieldWidget portField;
     private TextFieldWidget reconnectField;
     private boolean autoReconnectEnabled;
     private ButtonWidget autoReconnectButton;
+    private boolean eventDrivenSync;
+    private ButtonWidget syncModeButton;
+    private TextFieldWidget baudRateField;
+    private boolean autoBaudEnabled;
+    private ButtonWidget autoBaudButton;
     private ButtonWidget portSelectButton;
     private ButtonWidget refreshPortsButton;
     private List<String> portOptions = List.of();
+    private long portOptionsVersion = -1;
     private boolean showPortList;
     private String lastPortFieldValue = "";
     private int portListX;
     private int portListY;
     private int portListWidth;
     private int scrollOffset;
+    private List<Text> statsLines = List.of();
+    private int statsTicks;
+    private long statsSampleNanos;
+    private Map<String, Long> statsBytes = Map.of();
+    private long statsFrames;
+    private LatencyHistogram.Snapshot statsWrite;
+    private LatencyHistogram.Snapshot statsCapture;
 
     public LumenConfigScreen(Screen parent) {
         super(Text.translatable("lumen.title"));
@@ -58,6 +80,7 @@ public class LumenConfigScreen extends Screen {
 
         y += 24;
         refreshPortsButton = ButtonWidget.builder(Text.translatable("lumen.config.refresh_ports"), button -> {
+            SerialPortLocator.rescanPorts();
             refreshPortOptions();
             scrollOffset = 0;
         }).dimensions(centerX - 100, y, 200, 20).build();
@@ -77,6 +100,26 @@ public class LumenConfigScreen extends Screen {
         reconnectField.setText(Integer.toString(workingConfig.reconnectPeriodSeconds));
         addSelectableChild(reconnectField);
 
+        y += 26;
+        eventDrivenSync = workingConfig.eventDrivenSync;
+        syncModeButton = ButtonWidget.builder(syncModeLabel(), button -> {
+            eventDrivenSync = !eventDrivenSync;
+            syncModeButton.setMessage(syncModeLabel());
+        }).dimensions(centerX - 100, y, 200, 20).build();
+        addDrawableChild(syncModeButton);
+
+        y += 26;
+        baudRateField = new TextFieldWidget(textRenderer, centerX - 100, y, 95, 20, Text.translatable("lumen.config.baud_rate"));
+        baudRateField.setMaxLength(8);
+        baudRateField.setText(Integer.toString(workingConfig.baudRate));
+        addSelectableChild(baudRateField);
+        autoBaudEnabled = workingConfig.autoBaud;
+        autoBaudButton = ButtonWidget.builder(autoBaudLabel(), button -> {
+            autoBaudEnabled = !autoBaudEnabled;
+            autoBaudButton.setMessage(autoBaudLabel());
+        }).dimensions(centerX + 5, y, 95, 20).build();
+        addDrawableChild(autoBaudButton);
+
         int buttonY = height - 50;
         addDrawableChild(ButtonWidget.builder(Text.translatable("gui.done"), button -> saveAndClose())
                 .dimensions(centerX - 100, buttonY, 95, 20)
@@ -86,6 +129,9 @@ public class LumenConfigScreen extends Screen {
                 .build());
 
         refreshPortOptions();
+        if (statsWrite == null) {
+            sampleStats();
+        }
         setInitialFocus(portField);
     }
 
@@ -101,6 +147,9 @@ public class LumenConfigScreen extends Screen {
         workingConfig.portPath = port;
         workingConfig.autoReconnect = autoReconnectEnabled;
         workingConfig.reconnectPeriodSeconds = parseReconnectPeriod(reconnectField.getText());
+        workingConfig.eventDrivenSync = eventDrivenSync;
+        workingConfig.baudRate = parseBaudRate(baudRateField.getText());
+        workingConfig.autoBaud = autoBaudEnabled;
         LumenConfigManager.save(workingConfig);
         close();
     }
@@ -114,11 +163,25 @@ public class LumenConfigScreen extends Screen {
         }
     }
 
+    private int parseBaudRate(String text) {
+        try {
+            int value = Integer.parseInt(text.trim());
+            return value >= 300 ? value : workingConfig.baudRate;
+        } catch (NumberFormatException e) {
+            return workingConfig.baudRate;
+        }
+    }
+
     @Override
     public void render(net.minecraft.client.gui.DrawContext context, int mouseX, int mouseY, float delta) {
         renderBackground(context, mouseX, mouseY, delta);
         context.drawCenteredTextWithShadow(textRenderer, Text.translatable("lumen.config.serial_settings"), width / 2, 20, 0xFFFFFF);
+        LinkState linkState = LumenClient.linkState();
+        context.drawCenteredTextWithShadow(textRenderer, Text.translatable("lumen.config.link_state",
+                Text.translatable("lumen.config.link_state." + linkState.name().toLowerCase())),
+                width / 2, 32, linkState == LinkState.READY ? 0x55FF55 : 0xAAAAAA);
         context.drawTextWithShadow(textRenderer, Text.translatable("lumen.config.leave_port_blank"), width / 2 - 100, height / 4 - 12, 0xAAAAAA);
+        renderStats(context);
         super.render(context, mouseX, mouseY, delta);
         if (showPortList) {
             context.getMatrices().push();
@@ -136,6 +199,74 @@ public class LumenConfigScreen extends Screen {
             lastPortFieldValue = current;
             portSelectButton.setMessage(portSelectLabel());
         }
+        if (SerialPortLocator.portsVersion() != portOptionsVersion) {
+            refreshPortOptions();
+        }
+        if (++statsTicks >= STATS_SAMPLE_TICKS) {
+            statsTicks = 0;
+            sampleStats();
+        }
+    }
+
+    // Rates and percentiles cover the last second, so a link that saturates shows up right away.
+    private void sampleStats() {
+        LumenMetrics metrics = LumenMetrics.get();
+        long now = System.nanoTime();
+        Map<String, Long> bytes = metrics.getBytesSentByChannel();
+        long frames = metrics.getFramesSent();
+        LatencyHistogram.Snapshot write = metrics.writeLatency().snapshot();
+        LatencyHistogram.Snapshot capture = metrics.capture().snapshot();
+        if (statsWrite != null) {
+            double seconds = Math.max(1e-3, (now - statsSampleNanos) / 1e9);
+            long totalBytes = 0;
+            List<Text> channelLines = new ArrayList<>();
+            for (Map.Entry<String, Long> entry : bytes.entrySet()) {
+                long sent = entry.getValue() - statsBytes.getOrDefault(entry.getKey(), 0L);
+                totalBytes += sent;
+                if (sent > 0) {
+                    channelLines.add(Text.translatable("lumen.stats.channel", entry.getKey(), kilobytes(sent / seconds)));
+                }
+            }
+            List<Text> lines = new ArrayList<>();
+            lines.add(Text.translatable("lumen.stats.title"));
+            lines.add(Text.translatable("lumen.stats.throughput", kilobytes(totalBytes / seconds),
+                    String.format(Locale.ROOT, "%.0f", (frames - statsFrames) / seconds)));
+            lines.addAll(channelLines);
+            lines.add(Text.translatable("lumen.stats.write_p99", millis(write.since(statsWrite).percentileMicros(0.99))));
+            lines.add(Text.translatable("lumen.stats.capture_p99", millis(capture.since(statsCapture).percentileMicros(0.99))));
+            lines.add(Text.translatable("lumen.stats.reconnects", metrics.getReconnects(), metrics.getConnectFailures()));
+            lines.add(Text.translatable("lumen.stats.dropped", metrics.getFramesDropped(), metrics.getMessagesReplaced()));
+            lines.add(Text.translatable("lumen.stats.throttled", metrics.getThrottledSends()));
+            statsLines = lines;
+        }
+        statsSampleNanos = now;
+        statsBytes = bytes;
+        statsFrames = frames;
+        statsWrite = write;
+        statsCapture = capture;
+    }
+
+    private static String kilobytes(double bytesPerSecond) {
+        return String.format(Locale.ROOT, "%.1f", bytesPerSecond / 1024.0);
+    }
+
+    private static String millis(double micros) {
+        return String.format(Locale.ROOT, "%.2f", micros / 1000.0);
+    }
+
+    private void renderStats(net.minecraft.client.gui.DrawContext context) {
+        // Left of the settings column; skipped when the window is too narrow to fit it beside them.
+        int panelWidth = width / 2 - 100 - 12;
+        if (panelWidth < 80 || statsLines.isEmpty()) {
+            return;
+        }
+        int y = height / 4;
+        for (Text line : statsLines) {
+            for (OrderedText wrapped : textRenderer.wrapLines(line, panelWidth)) {
+                context.drawTextWithShadow(textRenderer, wrapped, 6, y, 0xAAAAAA);
+                y += textRenderer.fontHeight + 1;
+            }
+        }
     }
 
     private Text autoReconnectLabel() {
@@ -145,6 +276,20 @@ public class LumenConfigScreen extends Screen {
         return Text.translatable("lumen.config.auto_reconnect", state);
     }
 
+    private Text autoBaudLabel() {
+        Text state = autoBaudEnabled
+                ? Text.translatable("lumen.config.on")
+                : Text.translatable("lumen.config.off");
+        return Text.translatable("lumen.config.auto_baud", state);
+    }
+
+    private Text syncModeLabel() {
+        Text mode = eventDrivenSync
+                ? Text.translatable("lumen.config.sync_mode.on_change")
+                : Text.translatable("lumen.config.sync_mode.polling");
+        return Text.translatable("lumen.config.sync_mode", mode);
+    }
+
     private Text portSelectLabel() {
         String value = portField.getText().trim();
         Text display = value.isEmpty()
@@ -154,6 +299,7 @@ public class LumenConfigScreen extends Screen {
     }
 
     private void refreshPortOptions() {
+        portOptionsVersion = SerialPortLocator.portsVersion();
         portOptions = SerialPortLocator.listPorts();
     }
 
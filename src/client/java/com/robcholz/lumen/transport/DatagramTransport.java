@@ -0,0 +1,90 @@
+package com.robcholz.lumen.transport;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.net.SocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.DatagramChannel;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+
+// UDP. Each write goes out as one datagram of at most MAX_DATAGRAM_BYTES. The client caps frames at that size
+// and never lets one straddle two writes, so a lost datagram only costs the whole frames in it and the
+// device's decoder resynchronises on the next path line.
+public final class DatagramTransport implements LumenTransport {
+    private static final Logger LOGGER = LoggerFactory.getLogger("lumen");
+    private static final long READ_TIMEOUT_MILLIS = 100;
+    private static final int MAX_DATAGRAM_BYTES = 1400;
+    private static final int RECEIVE_BUFFER_BYTES = 65536;
+
+    private final String address;
+    private final DatagramChannel channel;
+    private final Selector readSelector;
+    private final ByteBuffer received = ByteBuffer.allocate(RECEIVE_BUFFER_BYTES).flip();
+
+    public DatagramTransport(String address, SocketAddress target) throws IOException {
+        this.address = address;
+        channel = DatagramChannel.open();
+        try {
+            channel.configureBlocking(false);
+            channel.connect(target);
+            readSelector = Selector.open();
+            channel.register(readSelector, SelectionKey.OP_READ);
+        } catch (IOException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    @Override
+    public String address() {
+        return address;
+    }
+
+    // Datagrams are received whole and then handed out in pieces of whatever size the reader asks for.
+    @Override
+    public int read(byte[] buffer, int offset, int length) throws IOException {
+        if (!received.hasRemaining()) {
+            received.clear();
+            int read = channel.read(received);
+            if (read == 0 && readSelector.select(READ_TIMEOUT_MILLIS) > 0) {
+                readSelector.selectedKeys().clear();
+                read = channel.read(received);
+            }
+            received.flip();
+            if (read <= 0) {
+                return 0;
+            }
+        }
+        int count = Math.min(length, received.remaining());
+        received.get(buffer, offset, count);
+        return count;
+    }
+
+    @Override
+    public int write(byte[] bytes, int offset, int length) throws IOException {
+        return channel.write(ByteBuffer.wrap(bytes, offset, Math.min(length, MAX_DATAGRAM_BYTES)));
+    }
+
+    @Override
+    public int maxWriteBytes() {
+        return MAX_DATAGRAM_BYTES;
+    }
+
+    @Override
+    public boolean isOpen() {
+        return channel.isOpen();
+    }
+
+    @Override
+    public void close() {
+        try {
+            readSelector.close();
+            channel.close();
+        } catch (IOException e) {
+            LOGGER.debug("Failed to close {}", address, e);
+        }
+    }
+}
@@ -0,0 +1,28 @@
+package com.robcholz.lumen.transport;
+
+import java.io.IOException;
+
+// A byte stream to a display. Reads wait at most a short timeout and return 0 when nothing arrived;
+// writes may accept fewer bytes than offered and return 0 when the link is momentarily full.
+public interface LumenTransport extends AutoCloseable {
+    String address();
+
+    int read(byte[] buffer, int offset, int length) throws IOException;
+
+    int write(byte[] bytes, int offset, int length) throws IOException;
+
+    boolean isOpen();
+
+    // Only a real serial port has a line rate; other links accept any rate and ignore it.
+    default boolean setBaudRate(int rate) {
+        return true;
+    }
+
+    // The most one write may carry. Larger writes are split, so a frame must fit to arrive in one piece.
+    default int maxWriteBytes() {
+        return Integer.MAX_VALUE;
+    }
+
+    @Override
+    void close();
+}
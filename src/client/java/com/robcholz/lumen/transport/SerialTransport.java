@@ -0,0 +1,70 @@
+package com.robcholz.lumen.transport;
+
+import com.fazecast.jSerialComm.SerialPort;
+
+import java.io.IOException;
+
+public final class SerialTransport implements LumenTransport {
+    private static final int WRITE_TIMEOUT_MILLIS = 250;
+    private static final int READ_TIMEOUT_MILLIS = 100;
+
+    private final SerialPort port;
+    private final String portPath;
+
+    public SerialTransport(String portPath, int baudRate) throws IOException {
+        this.portPath = portPath;
+        port = SerialPort.getCommPort(portPath);
+        if (port == null) {
+            throw new IOException("Serial port not found: " + portPath);
+        }
+        port.setBaudRate(baudRate);
+        port.setComPortTimeouts(
+                SerialPort.TIMEOUT_WRITE_BLOCKING | SerialPort.TIMEOUT_READ_SEMI_BLOCKING,
+                READ_TIMEOUT_MILLIS,
+                WRITE_TIMEOUT_MILLIS
+        );
+        if (!port.openPort()) {
+            throw new IOException("Failed to open serial port: " + portPath);
+        }
+    }
+
+    @Override
+    public String address() {
+        return portPath;
+    }
+
+    @Override
+    public int read(byte[] buffer, int offset, int length) throws IOException {
+        int read = port.readBytes(buffer, length, offset);
+        if (read < 0) {
+            throw new IOException("Serial read failed on " + portPath);
+        }
+        return read;
+    }
+
+    @Override
+    public int write(byte[] bytes, int offset, int length) throws IOException {
+        int written = port.writeBytes(bytes, length, offset);
+        if (written < 0) {
+            throw new IOException("Serial write failed");
+        }
+        return written;
+    }
+
+    @Override
+    public boolean isOpen() {
+        return port.isOpen();
+    }
+
+    @Override
+    public boolean setBaudRate(int rate) {
+        return port.setBaudRate(rate);
+    }
+
+    @Override
+    public void close() {
+        if (port.isOpen()) {
+            port.closePort();
+        }
+    }
+}
@@ -0,0 +1,122 @@
+package com.robcholz.lumen.transport;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.net.ProtocolFamily;
+import java.net.SocketAddress;
+import java.net.StandardProtocolFamily;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+
+// TCP and Unix domain sockets. The channel is non-blocking; the reader and the writer each wait on their own
+// selector so neither ever blocks the other.
+public final class StreamTransport implements LumenTransport {
+    private static final Logger LOGGER = LoggerFactory.getLogger("lumen");
+    private static final long CONNECT_TIMEOUT_MILLIS = 2000;
+    private static final long READ_TIMEOUT_MILLIS = 100;
+    private static final long WRITE_TIMEOUT_MILLIS = 250;
+
+    private final String address;
+    private final SocketChannel channel;
+    private final Selector readSelector;
+    private final Selector writeSelector;
+
+    public StreamTransport(String address, SocketAddress target, ProtocolFamily family) throws IOException {
+        this.address = address;
+        channel = SocketChannel.open(family);
+        Selector reads = null;
+        Selector writes = null;
+        try {
+            channel.configureBlocking(false);
+            if (!channel.connect(target)) {
+                awaitConnect();
+            }
+            if (family != StandardProtocolFamily.UNIX) {
+                channel.setOption(StandardSocketOptions.TCP_NODELAY, true);
+            }
+            reads = Selector.open();
+            writes = Selector.open();
+            channel.register(reads, SelectionKey.OP_READ);
+            channel.register(writes, SelectionKey.OP_WRITE);
+        } catch (IOException e) {
+            closeQuietly(reads);
+            closeQuietly(writes);
+            channel.close();
+            throw e;
+        }
+        readSelector = reads;
+        writeSelector = writes;
+    }
+
+    private void awaitConnect() throws IOException {
+        try (Selector selector = Selector.open()) {
+            channel.register(selector, SelectionKey.OP_CONNECT);
+            if (selector.select(CONNECT_TIMEOUT_MILLIS) == 0) {
+                throw new IOException("Timed out connecting to " + address);
+            }
+            channel.finishConnect();
+        }
+    }
+
+    @Override
+    public String address() {
+        return address;
+    }
+
+    @Override
+    public int read(byte[] buffer, int offset, int length) throws IOException {
+        ByteBuffer target = ByteBuffer.wrap(buffer, offset, length);
+        int read = channel.read(target);
+        if (read == 0 && readSelector.select(READ_TIMEOUT_MILLIS) > 0) {
+            readSelector.selectedKeys().clear();
+            read = channel.read(target);
+        }
+        if (read < 0) {
+            throw new IOException("Connection closed by " + address);
+        }
+        return read;
+    }
+
+    @Override
+    public int write(byte[] bytes, int offset, int length) throws IOException {
+        ByteBuffer source = ByteBuffer.wrap(bytes, offset, length);
+        int written = channel.write(source);
+        if (written == 0 && writeSelector.select(WRITE_TIMEOUT_MILLIS) > 0) {
+            writeSelector.selectedKeys().clear();
+            written = channel.write(source);
+        }
+        return written;
+    }
+
+    @Override
+    public boolean isOpen() {
+        return channel.isOpen() && channel.isConnected();
+    }
+
+    @Override
+    public void close() {
+        closeQuietly(readSelector);
+        closeQuietly(writeSelector);
+        try {
+            channel.close();
+        } catch (IOException e) {
+            LOGGER.debug("Failed to close {}", address, e);
+        }
+    }
+
+    private static void closeQuietly(Selector selector) {
+        if (selector == null) {
+            return;
+        }
+        try {
+            selector.close();
+        } catch (IOException e) {
+            LOGGER.debug("Failed to close selector", e);
+        }
+    }
+}
@@ -0,0 +1,60 @@
+package com.robcholz.lumen.transport;
+
+import java.io.IOException;
+import java.net.Inet6Address;
+import java.net.InetSocketAddress;
+import java.net.StandardProtocolFamily;
+import java.net.URI;
+import java.net.UnixDomainSocketAddress;
+
+// Port paths select the backend: tcp://host:port, udp://host:port, unix:/path/to/socket, anything else is a
+// serial port name.
+public final class Transports {
+    private Transports() {
+    }
+
+    public static LumenTransport open(String address, int baudRate) throws IOException {
+        if (address.startsWith("tcp://")) {
+            InetSocketAddress target = inetAddress(address);
+            // IPv6 literals and IPv6-only hosts need an INET6 channel; an INET one cannot reach them.
+            return new StreamTransport(address, target, target.getAddress() instanceof Inet6Address
+                    ? StandardProtocolFamily.INET6
+                    : StandardProtocolFamily.INET);
+        }
+        if (address.startsWith("udp://")) {
+            return new DatagramTransport(address, inetAddress(address));
+        }
+        if (address.startsWith("unix:")) {
+            String path = address.substring("unix:".length());
+            if (path.startsWith("//")) {
+                path = path.substring(2);
+            }
+            if (path.isBlank()) {
+                throw new IOException("Missing socket path in " + address);
+            }
+            return new StreamTransport(address, UnixDomainSocketAddress.of(path), StandardProtocolFamily.UNIX);
+        }
+        return new SerialTransport(address, baudRate);
+    }
+
+    public static boolean isSerial(String address) {
+        return !address.startsWith("tcp://") && !address.startsWith("udp://") && !address.startsWith("unix:");
+    }
+
+    private static InetSocketAddress inetAddress(String address) throws IOException {
+        URI uri;
+        try {
+            uri = URI.create(address);
+        } catch (IllegalArgumentException e) {
+            throw new IOException("Invalid address " + address, e);
+        }
+        if (uri.getHost() == null || uri.getPort() < 0) {
+            throw new IOException("Expected host:port in " + address);
+        }
+        InetSocketAddress resolved = new InetSocketAddress(uri.getHost(), uri.getPort());
+        if (resolved.isUnresolved()) {
+            throw new IOException("Unknown host in " + address);
+        }
+        return resolved;
+    }
+}
@@ -0,0 +1,103 @@
+package com.robcholz.lumen;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class FrameDecoderTest {
+    private final List<LumenFrame> frames = new ArrayList<>();
+    private final FrameDecoder decoder = new FrameDecoder("lumen/", 64, frames::add);
+
+    @Test
+    void decodesFramesFedOneByteAtATime() {
+        byte[] bytes = concat(frame("lumen/a", new byte[]{1, 2, 3}), frame("lumen/b", new byte[]{4}));
+        for (byte value : bytes) {
+            decoder.feed(new byte[]{value}, 0, 1);
+        }
+        assertEquals(2, frames.size());
+        assertEquals("lumen/a", frames.get(0).path());
+        assertArrayEquals(new byte[]{1, 2, 3}, frames.get(0).data());
+        assertEquals("lumen/b", frames.get(1).path());
+        assertArrayEquals(new byte[]{4}, frames.get(1).data());
+    }
+
+    @Test
+    void decodesEmptyPayload() {
+        feed(frame("lumen/credit", new byte[0]));
+        assertEquals(1, frames.size());
+        assertEquals(0, frames.get(0).data().length);
+    }
+
+    @Test
+    void skipsDebugOutputBeforeAFrame() {
+        feed(concat("boot ok, free heap 1234\n".getBytes(StandardCharsets.UTF_8), frame("lumen/a", new byte[]{7})));
+        assertEquals(1, frames.size());
+        assertArrayEquals(new byte[]{7}, frames.get(0).data());
+    }
+
+    @Test
+    void resynchronisesAfterBinaryGarbage() {
+        feed(concat(new byte[]{0x00, (byte) 0xFF, 0x13, 'x', '\n'}, frame("lumen/a", new byte[]{9})));
+        assertEquals(1, frames.size());
+        assertEquals("lumen/a", frames.get(0).path());
+    }
+
+    @Test
+    void ignoresPathsWithoutThePrefixUpToTheNextLine() {
+        feed(concat(frame("sync", new byte[]{1, 2}), new byte[]{'\n'}, frame("lumen/a", new byte[]{1})));
+        assertEquals(1, frames.size());
+        assertEquals("lumen/a", frames.get(0).path());
+    }
+
+    @Test
+    void dropsOversizeFrameAndRecoversOnTheNextLine() {
+        byte[] oversize = frame("lumen/big", new byte[65]);
+        feed(concat(oversize, new byte[]{'\n'}, frame("lumen/a", new byte[]{5})));
+        assertEquals(1, frames.size());
+        assertEquals("lumen/a", frames.get(0).path());
+        assertArrayEquals(new byte[]{5}, frames.get(0).data());
+    }
+
+    @Test
+    void acceptsFrameAtTheSizeLimit() {
+        feed(frame("lumen/a", new byte[64]));
+        assertEquals(1, frames.size());
+        assertEquals(64, frames.get(0).data().length);
+    }
+
+    @Test
+    void resetDiscardsAPartialFrame() {
+        byte[] bytes = frame("lumen/a", new byte[]{1, 2, 3});
+        decoder.feed(bytes, 0, bytes.length - 1);
+        decoder.reset();
+        feed(frame("lumen/b", new byte[]{4}));
+        assertEquals(1, frames.size());
+        assertEquals("lumen/b", frames.get(0).path());
+    }
+
+    private void feed(byte[] bytes) {
+        decoder.feed(bytes, 0, bytes.length);
+    }
+
+    static byte[] frame(String path, byte[] data) {
+        FrameBuffer buffer = new FrameBuffer();
+        buffer.append(path, data);
+        byte[] bytes = new byte[buffer.length()];
+        System.arraycopy(buffer.array(), 0, bytes, 0, bytes.length);
+        return bytes;
+    }
+
+    private static byte[] concat(byte[]... parts) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        for (byte[] part : parts) {
+            out.writeBytes(part);
+        }
+        return out.toByteArray();
+    }
+}
@@ -0,0 +1,50 @@
+package com.robcholz.lumen;
+
+import org.junit.jupiter.api.Test;
+
+import static com.robcholz.lumen.TestSkins.OPAQUE;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class IsometricSkinRendererTest {
+    @Test
+    void drawsAnOpaqueFigureInsideItsBounds() {
+        SkinEncoder.View view = IsometricSkinRenderer.render(TestSkins.filled(64, 64, OPAQUE | 0x336699), 64, 64, 4);
+        assertEquals(view.width() * view.height(), view.argb().length);
+        assertTrue(view.height() > view.width());
+        int opaque = 0;
+        for (int color : view.argb()) {
+            if (color != 0) {
+                assertEquals(OPAQUE | 0x336699, color);
+                opaque++;
+            }
+        }
+        // A figure, not a filled rectangle: the corners around it stay transparent.
+        assertTrue(opaque > view.argb().length / 4, "opaque " + opaque);
+        assertTrue(opaque < view.argb().length, "opaque " + opaque);
+        assertEquals(0, view.argb()[0]);
+    }
+
+    @Test
+    void growsWithPixelsPerTexel() {
+        int[] skin = TestSkins.filled(64, 64, OPAQUE | 0x336699);
+        SkinEncoder.View one = IsometricSkinRenderer.render(skin, 64, 64, 1);
+        SkinEncoder.View four = IsometricSkinRenderer.render(skin, 64, 64, 4);
+        assertTrue(Math.abs(four.width() - 4 * one.width()) <= 4, one.width() + " -> " + four.width());
+        assertTrue(Math.abs(four.height() - 4 * one.height()) <= 4, one.height() + " -> " + four.height());
+    }
+
+    @Test
+    void rendersLegacySkinsWithoutTheSecondLayer() {
+        int[] skin = TestSkins.filled(64, 32, OPAQUE | 0x336699);
+        SkinEncoder.View legacy = IsometricSkinRenderer.render(skin, 64, 32, 2);
+        SkinEncoder.View modern = IsometricSkinRenderer.render(TestSkins.filled(64, 64, OPAQUE | 0x336699), 64, 64, 2);
+        // The outer layer sits slightly proud of the body, so only the modern figure is inflated by it.
+        assertTrue(legacy.width() <= modern.width() && legacy.height() <= modern.height());
+        boolean drawn = false;
+        for (int color : legacy.argb()) {
+            drawn |= color != 0;
+        }
+        assertTrue(drawn);
+    }
+}
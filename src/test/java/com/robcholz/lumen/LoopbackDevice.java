@@ -0,0 +1,100 @@
+package com.robcholz.lumen;
+
+import com.robcholz.lumen.transport.LumenTransport;
+
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+// A device that answers the hello with the given limits, records every other frame and hands the credits for
+// it straight back, so flow control never stalls a test.
+final class LoopbackDevice implements LumenTransport {
+    private final byte[] hello;
+    private final int maxWriteBytes;
+    private final FrameBuffer sizing = new FrameBuffer();
+    private final FrameDecoder decoder = new FrameDecoder("", 1 << 20, this::handle);
+    private final BlockingQueue<byte[]> toHost = new LinkedBlockingQueue<>();
+    private final List<LumenFrame> received = new CopyOnWriteArrayList<>();
+    private final List<Integer> writes = new CopyOnWriteArrayList<>();
+    private byte[] reading = new byte[0];
+    private int readOffset;
+    private volatile boolean open = true;
+
+    LoopbackDevice(int maxFrameBytes, int receiveCredits, int maxWriteBytes) {
+        hello = new byte[DeviceCapabilities.HELLO_BYTES];
+        hello[0] = 1;
+        System.arraycopy(LumenProtocol.u32(maxFrameBytes), 0, hello, 1, 4);
+        hello[5] = (byte) SkinCodec.NONE.mask();
+        System.arraycopy(LumenProtocol.u32(receiveCredits), 0, hello, 10, 4);
+        this.maxWriteBytes = maxWriteBytes;
+    }
+
+    List<LumenFrame> received() {
+        return received;
+    }
+
+    List<Integer> writes() {
+        return writes;
+    }
+
+    private void handle(LumenFrame frame) {
+        if (LumenProtocol.HELLO_PATH.equals(frame.path())) {
+            toHost.add(FrameDecoderTest.frame(LumenProtocol.HELLO_PATH, hello));
+            return;
+        }
+        received.add(frame);
+        int size = sizing.frameSize(frame.path(), frame.data().length);
+        toHost.add(FrameDecoderTest.frame(LumenProtocol.CREDIT_PATH, LumenProtocol.u32(size)));
+    }
+
+    @Override
+    public String address() {
+        return "loopback";
+    }
+
+    @Override
+    public int read(byte[] buffer, int offset, int length) {
+        if (readOffset == reading.length) {
+            try {
+                byte[] next = toHost.poll(20, TimeUnit.MILLISECONDS);
+                if (next == null) {
+                    return 0;
+                }
+                reading = next;
+                readOffset = 0;
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return 0;
+            }
+        }
+        int count = Math.min(length, reading.length - readOffset);
+        System.arraycopy(reading, readOffset, buffer, offset, count);
+        readOffset += count;
+        return count;
+    }
+
+    @Override
+    public int write(byte[] bytes, int offset, int length) {
+        int count = Math.min(length, maxWriteBytes);
+        writes.add(count);
+        decoder.feed(bytes, offset, count);
+        return count;
+    }
+
+    @Override
+    public boolean isOpen() {
+        return open;
+    }
+
+    @Override
+    public int maxWriteBytes() {
+        return maxWriteBytes;
+    }
+
+    @Override
+    public void close() {
+        open = false;
+    }
+}
@@ -0,0 +1,105 @@
+package com.robcholz.lumen;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.util.BitSet;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class SerialPackClientTest {
+    private static final String PATH = "sync/skin";
+    private static final int NO_WRITE_LIMIT = Integer.MAX_VALUE;
+
+    private SerialPackClient client;
+
+    @AfterEach
+    void close() {
+        if (client != null) {
+            client.close();
+        }
+    }
+
+    @Test
+    void sendsFrameExactlyAtTheCreditLimit() throws IOException {
+        LoopbackDevice device = connect(4096, 256, NO_WRITE_LIMIT);
+        BitSet dropped = client.sendAll(List.of(frameOfSize(256)));
+        assertTrue(dropped.isEmpty());
+        assertEquals(1, device.received().size());
+    }
+
+    @Test
+    void reportsFrameOneByteOverTheCreditLimit() throws IOException {
+        LoopbackDevice device = connect(4096, 256, NO_WRITE_LIMIT);
+        BitSet dropped = client.sendAll(List.of(frameOfSize(32), frameOfSize(257), frameOfSize(48)));
+        assertEquals(BitSet.valueOf(new long[]{0b010}), dropped);
+        assertEquals(2, device.received().size());
+        assertEquals(32, sizeOf(device.received().get(0)));
+        assertEquals(48, sizeOf(device.received().get(1)));
+    }
+
+    @Test
+    void dropsFrameLargerThanTheWholeWindowWithoutWaiting() throws IOException {
+        LoopbackDevice device = connect(4096, 256, NO_WRITE_LIMIT);
+        long start = System.nanoTime();
+        client.send(PATH, new byte[1024]);
+        client.send(PATH, new byte[16]);
+        assertTrue(System.nanoTime() - start < TimeUnit.SECONDS.toNanos(1));
+        assertEquals(1, device.received().size());
+        assertEquals(16, device.received().get(0).data().length);
+    }
+
+    @Test
+    void reportsFrameOverTheDeviceFrameLimit() throws IOException {
+        connect(128, 0, NO_WRITE_LIMIT);
+        BitSet dropped = client.sendAll(List.of(frameOfSize(128), frameOfSize(129)));
+        assertEquals(BitSet.valueOf(new long[]{0b10}), dropped);
+    }
+
+    @Test
+    void waitsForCreditsBeyondTheWindow() throws IOException {
+        LoopbackDevice device = connect(4096, 256, NO_WRITE_LIMIT);
+        BitSet dropped = client.sendAll(List.of(frameOfSize(200), frameOfSize(200), frameOfSize(200)));
+        assertTrue(dropped.isEmpty());
+        assertEquals(3, device.received().size());
+    }
+
+    @Test
+    void keepsEachFrameWithinOneTransportWrite() throws IOException {
+        LoopbackDevice device = connect(4096, 0, 100);
+        assertEquals(100, client.getCapabilities().maxFrameBytes());
+        BitSet dropped = client.sendAll(List.of(frameOfSize(60), frameOfSize(60), frameOfSize(150), frameOfSize(40)));
+        assertEquals(BitSet.valueOf(new long[]{0b100}), dropped);
+        assertEquals(3, device.received().size());
+        for (int write : device.writes()) {
+            assertTrue(write <= 100);
+        }
+    }
+
+    @Test
+    void rejectsRequestTheDeviceCannotTake() throws IOException {
+        connect(4096, 256, NO_WRITE_LIMIT);
+        assertThrows(IOException.class, () -> client.probeThroughput(1024, 100));
+    }
+
+    private LoopbackDevice connect(int maxFrameBytes, int receiveCredits, int maxWriteBytes) throws IOException {
+        LoopbackDevice device = new LoopbackDevice(maxFrameBytes, receiveCredits, maxWriteBytes);
+        client = new SerialPackClient(device, 115200);
+        assertFalse(client.handshake(1000).isLegacy());
+        return device;
+    }
+
+    private static LumenFrame frameOfSize(int size) {
+        return new LumenFrame(PATH, new byte[size - new FrameBuffer().frameSize(PATH, 0)]);
+    }
+
+    private static int sizeOf(LumenFrame frame) {
+        return new FrameBuffer().frameSize(frame.path(), frame.data().length);
+    }
+}
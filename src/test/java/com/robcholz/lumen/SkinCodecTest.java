@@ -0,0 +1,99 @@
+package com.robcholz.lumen;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.EnumSource;
+
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class SkinCodecTest {
+    @ParameterizedTest
+    @EnumSource(SkinCodec.class)
+    void roundTripsEmptyInput(SkinCodec codec) {
+        assertRoundTrip(codec, new byte[0]);
+    }
+
+    @ParameterizedTest
+    @EnumSource(SkinCodec.class)
+    void roundTripsOddLength(SkinCodec codec) {
+        byte[] raw = new byte[4 + 7 * 2 + 1];
+        for (int i = 0; i < raw.length; i++) {
+            raw[i] = (byte) (i / 6);
+        }
+        assertRoundTrip(codec, raw);
+    }
+
+    @ParameterizedTest
+    @EnumSource(SkinCodec.class)
+    void roundTripsSkinLikeFrame(SkinCodec codec) {
+        byte[] raw = skinLike(new Random(1));
+        assertRoundTrip(codec, raw);
+        if (codec != SkinCodec.NONE) {
+            assertTrue(codec.wrap(raw).length < raw.length);
+        }
+    }
+
+    @ParameterizedTest
+    @EnumSource(SkinCodec.class)
+    void roundTripsLongRuns(SkinCodec codec) {
+        byte[] raw = new byte[70000];
+        for (int i = 40000; i < raw.length; i++) {
+            raw[i] = (byte) (i % 2 == 0 ? 0x12 : 0x34);
+        }
+        assertRoundTrip(codec, raw);
+    }
+
+    @ParameterizedTest
+    @EnumSource(SkinCodec.class)
+    void fallsBackToRawForNoise(SkinCodec codec) {
+        byte[] raw = new byte[2048];
+        new Random(2).nextBytes(raw);
+        byte[] wrapped = codec.wrap(raw);
+        assertEquals(SkinCodec.NONE.id(), wrapped[0]);
+        assertEquals(SkinCodec.HEADER_BYTES + raw.length, wrapped.length);
+        assertArrayEquals(raw, SkinCodec.unwrap(wrapped));
+    }
+
+    @Test
+    void rejectsTruncatedHeader() {
+        assertThrows(IllegalArgumentException.class, () -> SkinCodec.unwrap(new byte[]{1, 0, 0}));
+    }
+
+    @Test
+    void rejectsUnknownCodec() {
+        assertThrows(IllegalArgumentException.class, () -> SkinCodec.unwrap(new byte[]{9, 0, 0, 0, 0}));
+    }
+
+    private static void assertRoundTrip(SkinCodec codec, byte[] raw) {
+        byte[] wrapped = codec.wrap(raw);
+        assertEquals(raw.length, (wrapped[1] & 0xFF) | ((wrapped[2] & 0xFF) << 8)
+                | ((wrapped[3] & 0xFF) << 16) | ((wrapped[4] & 0xFF) << 24));
+        assertArrayEquals(raw, SkinCodec.unwrap(wrapped));
+    }
+
+    // A 60x120 RGB565 frame of flat regions with some noise, like a scaled skin view.
+    private static byte[] skinLike(Random random) {
+        int width = 60;
+        int height = 120;
+        byte[] raw = new byte[4 + width * height * 2];
+        raw[0] = (byte) width;
+        raw[2] = (byte) height;
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                int color = (y / 16) * 0x1111 + (x / 20) * 0x0841;
+                if (random.nextInt(10) == 0) {
+                    color ^= random.nextInt(4);
+                }
+                int idx = 4 + (y * width + x) * 2;
+                raw[idx] = (byte) (color >>> 8);
+                raw[idx + 1] = (byte) color;
+            }
+        }
+        return raw;
+    }
+}
@@ -0,0 +1,149 @@
+package com.robcholz.lumen;
+
+import org.junit.jupiter.api.Test;
+
+import static com.robcholz.lumen.TestSkins.OPAQUE;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class SkinEncoderTest {
+    @Test
+    void rendersAtTheScreenSizeWhenTheFrameFits() {
+        assertEquals(new SkinEncoder.RenderSize(240, 240), SkinEncoder.renderSize(240, 240, Integer.MAX_VALUE));
+        assertEquals(new SkinEncoder.RenderSize(0, SkinEncoder.DEFAULT_HEIGHT),
+                SkinEncoder.renderSize(0, 0, Integer.MAX_VALUE));
+    }
+
+    @Test
+    void clampsHostileScreenSizes() {
+        assertEquals(new SkinEncoder.RenderSize(SkinEncoder.MAX_RENDER_SIZE, SkinEncoder.MAX_RENDER_SIZE),
+                SkinEncoder.renderSize(65535, 65535, Integer.MAX_VALUE));
+    }
+
+    @Test
+    void shrinksUntilAFullFrameFitsTheFrameLimit() {
+        int limit = 32768;
+        SkinEncoder.RenderSize size = SkinEncoder.renderSize(240, 240, limit);
+        assertTrue(size.maxWidth() < 240);
+        assertEquals(size.maxWidth(), size.maxHeight());
+        assertFits(size, limit);
+
+        SkinEncoder.RenderSize wide = SkinEncoder.renderSize(320, 240, limit);
+        assertTrue(wide.maxWidth() > wide.maxHeight());
+        assertFits(wide, limit);
+
+        SkinEncoder.RenderSize heightOnly = SkinEncoder.renderSize(0, 0, 8192);
+        assertEquals(0, heightOnly.maxWidth());
+        assertFits(new SkinEncoder.RenderSize(heightOnly.maxHeight(), heightOnly.maxHeight()), 8192);
+    }
+
+    @Test
+    void fittedViewsFitTheFrameLimit() {
+        int[] skin = TestSkins.filled(64, 64, TestSkins.OPAQUE | 0x336699);
+        int limit = 16384;
+        SkinEncoder.RenderSize size = SkinEncoder.renderSize(240, 240, limit);
+        for (SkinView view : SkinView.values()) {
+            LumenSyncState.SkinPayload payload = SkinEncoder.encodeView(view, skin, 64, 64,
+                    size.maxWidth(), size.maxHeight(), true);
+            int frame = new FrameBuffer().frameSize(SkinFrameTracker.FULL_PATH,
+                    payload.wire().length + SkinCodec.HEADER_BYTES);
+            assertTrue(frame <= limit, view + ": " + frame);
+        }
+    }
+
+    @Test
+    void backViewMapsEveryPartOfAModernSkin() {
+        int[] skin = coded(64, 64);
+        int[] back = SkinEncoder.buildBackView(skin, 64, 64);
+        assertTexel(back, 4, 0, 24, 8);
+        assertTexel(back, 11, 7, 31, 15);
+        assertTexel(back, 4, 8, 32, 20);
+        assertTexel(back, 12, 8, 52, 20);
+        assertTexel(back, 0, 8, 44, 52);
+        assertTexel(back, 8, 20, 12, 20);
+        assertTexel(back, 4, 20, 28, 52);
+        assertTexel(back, 7, 31, 31, 63);
+    }
+
+    @Test
+    void backViewReusesTheRightLimbsOfALegacySkin() {
+        int[] skin = coded(64, 32);
+        int[] back = SkinEncoder.buildBackView(skin, 64, 32);
+        assertTexel(back, 4, 0, 24, 8);
+        assertTexel(back, 4, 8, 32, 20);
+        assertTexel(back, 12, 8, 52, 20);
+        assertTexel(back, 0, 8, 52, 20);
+        assertTexel(back, 8, 20, 12, 20);
+        assertTexel(back, 4, 20, 12, 20);
+    }
+
+    @Test
+    void backViewDrawsOnlyOpaqueOverlayTexels() {
+        int[] skin = coded(64, 64);
+        skin[8 * 64 + 56] = OPAQUE | 0xFF0000;
+        skin[36 * 64 + 33] = OPAQUE | 0x00FF00;
+        int[] back = SkinEncoder.buildBackView(skin, 64, 64);
+        assertEquals(OPAQUE | 0xFF0000, back[4]);
+        assertEquals(OPAQUE | 0x00FF00, back[8 * SkinEncoder.FRONT_WIDTH + 5]);
+        assertTexel(back, 5, 0, 25, 8);
+    }
+
+    @Test
+    void fitsViewsIntoMaxWidthAndHeight() {
+        int[] skin = coded(64, 64);
+        assertSize(32, 64, SkinEncoder.encodeView(SkinView.BACK, skin, 64, 64, 0, 64, false));
+        assertSize(20, 40, SkinEncoder.encodeView(SkinView.BACK, skin, 64, 64, 20, 64, true));
+        assertSize(120, 120, SkinEncoder.encodeView(SkinView.HEAD, skin, 64, 64, 240, 120, true));
+        assertSize(60, 60, SkinEncoder.encodeView(SkinView.HEAD, skin, 64, 64, 60, 120, false));
+        LumenSyncState.SkinPayload isometric = SkinEncoder.encodeView(SkinView.ISOMETRIC, skin, 64, 64, 100, 100, true);
+        assertTrue(isometric.width() <= 100 && isometric.height() <= 100, isometric.width() + "x" + isometric.height());
+        assertTrue(isometric.width() == 100 || isometric.height() == 100);
+    }
+
+    @Test
+    void scaleAreaKeepsOpaqueColorsAndAveragesByAlpha() {
+        assertEquals(OPAQUE | 0x336699,
+                SkinEncoder.scaleArea(TestSkins.filled(2, 2, OPAQUE | 0x336699), 2, 2, 1, 1)[0]);
+        // Transparent texels carry white but add nothing to the color.
+        int[] half = {OPAQUE | 0xFF0000, OPAQUE | 0x0000FF, 0x00FFFFFF, 0x00FFFFFF};
+        assertEquals(OPAQUE | 0x800080, SkinEncoder.scaleArea(half, 2, 2, 1, 1)[0]);
+    }
+
+    @Test
+    void scaleAreaDropsPixelsLessThanHalfOpaque() {
+        int[] quarter = {OPAQUE | 0xFF0000, 0, 0, 0};
+        assertEquals(0, SkinEncoder.scaleArea(quarter, 2, 2, 1, 1)[0]);
+        int[] faint = TestSkins.filled(2, 2, 0x60FFFFFF);
+        assertEquals(0, SkinEncoder.scaleArea(faint, 2, 2, 1, 1)[0]);
+    }
+
+    // Each base-layer texel encodes its own coordinates; overlay texels stay transparent.
+    private static int[] coded(int width, int height) {
+        int[] skin = new int[width * height];
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                boolean base = y >= 16 && y < 32 || y < 16 && x < 32 || y >= 48 && x >= 16 && x < 48;
+                skin[y * width + x] = base ? texel(x, y) : 0;
+            }
+        }
+        return skin;
+    }
+
+    private static int texel(int x, int y) {
+        return OPAQUE | x << 8 | y;
+    }
+
+    private static void assertTexel(int[] view, int x, int y, int skinX, int skinY) {
+        assertEquals(texel(skinX, skinY), view[y * SkinEncoder.FRONT_WIDTH + x], "view " + x + "," + y);
+    }
+
+    private static void assertSize(int width, int height, LumenSyncState.SkinPayload payload) {
+        assertEquals(width, payload.width());
+        assertEquals(height, payload.height());
+    }
+
+    private static void assertFits(SkinEncoder.RenderSize size, int limit) {
+        long wire = SkinEncoder.HEADER_BYTES + 2L * size.maxWidth() * size.maxHeight();
+        assertTrue(wire + SkinCodec.HEADER_BYTES + 32 <= limit, size + " needs " + wire);
+    }
+}
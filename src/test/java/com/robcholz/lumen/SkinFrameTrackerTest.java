@@ -0,0 +1,162 @@
+package com.robcholz.lumen;
+
+import com.robcholz.lumen.LumenSyncState.SkinPayload;
+import org.junit.jupiter.api.Test;
+
+import static com.robcholz.lumen.TestSkins.OPAQUE;
+import static com.robcholz.lumen.TestSkins.filled;
+import static com.robcholz.lumen.TestSkins.payload;
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class SkinFrameTrackerTest {
+    @Test
+    void sendsFullFrameWithoutBase() {
+        SkinPayload skin = payload(16, 32, filled(16, 32, OPAQUE | 0x336699));
+        LumenFrame frame = SkinFrameTracker.frame(null, skin);
+        assertEquals(SkinFrameTracker.FULL_PATH, frame.path());
+        assertArrayEquals(skin.wire(), frame.data());
+    }
+
+    @Test
+    void sendsNothingForEmptyOrUnchangedSkin() {
+        SkinPayload skin = payload(16, 32, filled(16, 32, OPAQUE | 0x336699));
+        assertNull(SkinFrameTracker.frame(null, SkinPayload.empty()));
+        assertNull(SkinFrameTracker.frame(skin, payload(16, 32, filled(16, 32, OPAQUE | 0x336699))));
+    }
+
+    @Test
+    void sendsOneTileForOnePixel() {
+        int[] pixels = filled(16, 32, OPAQUE | 0x336699);
+        SkinPayload base = payload(16, 32, pixels);
+        pixels[20 * 16 + 9] = OPAQUE | 0xFFFFFF;
+        SkinPayload edited = payload(16, 32, pixels);
+
+        LumenFrame frame = SkinFrameTracker.frame(base, edited);
+        assertEquals(SkinFrameTracker.DELTA_PATH, frame.path());
+        byte[] data = frame.data();
+        assertEquals(1, u16(data, 4));
+        assertEquals(8, u16(data, 6));
+        assertEquals(16, u16(data, 8));
+        assertEquals(8, u16(data, 10));
+        assertEquals(8, u16(data, 12));
+        assertArrayEquals(edited.wire(), apply(base, data));
+    }
+
+    @Test
+    void mergesVerticallyAdjacentDirtyTiles() {
+        int[] pixels = filled(16, 32, OPAQUE | 0x336699);
+        SkinPayload base = payload(16, 32, pixels);
+        pixels[2 * 16 + 1] = OPAQUE;
+        pixels[12 * 16 + 1] = OPAQUE;
+        pixels[28 * 16 + 1] = OPAQUE;
+        SkinPayload edited = payload(16, 32, pixels);
+
+        byte[] data = SkinFrameTracker.frame(base, edited).data();
+        assertEquals(2, u16(data, 4));
+        assertArrayEquals(edited.wire(), apply(base, data));
+    }
+
+    @Test
+    void clipsEdgeTilesOfOddSizedSkins() {
+        int[] pixels = filled(13, 21, OPAQUE | 0x112233);
+        SkinPayload base = payload(13, 21, pixels);
+        pixels[20 * 13 + 12] = OPAQUE | 0x445566;
+        SkinPayload edited = payload(13, 21, pixels);
+
+        byte[] data = SkinFrameTracker.frame(base, edited).data();
+        assertEquals(1, u16(data, 4));
+        assertEquals(8, u16(data, 6));
+        assertEquals(16, u16(data, 8));
+        assertEquals(5, u16(data, 10));
+        assertEquals(5, u16(data, 12));
+        assertArrayEquals(edited.wire(), apply(base, data));
+    }
+
+    @Test
+    void sendsFullFrameWhenSizeOrMaskChanges() {
+        int[] pixels = filled(16, 32, OPAQUE | 0x336699);
+        SkinPayload base = payload(16, 32, pixels);
+        assertEquals(SkinFrameTracker.FULL_PATH,
+                SkinFrameTracker.frame(base, payload(8, 8, filled(8, 8, OPAQUE))).path());
+        pixels[0] = 0;
+        assertEquals(SkinFrameTracker.FULL_PATH, SkinFrameTracker.frame(base, payload(16, 32, pixels)).path());
+    }
+
+    @Test
+    void sendsFullFrameWhenTheDeltaWouldBeLarger() {
+        SkinPayload base = payload(16, 32, filled(16, 32, OPAQUE | 0x336699));
+        int[] pixels = filled(16, 32, OPAQUE | 0x336699);
+        for (int i = 0; i < pixels.length; i += 7) {
+            pixels[i] = OPAQUE;
+        }
+        assertEquals(SkinFrameTracker.FULL_PATH, SkinFrameTracker.frame(base, payload(16, 32, pixels)).path());
+    }
+
+    @Test
+    void deltasFollowTheConnection() {
+        SkinFrameTracker tracker = new SkinFrameTracker();
+        SkinPayload skin = payload(16, 32, filled(16, 32, OPAQUE | 0x336699));
+        tracker.markSent(skin, 1);
+        assertSame(skin, tracker.base(1));
+        assertNull(tracker.base(2));
+        assertNull(tracker.next(skin, 1));
+        assertEquals(SkinFrameTracker.FULL_PATH, tracker.next(skin, 2).path());
+        tracker.reset();
+        assertNull(tracker.base(1));
+    }
+
+    @Test
+    void indexedFrameComesWithItsPalette() {
+        SkinPayload skin = payload(16, 32, filled(16, 32, OPAQUE | 0x336699));
+        SkinFrameTracker.SkinFrame frame = SkinFrameTracker.encode(null, skin, true, false);
+        assertEquals(SkinFrameTracker.INDEXED_PATH, frame.image().path());
+        assertNotNull(frame.palette());
+        assertEquals(SkinFrameTracker.PALETTE_PATH, frame.palette().path());
+
+        SkinFrameTracker.SkinFrame rgb = SkinFrameTracker.encode(null, skin, false, false);
+        assertEquals(SkinFrameTracker.FULL_PATH, rgb.image().path());
+        assertNull(rgb.palette());
+    }
+
+    @Test
+    void palettesFollowTheConnection() {
+        SkinFrameTracker tracker = new SkinFrameTracker();
+        byte[] palette = {0, 0x12, 0x34};
+        assertFalse(tracker.hasPalette(palette, 1));
+        tracker.markPalette(palette, 1);
+        assertTrue(tracker.hasPalette(palette.clone(), 1));
+        assertFalse(tracker.hasPalette(palette, 2));
+        assertFalse(tracker.hasPalette(new byte[]{0, 0x12, 0x35}, 1));
+        tracker.reset();
+        assertFalse(tracker.hasPalette(palette, 1));
+    }
+
+    private static byte[] apply(SkinPayload base, byte[] delta) {
+        byte[] wire = base.wire().clone();
+        int rects = u16(delta, 4);
+        int idx = 6;
+        for (int r = 0; r < rects; r++) {
+            int x = u16(delta, idx);
+            int y = u16(delta, idx + 2);
+            int width = u16(delta, idx + 4);
+            int height = u16(delta, idx + 6);
+            idx += 8;
+            for (int row = y; row < y + height; row++) {
+                System.arraycopy(delta, idx, wire, base.pixelOffset(x, row), width * 2);
+                idx += width * 2;
+            }
+        }
+        assertEquals(delta.length, idx);
+        return wire;
+    }
+
+    private static int u16(byte[] data, int idx) {
+        return (data[idx] & 0xFF) | ((data[idx + 1] & 0xFF) << 8);
+    }
+}
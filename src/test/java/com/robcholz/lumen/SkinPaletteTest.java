@@ -0,0 +1,140 @@
+package com.robcholz.lumen;
+
+import com.robcholz.lumen.LumenSyncState.SkinPayload;
+import org.junit.jupiter.api.Test;
+
+import java.util.HashSet;
+import java.util.Set;
+
+import static com.robcholz.lumen.TestSkins.OPAQUE;
+import static com.robcholz.lumen.TestSkins.filled;
+import static com.robcholz.lumen.TestSkins.payload;
+import static com.robcholz.lumen.TestSkins.rgb565;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class SkinPaletteTest {
+    private static final int TRANSPARENT = -1;
+
+    @Test
+    void encodesFewColorsExactlyAtFourBits() {
+        int[] pixels = new int[16 * 32];
+        for (int i = 0; i < pixels.length; i++) {
+            pixels[i] = OPAQUE | (i % 5) * 0x203040;
+        }
+        SkinPayload skin = payload(16, 32, pixels);
+        SkinPalette.Indexed indexed = SkinPalette.encode(skin, false);
+        assertEquals(4, indexed.frame()[4]);
+        assertEquals(5, (indexed.palette()[0] & 0xFF) + 1);
+        assertEquals(1 + 5 * 2, indexed.palette().length);
+        assertDecodesTo(skin, indexed);
+    }
+
+    @Test
+    void encodesUpTo256ColorsExactlyAtEightBits() {
+        int[] pixels = new int[64 * 64];
+        for (int i = 0; i < pixels.length; i++) {
+            int color = i % 256;
+            pixels[i] = OPAQUE | ((color % 32) << 19) | ((color / 32) << 10);
+        }
+        SkinPayload skin = payload(64, 64, pixels);
+        SkinPalette.Indexed indexed = SkinPalette.encode(skin, false);
+        assertEquals(8, indexed.frame()[4]);
+        assertEquals(256, (indexed.palette()[0] & 0xFF) + 1);
+        assertDecodesTo(skin, indexed);
+    }
+
+    @Test
+    void quantizesMoreThan256ColorsToAFullPalette() {
+        int[] pixels = new int[64 * 64];
+        for (int i = 0; i < pixels.length; i++) {
+            pixels[i] = OPAQUE | (i * 0x010307 & 0xFFFFFF);
+        }
+        SkinPayload skin = payload(64, 64, pixels);
+        for (boolean dither : new boolean[]{false, true}) {
+            SkinPalette.Indexed indexed = SkinPalette.encode(skin, dither);
+            assertEquals(8, indexed.frame()[4]);
+            assertEquals(256, (indexed.palette()[0] & 0xFF) + 1);
+            int[] decoded = decode(indexed);
+            Set<Integer> used = new HashSet<>();
+            for (int color : decoded) {
+                used.add(color);
+            }
+            assertTrue(used.size() <= 256);
+            assertEquals(64 * 64, decoded.length);
+        }
+    }
+
+    @Test
+    void keepsTransparencyInTheMaskWithIndexZero() {
+        int[] pixels = filled(8, 8, OPAQUE | 0x00FF00);
+        pixels[0] = 0;
+        pixels[63] = 0x00FFFFFF;
+        SkinPayload skin = payload(8, 8, pixels);
+        SkinPalette.Indexed indexed = SkinPalette.encode(skin, true);
+        assertEquals(1, (indexed.palette()[0] & 0xFF) + 1);
+        int[] decoded = decode(indexed);
+        assertEquals(TRANSPARENT, decoded[0]);
+        assertEquals(TRANSPARENT, decoded[63]);
+        assertEquals(rgb565(0x00FF00), decoded[1]);
+    }
+
+    @Test
+    void encodesFullyTransparentSkinWithOneEntry() {
+        SkinPayload skin = payload(4, 4, filled(4, 4, 0));
+        SkinPalette.Indexed indexed = SkinPalette.encode(skin, false);
+        assertEquals(3, indexed.palette().length);
+        for (int color : decode(indexed)) {
+            assertEquals(TRANSPARENT, color);
+        }
+    }
+
+    @Test
+    void packsOddPixelCountsIntoWholeBytes() {
+        int[] pixels = new int[3 * 3];
+        for (int i = 0; i < pixels.length; i++) {
+            pixels[i] = OPAQUE | (i % 3) * 0x404040;
+        }
+        SkinPayload skin = payload(3, 3, pixels);
+        SkinPalette.Indexed indexed = SkinPalette.encode(skin, false);
+        assertEquals(SkinPalette.HEADER_BYTES + 2 + 5, indexed.frame().length);
+        assertDecodesTo(skin, indexed);
+    }
+
+    private static void assertDecodesTo(SkinPayload skin, SkinPalette.Indexed indexed) {
+        int[] decoded = decode(indexed);
+        for (int i = 0; i < decoded.length; i++) {
+            assertEquals(skin.opaque(i) ? skin.pixel(i) : TRANSPARENT, decoded[i], "pixel " + i);
+        }
+    }
+
+    // What a device does: look every index up in the palette it last received.
+    private static int[] decode(SkinPalette.Indexed indexed) {
+        byte[] paletteData = indexed.palette();
+        int[] palette = new int[(paletteData[0] & 0xFF) + 1];
+        for (int i = 0; i < palette.length; i++) {
+            palette[i] = ((paletteData[1 + i * 2] & 0xFF) << 8) | (paletteData[2 + i * 2] & 0xFF);
+        }
+        byte[] frame = indexed.frame();
+        int width = (frame[0] & 0xFF) | ((frame[1] & 0xFF) << 8);
+        int height = (frame[2] & 0xFF) | ((frame[3] & 0xFF) << 8);
+        int bits = frame[4];
+        int pixels = width * height;
+        int maskOffset = SkinPalette.HEADER_BYTES;
+        int indexOffset = maskOffset + (pixels + 7) / 8;
+        assertEquals(indexOffset + (bits == 4 ? (pixels + 1) / 2 : pixels), frame.length);
+        int[] colors = new int[pixels];
+        for (int i = 0; i < pixels; i++) {
+            int index = bits == 8
+                    ? frame[indexOffset + i] & 0xFF
+                    : (frame[indexOffset + i / 2] >>> (i % 2 == 0 ? 4 : 0)) & 0x0F;
+            boolean opaque = (frame[maskOffset + i / 8] & (1 << (i % 8))) != 0;
+            assertTrue(index < palette.length);
+            colors[i] = opaque ? palette[index] : TRANSPARENT;
+            if (!opaque) {
+                assertEquals(0, index);
+            }
+        }
+        return colors;
+    }
+}
@@ -0,0 +1,89 @@
+package com.robcholz.lumen;
+
+import com.robcholz.lumen.LumenSyncState.SkinPayload;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.stream.Stream;
+
+import static com.robcholz.lumen.TestSkins.OPAQUE;
+import static com.robcholz.lumen.TestSkins.filled;
+import static com.robcholz.lumen.TestSkins.payload;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class SkinPayloadCacheTest {
+    private static final String HASH = "0123abcd";
+    private static final String VARIANT = "front-h120";
+    // u32 magic, u16 width, u16 height, then the u32 wire length.
+    private static final int WIRE_LENGTH_OFFSET = 8;
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void readsEntriesBackFromDisk() {
+        SkinPayload skin = payload(16, 32, filled(16, 32, OPAQUE | 0x336699));
+        new SkinPayloadCache(directory).put("player", HASH, VARIANT, skin);
+        SkinPayload read = new SkinPayloadCache(directory).get("player", HASH, VARIANT);
+        assertTrue(skin.sameContent(read));
+    }
+
+    @Test
+    void rejectsEntryWithAHugeWireLength() throws IOException {
+        Path entry = writeEntry();
+        patchInt(entry, WIRE_LENGTH_OFFSET, Integer.MAX_VALUE);
+        assertNull(new SkinPayloadCache(directory).get("player", HASH, VARIANT));
+    }
+
+    @Test
+    void rejectsEntryWhoseLengthsDoNotMatchItsSize() throws IOException {
+        Path entry = writeEntry();
+        // Claims 16x33: the wire and mask written for 16x32 no longer fit.
+        try (RandomAccessFile file = new RandomAccessFile(entry.toFile(), "rw")) {
+            file.seek(6);
+            file.writeShort(33);
+        }
+        assertNull(new SkinPayloadCache(directory).get("player", HASH, VARIANT));
+    }
+
+    @Test
+    void rejectsTruncatedEntry() throws IOException {
+        Path entry = writeEntry();
+        try (RandomAccessFile file = new RandomAccessFile(entry.toFile(), "rw")) {
+            file.setLength(file.length() - 1);
+        }
+        assertNull(new SkinPayloadCache(directory).get("player", HASH, VARIANT));
+    }
+
+    @Test
+    void leavesNoTempFileWhenTheWriteFails() throws IOException {
+        // A directory where the entry should go makes the final move fail.
+        Files.createDirectories(directory.resolve(HASH + "-" + VARIANT + ".bin").resolve("blocker"));
+        new SkinPayloadCache(directory).put("player", HASH, VARIANT,
+                payload(16, 32, filled(16, 32, OPAQUE | 0x336699)));
+        try (Stream<Path> files = Files.list(directory)) {
+            assertEquals(0, files.filter(path -> path.toString().endsWith(".tmp")).count());
+        }
+    }
+
+    private Path writeEntry() throws IOException {
+        new SkinPayloadCache(directory).put("player", HASH, VARIANT,
+                payload(16, 32, filled(16, 32, OPAQUE | 0x336699)));
+        try (Stream<Path> files = Files.list(directory)) {
+            return files.filter(path -> path.toString().endsWith(".bin")).findFirst().orElseThrow();
+        }
+    }
+
+    private static void patchInt(Path path, int offset, int value) throws IOException {
+        try (RandomAccessFile file = new RandomAccessFile(path.toFile(), "rw")) {
+            file.seek(offset);
+            file.writeInt(value);
+        }
+    }
+}
@@ -0,0 +1,215 @@
+package com.robcholz.lumen;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.CRC32;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class SkinTransferTest {
+    private static final int CHUNK = 100;
+
+    private final SkinTransfer transfer = new SkinTransfer();
+    private final AtomicInteger completions = new AtomicInteger();
+
+    @Test
+    void sizesChunksToTheSmallerOfFrameLimitAndCredits() {
+        assertEquals(1024, SkinTransfer.chunkSize(capabilities(65536, 0)));
+        assertEquals(512 - 32 - SkinTransfer.HEADER_BYTES, SkinTransfer.chunkSize(capabilities(65536, 512)));
+        assertEquals(300 - 32 - SkinTransfer.HEADER_BYTES, SkinTransfer.chunkSize(capabilities(300, 4096)));
+        assertEquals(64, SkinTransfer.chunkSize(capabilities(80, 0)));
+    }
+
+    @Test
+    void chunksCarryValidHeadersAndChecksums() {
+        byte[] data = data(950);
+        List<LumenFrame> chunks = transfer.start(new LumenFrame(SkinFrameTracker.DELTA_PATH, data), CHUNK, 1,
+                completions::incrementAndGet);
+        assertEquals(4, chunks.size());
+        for (int i = 0; i < chunks.size(); i++) {
+            byte[] chunk = chunks.get(i).data();
+            assertEquals(SkinTransfer.CHUNK_PATH, chunks.get(i).path());
+            assertEquals((int) crc(data, 0, data.length), u32(chunk, 0));
+            assertEquals(1, chunk[4]);
+            assertEquals(i, u16(chunk, 6));
+            assertEquals(10, u16(chunk, 8));
+            assertEquals(950, u32(chunk, 10));
+            assertEquals((int) crc(chunk, SkinTransfer.HEADER_BYTES, chunk.length - SkinTransfer.HEADER_BYTES),
+                    u32(chunk, 14));
+        }
+    }
+
+    @Test
+    void reassemblesAfterAcknowledgingEveryChunk() {
+        byte[] data = data(950);
+        ByteArrayOutputStream received = new ByteArrayOutputStream();
+        List<LumenFrame> chunks = transfer.start(new LumenFrame(SkinFrameTracker.INDEXED_PATH, data), CHUNK, 1,
+                completions::incrementAndGet);
+        int next = 0;
+        while (!chunks.isEmpty()) {
+            for (LumenFrame chunk : chunks) {
+                byte[] bytes = chunk.data();
+                assertEquals(2, bytes[4]);
+                received.write(bytes, SkinTransfer.HEADER_BYTES, bytes.length - SkinTransfer.HEADER_BYTES);
+                next++;
+                transfer.onAck(ack(bytes, next));
+            }
+            chunks = transfer.nextChunks(1);
+        }
+        assertEquals(10, next);
+        assertArrayEquals(data, received.toByteArray());
+        assertEquals(1, completions.get());
+    }
+
+    @Test
+    void rewindsOnceWhenAChunkIsMissing() {
+        byte[] data = data(950);
+        List<LumenFrame> window = transfer.start(new LumenFrame(SkinFrameTracker.FULL_PATH, data), CHUNK, 1,
+                completions::incrementAndGet);
+        assertEquals(4, window.size());
+        byte[] first = window.get(0).data();
+        // Chunk 1 was lost: the device keeps asking for it while chunks 2 and 3 arrive.
+        assertTrue(transfer.onAck(ack(first, 1)));
+        assertTrue(transfer.onAck(ack(first, 1)));
+        assertEquals(List.of(1, 2, 3, 4), indices(transfer.nextChunks(1)));
+        assertFalse(transfer.onAck(ack(first, 1)));
+        assertTrue(transfer.nextChunks(1).isEmpty());
+        assertEquals(0, completions.get());
+    }
+
+    @Test
+    void resendsTheWindowWhenTheAckIsOverdue() {
+        List<LumenFrame> window = transfer.start(new LumenFrame(SkinFrameTracker.FULL_PATH, data(950)), CHUNK, 1,
+                completions::incrementAndGet);
+        // The ack for chunks 0 and 1 arrived; the one for chunks 2 and 3 was lost.
+        assertTrue(transfer.onAck(ack(window.get(0).data(), 2)));
+        assertEquals(List.of(4, 5), indices(transfer.nextChunks(1)));
+        long overdue = System.nanoTime() + SkinTransfer.ACK_TIMEOUT_NANOS + 1;
+        assertFalse(transfer.retransmitDue(1, System.nanoTime()));
+        assertFalse(transfer.retransmitDue(2, overdue));
+        assertTrue(transfer.retransmitDue(1, overdue));
+        assertEquals(List.of(2, 3, 4, 5), indices(transfer.retransmit(1, overdue)));
+        assertFalse(transfer.retransmitDue(1, System.nanoTime()));
+    }
+
+    @Test
+    void doesNotResendOnceEverythingIsAcknowledged() {
+        List<LumenFrame> window = transfer.start(new LumenFrame(SkinFrameTracker.FULL_PATH, data(250)), CHUNK, 1,
+                completions::incrementAndGet);
+        assertEquals(3, window.size());
+        assertFalse(transfer.onAck(ack(window.get(0).data(), 3)));
+        long overdue = System.nanoTime() + SkinTransfer.ACK_TIMEOUT_NANOS + 1;
+        assertFalse(transfer.retransmitDue(1, overdue));
+        assertTrue(transfer.retransmit(1, overdue).isEmpty());
+        assertEquals(1, completions.get());
+    }
+
+    @Test
+    void ignoresAcksForOtherTransfers() {
+        List<LumenFrame> window = transfer.start(new LumenFrame(SkinFrameTracker.FULL_PATH, data(950)), CHUNK, 1,
+                completions::incrementAndGet);
+        byte[] stale = window.get(0).data().clone();
+        stale[0] ^= 1;
+        assertFalse(transfer.onAck(ack(stale, 4)));
+        assertFalse(transfer.onAck(new byte[]{1, 2}));
+        assertTrue(transfer.nextChunks(1).isEmpty());
+    }
+
+    @Test
+    void resumesAfterTheLastAcknowledgedChunkOnReconnect() {
+        LumenFrame frame = new LumenFrame(SkinFrameTracker.FULL_PATH, data(950));
+        List<LumenFrame> window = transfer.start(frame, CHUNK, 1, completions::incrementAndGet);
+        transfer.onAck(ack(window.get(0).data(), 3));
+        assertTrue(transfer.nextChunks(2).isEmpty());
+        List<LumenFrame> resumed = transfer.start(frame, CHUNK, 2, completions::incrementAndGet);
+        assertEquals(List.of(3, 4, 5, 6), indices(resumed));
+    }
+
+    @Test
+    void repostOnTheSameConnectionLeavesChunksInFlight() {
+        LumenFrame frame = new LumenFrame(SkinFrameTracker.FULL_PATH, data(950));
+        List<LumenFrame> window = transfer.start(frame, CHUNK, 1, completions::incrementAndGet);
+        assertEquals(4, window.size());
+        assertTrue(transfer.start(frame, CHUNK, 1, completions::incrementAndGet).isEmpty());
+        transfer.onAck(ack(window.get(0).data(), 2));
+        assertEquals(List.of(4, 5), indices(transfer.start(frame, CHUNK, 1, completions::incrementAndGet)));
+    }
+
+    @Test
+    void restartsWhenTheFrameChanges() {
+        List<LumenFrame> window = transfer.start(new LumenFrame(SkinFrameTracker.FULL_PATH, data(950)), CHUNK, 1,
+                completions::incrementAndGet);
+        transfer.onAck(ack(window.get(0).data(), 3));
+        byte[] other = data(950);
+        other[0] ^= 1;
+        List<LumenFrame> restarted = transfer.start(new LumenFrame(SkinFrameTracker.FULL_PATH, other), CHUNK, 1,
+                completions::incrementAndGet);
+        assertEquals(List.of(0, 1, 2, 3), indices(restarted));
+    }
+
+    @Test
+    void sendsFrameExactlyOneChunkLongAsOneChunk() {
+        List<LumenFrame> chunks = transfer.start(new LumenFrame(SkinFrameTracker.FULL_PATH, data(CHUNK)), CHUNK, 1,
+                completions::incrementAndGet);
+        assertEquals(1, chunks.size());
+        assertEquals(1, u16(chunks.get(0).data(), 8));
+        assertEquals(SkinTransfer.HEADER_BYTES + CHUNK, chunks.get(0).data().length);
+        assertFalse(transfer.onAck(ack(chunks.get(0).data(), 1)));
+        assertEquals(1, completions.get());
+    }
+
+    @Test
+    void sendsEmptyFrameAsOneEmptyChunk() {
+        List<LumenFrame> chunks = transfer.start(new LumenFrame(SkinFrameTracker.FULL_PATH, new byte[0]), CHUNK, 1,
+                completions::incrementAndGet);
+        assertEquals(1, chunks.size());
+        assertEquals(SkinTransfer.HEADER_BYTES, chunks.get(0).data().length);
+    }
+
+    private static DeviceCapabilities capabilities(int maxFrameBytes, int receiveCredits) {
+        return new DeviceCapabilities(1, maxFrameBytes, SkinCodec.NONE.mask(), 0, 0, receiveCredits, 0,
+                DeviceCapabilities.FEATURE_CHUNKED_SKIN);
+    }
+
+    private static byte[] data(int length) {
+        byte[] data = new byte[length];
+        new Random(length).nextBytes(data);
+        return data;
+    }
+
+    private static byte[] ack(byte[] chunk, int next) {
+        byte[] ack = Arrays.copyOf(chunk, 6);
+        ack[4] = (byte) next;
+        ack[5] = (byte) (next >>> 8);
+        return ack;
+    }
+
+    private static List<Integer> indices(List<LumenFrame> chunks) {
+        return chunks.stream().map(chunk -> u16(chunk.data(), 6)).toList();
+    }
+
+    private static long crc(byte[] data, int offset, int length) {
+        CRC32 crc = new CRC32();
+        crc.update(data, offset, length);
+        return crc.getValue();
+    }
+
+    private static int u16(byte[] data, int idx) {
+        return (data[idx] & 0xFF) | ((data[idx + 1] & 0xFF) << 8);
+    }
+
+    private static int u32(byte[] data, int idx) {
+        return (data[idx] & 0xFF)
+                | ((data[idx + 1] & 0xFF) << 8)
+                | ((data[idx + 2] & 0xFF) << 16)
+                | ((data[idx + 3] & 0xFF) << 24);
+    }
+}
@@ -0,0 +1,68 @@
+package com.robcholz.lumen;
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+class SnapshotCodecTest {
+    private final SnapshotCodec codec = new SnapshotCodec();
+
+    @Test
+    void assignsNameIdsInOrderAndKeepsThem() {
+        assertEquals(0, nameId(codec.nameFrame("Alex")));
+        assertEquals(1, nameId(codec.nameFrame("Steve")));
+        assertSame(codec.nameFrame("Alex"), codec.nameFrame("Alex"));
+        assertEquals(0, nameId(codec.nameFrame("Alex")));
+    }
+
+    @Test
+    void snapshotRefersToTheNameId() {
+        codec.nameFrame("Alex");
+        LumenFrame frame = codec.encode(new LumenSyncState.Snapshot("Creative", "Steve", 15, 20));
+        byte[] data = frame.data();
+        assertEquals(SnapshotCodec.SNAPSHOT_PATH, frame.path());
+        assertEquals(SnapshotCodec.SNAPSHOT_BYTES, data.length);
+        assertEquals(SnapshotCodec.VERSION, data[0]);
+        assertEquals(2, data[1]);
+        assertEquals(1, (data[2] & 0xFF) | ((data[3] & 0xFF) << 8));
+        assertEquals(15f, f32(data, 4));
+        assertEquals(20f, f32(data, 8));
+    }
+
+    @Test
+    void nameFrameCarriesUtf8Name() {
+        LumenFrame frame = codec.nameFrame("Zo\u00eb");
+        byte[] name = "Zo\u00eb".getBytes(StandardCharsets.UTF_8);
+        assertEquals(SnapshotCodec.NAME_PATH, frame.path());
+        assertEquals(name.length, frame.data()[3] & 0xFF);
+        assertArrayEquals(name, Arrays.copyOfRange(frame.data(), 4, frame.data().length));
+    }
+
+    @Test
+    void truncatesLongNames() {
+        LumenFrame frame = codec.nameFrame("x".repeat(300));
+        assertEquals(255, frame.data()[3] & 0xFF);
+        assertEquals(4 + 255, frame.data().length);
+    }
+
+    @Test
+    void unknownModeIsZero() {
+        assertEquals(0, codec.encode(LumenSyncState.Snapshot.defaultSnapshot()).data()[1]);
+    }
+
+    private static int nameId(LumenFrame frame) {
+        return (frame.data()[1] & 0xFF) | ((frame.data()[2] & 0xFF) << 8);
+    }
+
+    private static float f32(byte[] data, int idx) {
+        return Float.intBitsToFloat((data[idx] & 0xFF)
+                | ((data[idx + 1] & 0xFF) << 8)
+                | ((data[idx + 2] & 0xFF) << 16)
+                | ((data[idx + 3] & 0xFF) << 24));
+    }
+}
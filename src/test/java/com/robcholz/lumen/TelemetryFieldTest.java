@@ -0,0 +1,61 @@
+package com.robcholz.lumen;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class TelemetryFieldTest {
+    @Test
+    void parsesOneRecordPerField() {
+        Map<TelemetryField, Integer> fields = TelemetryField.parseSubscription(new byte[]{
+                1, (byte) 0xF4, 0x01,
+                5, 0x32, 0x00
+        });
+        assertEquals(Map.of(TelemetryField.HUNGER, 500, TelemetryField.POSITION, 50), fields);
+    }
+
+    @Test
+    void keepsIntervalZeroToTurnAFieldOff() {
+        assertEquals(Map.of(TelemetryField.ARMOR, 0), TelemetryField.parseSubscription(new byte[]{3, 0, 0}));
+    }
+
+    @Test
+    void readsTheFullU16Interval() {
+        assertEquals(Map.of(TelemetryField.XP, 65535),
+                TelemetryField.parseSubscription(new byte[]{4, (byte) 0xFF, (byte) 0xFF}));
+    }
+
+    @Test
+    void skipsUnknownIdsAndKeepsTheRest() {
+        Map<TelemetryField, Integer> fields = TelemetryField.parseSubscription(new byte[]{
+                (byte) 200, 0x10, 0x00,
+                2, 0x64, 0x00
+        });
+        assertEquals(Map.of(TelemetryField.SATURATION, 100), fields);
+    }
+
+    @Test
+    void ignoresATrailingPartialRecord() {
+        assertEquals(Map.of(TelemetryField.AIR, 20), TelemetryField.parseSubscription(new byte[]{8, 20, 0, 9, 1}));
+        assertTrue(TelemetryField.parseSubscription(new byte[]{9, 1}).isEmpty());
+        assertTrue(TelemetryField.parseSubscription(new byte[0]).isEmpty());
+    }
+
+    @Test
+    void laterRecordForTheSameFieldWins() {
+        assertEquals(Map.of(TelemetryField.HUNGER, 0),
+                TelemetryField.parseSubscription(new byte[]{1, 100, 0, 1, 0, 0}));
+    }
+
+    @Test
+    void idsAndKeysRoundTrip() {
+        for (TelemetryField field : TelemetryField.values()) {
+            assertEquals(field, TelemetryField.byId(field.id()));
+            assertEquals(field, TelemetryField.byKey(field.key()));
+            assertEquals(TelemetryField.PATH_PREFIX + field.key(), field.path());
+        }
+    }
+}
@@ -0,0 +1,28 @@
+package com.robcholz.lumen;
+
+import com.robcholz.lumen.LumenSyncState.SkinPayload;
+
+import java.util.Arrays;
+
+final class TestSkins {
+    static final int OPAQUE = 0xFF000000;
+
+    private TestSkins() {
+    }
+
+    static int[] filled(int width, int height, int argb) {
+        int[] pixels = new int[width * height];
+        Arrays.fill(pixels, argb);
+        return pixels;
+    }
+
+    static SkinPayload payload(int width, int height, int[] argb) {
+        return SkinPayload.of(width, height,
+                SkinEncoder.encodeWire(argb, width, height, width, height),
+                SkinEncoder.encodeMask(argb, width, height, width, height));
+    }
+
+    static int rgb565(int argb) {
+        return SkinEncoder.toRGB565(argb);
+    }
+}
@@ -0,0 +1,138 @@
+package com.robcholz.lumen.client;
+
+import com.robcholz.lumen.DeviceCapabilities;
+import org.junit.jupiter.api.Test;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+// Drives the governor the way the writer does, on a synthetic clock: every tick each channel with a message
+// waiting asks delayNanos, and a channel that may send is written at once. The link carries LINK_RATE bytes per
+// second, so writes block in proportion to their size.
+class BandwidthGovernorTest {
+    private static final String SYNC = "sync";
+    private static final String SKIN = "sync/skin";
+    private static final int LINK_RATE = 10_000;
+    private static final long TICK = TimeUnit.MILLISECONDS.toNanos(10);
+    private static final long SECOND = TimeUnit.SECONDS.toNanos(1);
+    private static final int SYNC_BYTES = 50;
+    private static final int SKIN_BYTES = 1000;
+
+    private final BandwidthGovernor governor = new BandwidthGovernor("test");
+    private long now = System.nanoTime();
+
+    @Test
+    void saturatedLinkThrottlesSkinsBeforeSync() {
+        governor.onLink(session(1), 100, 0);
+        Window last = null;
+        for (int second = 0; second < 6; second++) {
+            last = run(true, true);
+        }
+        // Sync wants 5000 B/s and gets every message through without waiting.
+        assertEquals(100, last.sent(SYNC));
+        assertEquals(0, last.delayed(SYNC));
+        // Skins take what is left: the budget minus sync's reservation, never the whole link.
+        assertTrue(last.delayed(SKIN) > 0);
+        assertTrue(last.bytes(SKIN) > 0);
+        assertTrue(last.bytes(SKIN) <= LINK_RATE - SYNC_BYTES * 100 + SKIN_BYTES, "skin " + last.bytes(SKIN));
+        assertTrue(last.total() <= LINK_RATE * 1.05, "total " + last.total());
+    }
+
+    @Test
+    void budgetShareCapsTheWholeLink() {
+        governor.onLink(session(1), 50, 0);
+        Window last = null;
+        for (int second = 0; second < 6; second++) {
+            last = run(false, true);
+        }
+        assertTrue(last.bytes(SKIN) <= LINK_RATE / 2 + SKIN_BYTES, "skin " + last.bytes(SKIN));
+    }
+
+    @Test
+    void skinIntervalStretchesUnderLoadAndRelaxesWithHeadroom() {
+        governor.onLink(session(1), 100, 0);
+        Window loaded = null;
+        for (int second = 0; second < 5; second++) {
+            loaded = run(true, true);
+        }
+        // Sync goes quiet: its reservation decays window by window and skins grow back into the budget.
+        Window relaxed = null;
+        for (int second = 0; second < 8; second++) {
+            relaxed = run(false, true);
+        }
+        assertTrue(relaxed.sent(SKIN) >= 2 * loaded.sent(SKIN),
+                "loaded " + loaded.sent(SKIN) + ", relaxed " + relaxed.sent(SKIN));
+        assertTrue(relaxed.bytes(SKIN) <= LINK_RATE * 1.05, "skin " + relaxed.bytes(SKIN));
+    }
+
+    @Test
+    void newConnectionLiftsEveryHold() {
+        governor.onLink(session(1), 100, 0);
+        for (int second = 0; second < 4; second++) {
+            run(true, true);
+        }
+        governor.onSent(SKIN, 2, SKIN_BYTES, now);
+        assertTrue(governor.delayNanos(SKIN, 2, now) > 0);
+        governor.onLink(session(2), 100, 0);
+        assertEquals(0, governor.delayNanos(SKIN, 2, now));
+    }
+
+    // One second of ticks; returns what each channel managed in it.
+    private Window run(boolean sync, boolean skin) {
+        Window window = new Window();
+        long end = now + SECOND;
+        while (now < end) {
+            if (sync) {
+                offer(window, SYNC, 0, SYNC_BYTES);
+            }
+            if (skin) {
+                offer(window, SKIN, 2, SKIN_BYTES);
+            }
+            now += TICK;
+        }
+        return window;
+    }
+
+    private void offer(Window window, String channel, int priority, int bytes) {
+        if (governor.delayNanos(channel, priority, now) > 0) {
+            window.delayed.merge(channel, 1, Integer::sum);
+            return;
+        }
+        long writeNanos = bytes * SECOND / LINK_RATE;
+        governor.onWrite(bytes, writeNanos, now);
+        governor.onSent(channel, priority, bytes, now);
+        window.sent.merge(channel, 1, Integer::sum);
+        window.bytes.merge(channel, bytes, Integer::sum);
+    }
+
+    private static LinkSession session(long connection) {
+        DeviceCapabilities device = new DeviceCapabilities(1, 4096, 0, 0, 0, 0, 0, 0);
+        return new LinkSession(connection, device, 115200, LINK_RATE, null);
+    }
+
+    private static final class Window {
+        private final Map<String, Integer> sent = new HashMap<>();
+        private final Map<String, Integer> delayed = new HashMap<>();
+        private final Map<String, Integer> bytes = new HashMap<>();
+
+        int sent(String channel) {
+            return sent.getOrDefault(channel, 0);
+        }
+
+        int delayed(String channel) {
+            return delayed.getOrDefault(channel, 0);
+        }
+
+        int bytes(String channel) {
+            return bytes.getOrDefault(channel, 0);
+        }
+
+        int total() {
+            return bytes(SYNC) + bytes(SKIN);
+        }
+    }
+}
@@ -0,0 +1,83 @@
+package com.robcholz.lumen.client;
+
+import com.robcholz.lumen.TelemetryField;
+import org.junit.jupiter.api.Test;
+
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class DeviceSyncTest {
+    private static final long INTERVAL = TimeUnit.MILLISECONDS.toNanos(100);
+    private static final byte[] TEN = {10};
+    private static final byte[] NINE = {9};
+
+    private final DeviceSync device = new DeviceSync();
+
+    @Test
+    void sendsAChangedValueOncePerInterval() {
+        assertTrue(device.telemetryDue(TelemetryField.HUNGER, TEN, INTERVAL, 0, 1));
+        assertFalse(device.telemetryDue(TelemetryField.HUNGER, NINE, INTERVAL, INTERVAL - 1, 1));
+        assertTrue(device.telemetryDue(TelemetryField.HUNGER, NINE, INTERVAL, INTERVAL, 1));
+    }
+
+    @Test
+    void skipsAnUnchangedValue() {
+        assertTrue(device.telemetryDue(TelemetryField.HUNGER, TEN, INTERVAL, 0, 1));
+        assertFalse(device.telemetryDue(TelemetryField.HUNGER, TEN.clone(), INTERVAL, 5 * INTERVAL, 1));
+    }
+
+    @Test
+    void tracksFieldsSeparately() {
+        assertTrue(device.telemetryDue(TelemetryField.HUNGER, TEN, INTERVAL, 0, 1));
+        assertTrue(device.telemetryDue(TelemetryField.ARMOR, TEN, INTERVAL, 0, 1));
+    }
+
+    @Test
+    void startsOverOnANewConnection() {
+        assertTrue(device.telemetryDue(TelemetryField.HUNGER, TEN, INTERVAL, 0, 1));
+        // Same value, inside the interval: a reconnected device has nothing yet, so it still gets it.
+        assertTrue(device.telemetryDue(TelemetryField.HUNGER, TEN, INTERVAL, 1, 2));
+        assertFalse(device.telemetryDue(TelemetryField.HUNGER, TEN, INTERVAL, 2, 2));
+    }
+
+    @Test
+    void reportsOnlyTheAwaitedRenderAndOnlyOnce() {
+        device.awaitSkinRender("steve#1/front-240x240-area");
+        assertFalse(device.skinRendered("steve#1/back-240x240-area"));
+        assertTrue(device.skinRendered("steve#1/front-240x240-area"));
+        assertFalse(device.skinRendered("steve#1/front-240x240-area"));
+    }
+
+    @Test
+    void usesTheConfiguredIntervalUntilTheDeviceAsks() {
+        Map<String, Integer> configured = Map.of("hunger", 500, "armor", 0);
+        assertEquals(TimeUnit.MILLISECONDS.toNanos(500), device.telemetryIntervalNanos(TelemetryField.HUNGER, configured));
+        assertEquals(-1, device.telemetryIntervalNanos(TelemetryField.ARMOR, configured));
+        assertEquals(-1, device.telemetryIntervalNanos(TelemetryField.XP, configured));
+    }
+
+    @Test
+    void requestedIntervalZeroTurnsAConfiguredFieldOff() {
+        Map<String, Integer> configured = Map.of("hunger", 500);
+        device.requestTelemetry(TelemetryField.parseSubscription(new byte[]{1, 0, 0, 4, (byte) 0xE8, 0x03}));
+        assertEquals(-1, device.telemetryIntervalNanos(TelemetryField.HUNGER, configured));
+        assertEquals(TimeUnit.SECONDS.toNanos(1), device.telemetryIntervalNanos(TelemetryField.XP, configured));
+    }
+
+    @Test
+    void clampsVeryShortIntervals() {
+        device.requestTelemetry(Map.of(TelemetryField.POSITION, 1));
+        assertEquals(TimeUnit.MILLISECONDS.toNanos(50), device.telemetryIntervalNanos(TelemetryField.POSITION, Map.of()));
+    }
+
+    @Test
+    void aNewRequestReplacesThePreviousOne() {
+        device.requestTelemetry(Map.of(TelemetryField.POSITION, 100));
+        device.requestTelemetry(Map.of(TelemetryField.FACING, 100));
+        assertEquals(-1, device.telemetryIntervalNanos(TelemetryField.POSITION, Map.of()));
+    }
+}
@@ -0,0 +1,71 @@
+package com.robcholz.lumen.client;
+
+import com.robcholz.lumen.DeviceCapabilities;
+import com.robcholz.lumen.LumenFrame;
+import com.robcholz.lumen.SkinCodec;
+import com.robcholz.lumen.SkinFrameTracker;
+import com.robcholz.lumen.SkinTransfer;
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class LinkSessionTest {
+    private static final DeviceCapabilities DEVICE = new DeviceCapabilities(1, 65536, SkinCodec.NONE.mask(), 240, 240,
+            0, 0, DeviceCapabilities.FEATURE_CHUNKED_SKIN);
+
+    @Test
+    void slicesFollowTheMeasuredThroughput() {
+        assertEquals(920, session(1, 460800, 46000).sliceBytes());
+        assertEquals(600, session(1, 460800, 30000).sliceBytes());
+        assertEquals(256, session(1, 115200, 0).sliceBytes());
+    }
+
+    @Test
+    void chunksFollowOnlyTheBaudRate() {
+        assertEquals(512, session(1, 460800, 46000).skinChunkBytes());
+        assertEquals(512, session(2, 460800, 30000).skinChunkBytes());
+        assertEquals(256, session(1, 115200, 11000).skinChunkBytes());
+        assertEquals(1024, session(1, 921600, 0).skinChunkBytes());
+    }
+
+    @Test
+    void chunksStillFitTheDevice() {
+        DeviceCapabilities small = new DeviceCapabilities(1, 300, SkinCodec.NONE.mask(), 0, 0, 0, 0,
+                DeviceCapabilities.FEATURE_CHUNKED_SKIN);
+        LinkSession session = new LinkSession(1, small, 921600, 0, null);
+        assertEquals(SkinTransfer.chunkSize(small), session.skinChunkBytes());
+    }
+
+    @Test
+    void resumesAcrossSessionsWithDifferentThroughput() {
+        byte[] data = new byte[5000];
+        new Random(5).nextBytes(data);
+        LumenFrame frame = new LumenFrame(SkinFrameTracker.FULL_PATH, data);
+        SkinTransfer transfer = new SkinTransfer();
+
+        LinkSession first = session(1, 460800, 46000);
+        List<LumenFrame> window = transfer.start(frame, first.skinChunkBytes(), first.connection(), () -> {
+        });
+        byte[] ack = Arrays.copyOf(window.get(0).data(), 6);
+        ack[4] = 3;
+        transfer.onAck(ack);
+
+        // The link dropped; the probe on reconnect measures a different rate.
+        LinkSession second = session(2, 460800, 38000);
+        List<LumenFrame> resumed = transfer.start(frame, second.skinChunkBytes(), second.connection(), () -> {
+        });
+        assertEquals(3, index(resumed.get(0)));
+    }
+
+    private static LinkSession session(long connection, int baudRate, double throughput) {
+        return new LinkSession(connection, DEVICE, baudRate, throughput, null);
+    }
+
+    private static int index(LumenFrame chunk) {
+        return (chunk.data()[6] & 0xFF) | ((chunk.data()[7] & 0xFF) << 8);
+    }
+}
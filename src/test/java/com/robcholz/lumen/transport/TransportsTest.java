@@ -0,0 +1,47 @@
+package com.robcholz.lumen.transport;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+class TransportsTest {
+    @Test
+    void connectsOverTcpToIpv4() throws IOException {
+        assertConnects(InetAddress.getByName("127.0.0.1"), "127.0.0.1");
+    }
+
+    @Test
+    void connectsOverTcpToIpv6Literal() throws IOException {
+        InetAddress loopback = InetAddress.getByName("::1");
+        ServerSocketChannel probe;
+        try {
+            probe = ServerSocketChannel.open().bind(new InetSocketAddress(loopback, 0));
+        } catch (IOException | UnsupportedOperationException e) {
+            assumeTrue(false, "no IPv6 loopback here");
+            return;
+        }
+        probe.close();
+        assertConnects(loopback, "[::1]");
+    }
+
+    private static void assertConnects(InetAddress bind, String host) throws IOException {
+        try (ServerSocketChannel server = ServerSocketChannel.open().bind(new InetSocketAddress(bind, 0))) {
+            int port = ((InetSocketAddress) server.getLocalAddress()).getPort();
+            try (LumenTransport transport = Transports.open("tcp://" + host + ":" + port, 115200);
+                 SocketChannel accepted = server.accept()) {
+                assertInstanceOf(StreamTransport.class, transport);
+                assertTrue(transport.isOpen());
+                assertEquals(bind, ((InetSocketAddress) accepted.getRemoteAddress()).getAddress());
+            }
+        }
+    }
+}